@@ -0,0 +1,77 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template.benchmark;
+
+import com.firefly.core.utils.template.TemplateRenderUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the asynchronous rendering methods: a single render awaited by the caller, which
+ * shows the executor hand-off overhead, and a batch of concurrent renders, which shows how well the
+ * executor spreads work across threads.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncRenderBenchmark {
+    private static final int BATCH_SIZE = 16;
+
+    @Benchmark
+    public String renderTemplateToHtmlAsync(RenderState state) {
+        return TemplateRenderUtil.renderTemplateToHtmlAsync(RenderState.TEMPLATE_NAME, state.dataModel).join();
+    }
+
+    @Benchmark
+    public byte[] renderHtmlToPdfBytesAsync(RenderState state) {
+        return TemplateRenderUtil.renderHtmlToPdfBytesAsync(state.html, state.pdfOptions).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void renderTemplateToPdfBytesAsyncBatch(RenderState state) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            futures[i] = TemplateRenderUtil.renderTemplateToPdfBytesAsync(
+                    RenderState.TEMPLATE_NAME, state.dataModel, state.pdfOptions);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutDown() {
+        // Each trial runs in its own fork; the pool threads would otherwise keep the fork alive
+        TemplateRenderUtil.shutdownAsyncThreadPool();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template.benchmark;
+
+import com.firefly.core.utils.template.TemplateRenderUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for rendering templates to HTML.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlRenderBenchmark {
+
+    @Benchmark
+    public String renderTemplateToHtml(RenderState state) throws Exception {
+        return TemplateRenderUtil.renderTemplateToHtml(RenderState.TEMPLATE_NAME, state.dataModel);
+    }
+
+    @Benchmark
+    public String renderTemplateStringToHtml(RenderState state) throws Exception {
+        return TemplateRenderUtil.renderTemplateStringToHtml(RenderState.INVOICE_TEMPLATE, "invoice", state.dataModel);
+    }
+
+    @Benchmark
+    public void renderTemplateToWriter(RenderState state) throws Exception {
+        TemplateRenderUtil.renderTemplateToHtml(RenderState.TEMPLATE_NAME, state.dataModel, Writer.nullWriter());
+    }
+
+    @Benchmark
+    public void renderTemplateToStream(RenderState state) throws Exception {
+        TemplateRenderUtil.renderTemplate(RenderState.TEMPLATE_NAME, state.dataModel,
+                OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+    }
+}
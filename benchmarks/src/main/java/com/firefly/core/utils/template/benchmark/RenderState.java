@@ -0,0 +1,148 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template.benchmark;
+
+import com.firefly.core.utils.template.TemplateRenderUtil;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Shared benchmark fixture: an invoice template, a data model of the selected size, the HTML rendered
+ * from it, and PDF options with and without bookmarks and custom fonts.
+ *
+ * The font directory defaults to the DejaVu fonts found on most Linux systems and can be changed with
+ * {@code -Dbenchmark.fontDir=/path/to/fonts}.
+ */
+@State(Scope.Benchmark)
+public class RenderState {
+    public static final String TEMPLATE_NAME = "invoice.ftl";
+
+    public static final String INVOICE_TEMPLATE =
+            "<html><head><style>"
+            + "body { font-family: 'DejaVu Sans', sans-serif; font-size: 10pt; }"
+            + "table { width: 100%; border-collapse: collapse; }"
+            + "td, th { border-bottom: 1px solid #ccc; padding: 2px 4px; }"
+            + ".amount { text-align: right; }"
+            + "</style></head><body>"
+            + "<h1>Invoice ${invoice.number}</h1>"
+            + "<p>${invoice.customer}<br/>${invoice.address}</p>"
+            + "<table><thead><tr><th>#</th><th>Description</th><th>Qty</th><th class=\"amount\">Price</th></tr></thead>"
+            + "<tbody><#list invoice.items as item>"
+            + "<tr><td>${item?counter}</td><td>${item.description}</td><td>${item.quantity}</td>"
+            + "<td class=\"amount\">${item.price}</td></tr>"
+            + "</#list></tbody></table>"
+            + "<p class=\"amount\">Total: ${invoice.total}</p>"
+            + "</body></html>";
+
+    /**
+     * Data model sizes, by number of invoice lines.
+     */
+    public enum DataSize {
+        SMALL(10),
+        MEDIUM(200),
+        LARGE(2000);
+
+        private final int lineItems;
+
+        DataSize(int lineItems) {
+            this.lineItems = lineItems;
+        }
+    }
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public DataSize size;
+
+    public Map<String, Object> dataModel;
+    public String html;
+    public TemplateRenderUtil.PdfOptions pdfOptions;
+    public TemplateRenderUtil.PdfOptions bookmarkedPdfOptions;
+    public TemplateRenderUtil.PdfOptions fontPdfOptions;
+
+    private Path templateDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        templateDir = Files.createTempDirectory("benchmark-templates");
+        Files.write(templateDir.resolve(TEMPLATE_NAME), INVOICE_TEMPLATE.getBytes(StandardCharsets.UTF_8));
+        TemplateRenderUtil.setTemplateDirectory(templateDir.toString());
+
+        dataModel = createDataModel(size.lineItems);
+        html = TemplateRenderUtil.renderTemplateToHtml(TEMPLATE_NAME, dataModel);
+
+        pdfOptions = new TemplateRenderUtil.PdfOptions();
+
+        bookmarkedPdfOptions = new TemplateRenderUtil.PdfOptions();
+        for (int page = 1; page <= 10; page++) {
+            bookmarkedPdfOptions.withBookmark("Page " + page, String.valueOf(page))
+                    .withChildBookmark("Lines on page " + page, String.valueOf(page));
+        }
+
+        String fontDir = System.getProperty("benchmark.fontDir", "/usr/share/fonts/truetype/dejavu");
+        fontPdfOptions = new TemplateRenderUtil.PdfOptions().withFontDirectory(fontDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TemplateRenderUtil.clearTemplateCache();
+        try (Stream<Path> files = Files.walk(templateDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Map<String, Object> createDataModel(int lineItems) {
+        List<Map<String, Object>> items = new ArrayList<>(lineItems);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < lineItems; i++) {
+            BigDecimal price = BigDecimal.valueOf(1000 + (i * 37L) % 9000, 2);
+            int quantity = 1 + i % 5;
+            Map<String, Object> item = new HashMap<>();
+            item.put("description", "Consulting services, work package " + i);
+            item.put("quantity", quantity);
+            item.put("price", price);
+            items.add(item);
+            total = total.add(price.multiply(BigDecimal.valueOf(quantity)));
+        }
+
+        Map<String, Object> invoice = new HashMap<>();
+        invoice.put("number", "INV-2025-0001");
+        invoice.put("customer", "Example Customer Ltd.");
+        invoice.put("address", "1 Example Street, Springfield");
+        invoice.put("items", items);
+        invoice.put("total", total);
+
+        Map<String, Object> model = new HashMap<>();
+        model.put("invoice", invoice);
+        return model;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+/**
+ * Immutable snapshot of asynchronous rendering statistics.
+ * Counters are cumulative since the executor was created; depth values reflect the moment
+ * the snapshot was taken.
+ */
+public final class AsyncExecutorStats {
+    private final int queueDepth;
+    private final int activeCount;
+    private final long startedCount;
+    private final long rejectedCount;
+    private final long callerRunsCount;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    AsyncExecutorStats(int queueDepth, int activeCount, long startedCount, long rejectedCount,
+                       long callerRunsCount, long totalWaitNanos, long maxWaitNanos) {
+        this.queueDepth = queueDepth;
+        this.activeCount = activeCount;
+        this.startedCount = startedCount;
+        this.rejectedCount = rejectedCount;
+        this.callerRunsCount = callerRunsCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * @return the number of tasks accepted but not yet started
+     */
+    public int getQueueDepth() { return queueDepth; }
+
+    /**
+     * @return the number of tasks currently running on the executor
+     */
+    public int getActiveCount() { return activeCount; }
+
+    /**
+     * @return the number of tasks started on the executor
+     */
+    public long getStartedCount() { return startedCount; }
+
+    /**
+     * @return the number of tasks rejected because the queue was full
+     */
+    public long getRejectedCount() { return rejectedCount; }
+
+    /**
+     * @return the number of tasks run in the calling thread because the queue was full
+     */
+    public long getCallerRunsCount() { return callerRunsCount; }
+
+    /**
+     * @return the average time tasks waited in the queue before starting, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        return startedCount == 0 ? 0.0 : totalWaitNanos / (double) startedCount / 1_000_000.0;
+    }
+
+    /**
+     * @return the longest time a task waited in the queue before starting, in milliseconds
+     */
+    public double getMaxWaitMillis() { return maxWaitNanos / 1_000_000.0; }
+
+    @Override
+    public String toString() {
+        return "AsyncExecutorStats{queueDepth=" + queueDepth + ", active=" + activeCount
+                + ", started=" + startedCount + ", rejected=" + rejectedCount + ", callerRuns=" + callerRunsCount
+                + ", averageWaitMillis=" + getAverageWaitMillis() + ", maxWaitMillis=" + getMaxWaitMillis() + "}";
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+/**
+ * What asynchronous rendering does when its queue is full.
+ *
+ * @see TemplateRenderUtil#setAsyncQueueCapacity(int, AsyncRejectionPolicy)
+ */
+public enum AsyncRejectionPolicy {
+    /**
+     * Reject the task immediately with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    FAIL_FAST,
+
+    /**
+     * Render in the calling thread, which slows down the caller instead of queueing more work.
+     */
+    CALLER_RUNS,
+
+    /**
+     * Block the caller until the queue has room, rejecting the task if the wait times out.
+     */
+    AWAIT
+}
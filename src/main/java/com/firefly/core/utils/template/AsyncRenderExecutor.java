@@ -0,0 +1,175 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for asynchronous rendering that bounds the number of waiting tasks and records
+ * queue statistics.
+ *
+ * Tasks run on a delegate executor, either a fixed thread pool or a virtual-thread-per-task executor.
+ * When a queue capacity is set, at most {@code workers + capacity} tasks are admitted at a time, where
+ * {@code workers} is the number of tasks the delegate runs concurrently. Further tasks are handled by the
+ * {@link AsyncRejectionPolicy}. Without a capacity, tasks are never rejected.
+ */
+final class AsyncRenderExecutor implements Executor {
+    private volatile ExecutorService delegate;
+    private volatile int workers;
+    private volatile int queueCapacity = -1;
+    private volatile AsyncRejectionPolicy policy = AsyncRejectionPolicy.FAIL_FAST;
+    private volatile long awaitTimeoutNanos = Long.MAX_VALUE;
+    private volatile Semaphore admission;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param delegate the executor running the tasks
+     * @param workers the number of tasks the delegate runs concurrently
+     */
+    AsyncRenderExecutor(ExecutorService delegate, int workers) {
+        this.delegate = delegate;
+        this.workers = workers;
+    }
+
+    /**
+     * Replaces the executor running the tasks. Tasks already accepted keep running on the old one.
+     *
+     * @param delegate the executor running the tasks
+     * @param workers the number of tasks the delegate runs concurrently
+     * @return the previous executor, for the caller to shut down
+     */
+    synchronized ExecutorService setDelegate(ExecutorService delegate, int workers) {
+        ExecutorService previous = this.delegate;
+        this.delegate = delegate;
+        this.workers = workers;
+        updateAdmission();
+        return previous;
+    }
+
+    /**
+     * Bounds the number of tasks waiting to start.
+     *
+     * @param capacity the maximum number of waiting tasks, or -1 for no bound
+     * @param policy what to do with tasks that do not fit
+     * @param awaitTimeout how long {@link AsyncRejectionPolicy#AWAIT} waits for room
+     * @param unit the unit of the timeout
+     */
+    synchronized void setQueueCapacity(int capacity, AsyncRejectionPolicy policy, long awaitTimeout, TimeUnit unit) {
+        this.queueCapacity = capacity;
+        this.policy = policy;
+        this.awaitTimeoutNanos = unit.toNanos(awaitTimeout);
+        updateAdmission();
+    }
+
+    private void updateAdmission() {
+        // Tasks admitted earlier release their permits to the semaphore they acquired them from
+        admission = queueCapacity < 0 ? null : new Semaphore(workers + queueCapacity);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Semaphore permits = admission;
+        if (permits != null && !admit(permits)) {
+            if (policy == AsyncRejectionPolicy.CALLER_RUNS) {
+                callerRuns.increment();
+                task.run();
+                return;
+            }
+            rejected.increment();
+            throw new RejectedExecutionException("Async render queue is full (capacity " + queueCapacity + ")");
+        }
+
+        long submitted = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> run(task, submitted, permits));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private boolean admit(Semaphore permits) {
+        if (policy != AsyncRejectionPolicy.AWAIT) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(awaitTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run(Runnable task, long submitted, Semaphore permits) {
+        long waited = System.nanoTime() - submitted;
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        started.increment();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        try {
+            task.run();
+        } finally {
+            active.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * @return the number of tasks the executor runs concurrently
+     */
+    int workers() {
+        return workers;
+    }
+
+    /**
+     * Shuts down the executor running the tasks.
+     */
+    void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * @return a snapshot of the executor statistics
+     */
+    AsyncExecutorStats stats() {
+        return new AsyncExecutorStats(queued.get(), active.get(), started.sum(), rejected.sum(), callerRuns.sum(),
+                totalWaitNanos.sum(), maxWaitNanos.get());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Output stream that writes a file atomically: output goes to a temporary file next to the target, through
+ * a buffer that is written to a {@link FileChannel} in large blocks, and the temporary file is renamed to
+ * the target by {@link #commit()}. Every stream must end with {@link #commit()} or {@link #discard()}; a
+ * failed render discards its output, so it never leaves a partial file under the target name.
+ *
+ * A new file gets the permissions of any file the process creates, and a replaced file keeps its POSIX
+ * permissions and, where the process may change it, its owner.
+ *
+ * {@link #close()} only ends writing, since PDF writers close their stream when the document is complete.
+ *
+ * Instances are not thread-safe.
+ */
+final class AtomicFileOutputStream extends OutputStream {
+    private static final Logger logger = LoggerFactory.getLogger(AtomicFileOutputStream.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path target;
+    private final Path temp;
+    private final FileSyncPolicy syncPolicy;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean writable = true;
+    private boolean finished = false;
+
+    /**
+     * Creates the temporary file for a target.
+     *
+     * @param target the file to write; replaced if it exists
+     * @param syncPolicy how far the file is forced to storage on commit
+     * @throws IOException if the temporary file cannot be created
+     */
+    AtomicFileOutputStream(Path target, FileSyncPolicy syncPolicy) throws IOException {
+        this.target = target.toAbsolutePath();
+        this.syncPolicy = syncPolicy;
+        Path directory = this.target.getParent();
+        Path candidate;
+        FileChannel created = null;
+        do {
+            // Hidden, and in the same directory so that the rename does not cross file systems. Unlike
+            // Files.createTempFile, which makes the file private, this leaves the permissions to the umask.
+            candidate = directory.resolve("." + this.target.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+            try {
+                created = FileChannel.open(candidate, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                logger.debug("Temporary file {} exists, trying another name", candidate);
+            }
+        } while (created == null);
+        this.temp = candidate;
+        this.channel = created;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len >= BUFFER_SIZE) {
+            // Large blocks go straight to the channel
+            drain();
+            writeFully(ByteBuffer.wrap(b, off, len));
+            return;
+        }
+        if (len > buffer.remaining()) {
+            drain();
+        }
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (writable) {
+            drain();
+        }
+    }
+
+    /**
+     * Ends writing. The output is kept until {@link #commit()} or {@link #discard()}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writable) {
+            writable = false;
+            drain();
+        }
+    }
+
+    /**
+     * Writes the remaining output, forces it to storage as the sync policy requires and renames the
+     * temporary file to the target.
+     *
+     * @throws IOException if the file cannot be written or renamed; the temporary file is deleted
+     */
+    void commit() throws IOException {
+        if (finished) {
+            throw new IOException("Output already committed or discarded: " + target);
+        }
+        try {
+            close();
+            if (syncPolicy != FileSyncPolicy.NONE) {
+                channel.force(true);
+            }
+            finished = true;
+            channel.close();
+            copyAttributesOfTarget();
+            move();
+        } catch (IOException | RuntimeException e) {
+            finished = false;
+            discard();
+            throw e;
+        }
+
+        if (syncPolicy == FileSyncPolicy.FULL) {
+            forceDirectory();
+        }
+    }
+
+    /**
+     * Deletes the temporary file unless the output was committed. Does nothing after a commit.
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    void discard() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        writable = false;
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void move() throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void copyAttributesOfTarget() throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view == null || !Files.exists(target)) {
+            return;
+        }
+        Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        try {
+            Files.setOwner(temp, Files.getOwner(target));
+        } catch (IOException e) {
+            // Only a privileged process can give a file away
+            logger.debug("Cannot give {} the owner of {}", temp, target, e);
+        }
+    }
+
+    private void forceDirectory() {
+        // Makes the rename durable; not supported on every platform
+        try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            logger.debug("Cannot force directory {} to storage", target.getParent(), e);
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!writable) {
+            throw new IOException("Stream closed: " + target);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a batch render.
+ * Only the first {@value #MAX_REPORTED_FAILURES} failures are kept; all failures are counted and
+ * passed to {@link BatchRenderSink#failed}.
+ */
+public final class BatchRenderResult {
+    /**
+     * The maximum number of failures kept in {@link #getFailures()}.
+     */
+    public static final int MAX_REPORTED_FAILURES = 1000;
+
+    private final long succeededCount;
+    private final long failedCount;
+    private final long elapsedNanos;
+    private final Map<Long, Exception> failures;
+
+    BatchRenderResult(long succeededCount, long failedCount, long elapsedNanos, Map<Long, Exception> failures) {
+        this.succeededCount = succeededCount;
+        this.failedCount = failedCount;
+        this.elapsedNanos = elapsedNanos;
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return the number of items rendered successfully
+     */
+    public long getSucceededCount() { return succeededCount; }
+
+    /**
+     * @return the number of items that failed
+     */
+    public long getFailedCount() { return failedCount; }
+
+    /**
+     * @return the total number of items taken from the input
+     */
+    public long getTotalCount() { return succeededCount + failedCount; }
+
+    /**
+     * @return the wall-clock time the batch took, in milliseconds
+     */
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    /**
+     * @return the errors of failed items by item index, in index order, up to {@value #MAX_REPORTED_FAILURES}
+     */
+    public Map<Long, Exception> getFailures() { return failures; }
+
+    /**
+     * @return the indexes of failed items, in index order, up to {@value #MAX_REPORTED_FAILURES}
+     */
+    public List<Long> getFailedIndexes() { return List.copyOf(failures.keySet()); }
+
+    /**
+     * @return whether every item was rendered successfully
+     */
+    public boolean isSuccessful() { return failedCount == 0; }
+
+    @Override
+    public String toString() {
+        return "BatchRenderResult{succeeded=" + succeededCount + ", failed=" + failedCount
+                + ", elapsedMillis=" + getElapsedMillis() + "}";
+    }
+}
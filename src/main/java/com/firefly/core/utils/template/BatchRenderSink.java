@@ -0,0 +1,64 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Receives the documents of a batch render.
+ *
+ * Methods are called concurrently from the batch worker threads, each time for a different item.
+ * Items are numbered in the order they are taken from the input, starting at 0.
+ *
+ * @see TemplateRenderUtil#renderTemplateToPdfBatch(String, java.util.Iterator, BatchRenderSink, TemplateRenderUtil.PdfOptions, int)
+ */
+public interface BatchRenderSink {
+
+    /**
+     * Opens the stream the document for an item is written to. The batch closes the stream once the
+     * item is rendered, whether or not rendering succeeded.
+     *
+     * @param index the position of the item in the input
+     * @param dataModel the data model of the item
+     * @return the stream to write the document to
+     * @throws IOException if the stream cannot be opened; the item is then reported as failed
+     */
+    OutputStream open(long index, Map<String, Object> dataModel) throws IOException;
+
+    /**
+     * Called after the document for an item was written and its stream closed.
+     *
+     * @param index the position of the item in the input
+     * @param dataModel the data model of the item
+     */
+    default void completed(long index, Map<String, Object> dataModel) {
+    }
+
+    /**
+     * Called when an item could not be rendered. The batch continues with the next item; whatever was
+     * written to the item's stream is incomplete.
+     *
+     * @param index the position of the item in the input
+     * @param dataModel the data model of the item
+     * @param error the error that stopped the item
+     */
+    default void failed(long index, Map<String, Object> dataModel, Exception error) {
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reusable byte arrays in size classes, used to buffer rendered documents without allocating
+ * and growing a new array for every render.
+ *
+ * Size classes start at 64 KB and double up to 16 MB, so an array is at most twice the size requested;
+ * requests beyond the largest class are allocated and dropped without pooling. Idle arrays are retained
+ * up to a total number of bytes, so the pool cannot hold on to more memory than that between bursts.
+ *
+ * Returned arrays still hold the previous document; callers only read what they wrote themselves.
+ */
+final class ByteArrayPool {
+    static final int MIN_CLASS_SIZE = 64 * 1024;
+    private static final int CLASS_COUNT = 9;
+
+    private final List<Queue<byte[]>> idle = new ArrayList<>(CLASS_COUNT);
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    /**
+     * @param maxRetainedBytes the maximum total size of the idle arrays
+     */
+    ByteArrayPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            idle.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Takes an idle array of the smallest size class that fits, or allocates one.
+     *
+     * @param minCapacity the minimum length of the array
+     * @return an array of at least the given length, for exclusive use until it is released
+     */
+    byte[] borrow(int minCapacity) {
+        int sizeClass = sizeClassFor(minCapacity);
+        if (sizeClass < 0) {
+            return new byte[minCapacity];
+        }
+
+        byte[] array = idle.get(sizeClass).poll();
+        if (array != null) {
+            retainedBytes.addAndGet(-array.length);
+            return array;
+        }
+        return new byte[classSize(sizeClass)];
+    }
+
+    /**
+     * Makes an array available for reuse. Arrays that are not of a size class, or that do not fit into the
+     * retained size, are left to the garbage collector.
+     *
+     * @param array an array that the caller no longer uses
+     */
+    void release(byte[] array) {
+        int sizeClass = sizeClassFor(array.length);
+        if (sizeClass < 0 || classSize(sizeClass) != array.length) {
+            return;
+        }
+        if (retainedBytes.addAndGet(array.length) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-array.length);
+            return;
+        }
+        idle.get(sizeClass).offer(array);
+    }
+
+    /**
+     * @return the total size of the idle arrays
+     */
+    long retainedBytes() {
+        return retainedBytes.get();
+    }
+
+    private static int sizeClassFor(int capacity) {
+        int size = MIN_CLASS_SIZE;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            if (capacity <= size) {
+                return i;
+            }
+            size <<= 1;
+        }
+        return -1;
+    }
+
+    private static int classSize(int sizeClass) {
+        return MIN_CLASS_SIZE << sizeClass;
+    }
+}
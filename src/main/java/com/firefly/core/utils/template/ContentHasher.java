@@ -0,0 +1,164 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+/**
+ * Streaming 128-bit MurmurHash3 (x64 variant) used to build content-addressed cache keys.
+ * Values are fed in little-endian byte order; strings are length-prefixed so that
+ * consecutive strings cannot collide by shifting characters between them.
+ *
+ * Instances are not thread-safe and are meant to be used for a single hash.
+ */
+final class ContentHasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long block1;
+    private long block2;
+    private int position;
+    private long length;
+
+    ContentHasher putByte(int b) {
+        long value = b & 0xffL;
+        if (position < 8) {
+            block1 |= value << (position << 3);
+        } else {
+            block2 |= value << ((position - 8) << 3);
+        }
+        length++;
+        if (++position == 16) {
+            mixBlock(block1, block2);
+            block1 = 0;
+            block2 = 0;
+            position = 0;
+        }
+        return this;
+    }
+
+    ContentHasher putChar(char c) {
+        putByte(c);
+        return putByte(c >>> 8);
+    }
+
+    ContentHasher putInt(int value) {
+        for (int i = 0; i < 4; i++) {
+            putByte(value >>> (i << 3));
+        }
+        return this;
+    }
+
+    ContentHasher putLong(long value) {
+        for (int i = 0; i < 8; i++) {
+            putByte((int) (value >>> (i << 3)));
+        }
+        return this;
+    }
+
+    ContentHasher putBoolean(boolean value) {
+        return putByte(value ? 1 : 0);
+    }
+
+    /**
+     * Adds a string, or a marker for {@code null}, to the hash.
+     *
+     * @param value the string to add
+     * @return this hasher
+     */
+    ContentHasher putString(CharSequence value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        int len = value.length();
+        putInt(len);
+        for (int i = 0; i < len; i++) {
+            putChar(value.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Adds a previously computed hash, so that nested values can be hashed separately.
+     *
+     * @param value the hash to add
+     * @return this hasher
+     */
+    ContentHasher putHash(ContentHash value) {
+        return putLong(value.getHigh()).putLong(value.getLow());
+    }
+
+    /**
+     * Finishes the hash. The hasher must not be used afterwards.
+     *
+     * @return the 128-bit hash of everything added so far
+     */
+    ContentHash hash() {
+        long k1 = block1;
+        long k2 = block2;
+        if (position > 8) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+        }
+        if (position > 0) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new ContentHash(h1, h2);
+    }
+
+    private void mixBlock(long k1, long k2) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
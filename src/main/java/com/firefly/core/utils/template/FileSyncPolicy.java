@@ -0,0 +1,46 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+/**
+ * How far files written by the renderer are forced to storage before they are considered complete.
+ *
+ * Files are always written to a temporary file and renamed into place, so a crash of the process never
+ * leaves a partial file under the target name. The policy decides what survives a crash of the machine.
+ *
+ * @see TemplateRenderUtil#setFileSyncPolicy(FileSyncPolicy)
+ */
+public enum FileSyncPolicy {
+    /**
+     * Leave writing to the operating system. Fastest; after a power loss, a recently renamed file may be
+     * empty or missing.
+     */
+    NONE,
+
+    /**
+     * Force the file content to storage before the rename, so a file under the target name is complete.
+     * The rename itself may be lost after a power loss.
+     */
+    DATA,
+
+    /**
+     * Force the file content before the rename and the directory after it, so a completed file survives
+     * a power loss.
+     */
+    FULL
+}
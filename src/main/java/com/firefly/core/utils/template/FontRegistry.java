@@ -0,0 +1,216 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.BaseFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.pdf.FontDescription;
+import org.xhtmlrenderer.pdf.FontFamily;
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+import org.xhtmlrenderer.pdf.TrueTypeUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of parsed TrueType/OpenType fonts used for PDF rendering.
+ *
+ * {@link ITextFontResolver#addFont(String, boolean)} reads and parses a font file every time it is
+ * called. The registry parses each file once, keyed by its absolute path and modification time, and
+ * adds the resulting font descriptions (and their shared {@link BaseFont}) to each renderer's font
+ * resolver. A font file that changes on disk is parsed again on its next use.
+ *
+ * Fonts are always embedded, matching what {@code addFont(path, true)} does. Flying Saucer does not
+ * expose a way to create font families, so the registry uses the package-private constructor of
+ * {@link FontFamily}; should that fail, it falls back to {@code addFont} for every file.
+ */
+final class FontRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(FontRegistry.class);
+
+    private static final Constructor<FontFamily> FONT_FAMILY_CONSTRUCTOR = findFontFamilyConstructor();
+
+    private final Map<String, ParsedFont> fonts = new ConcurrentHashMap<>();
+    private final Map<String, DirectoryListing> directories = new ConcurrentHashMap<>();
+
+    /**
+     * Adds every font in a directory to a font resolver, parsing only fonts that are new or changed.
+     *
+     * @param resolver the font resolver of the renderer
+     * @param fontDir the directory containing .ttf and .otf files
+     */
+    void registerFonts(ITextFontResolver resolver, String fontDir) throws DocumentException, IOException {
+        if (FONT_FAMILY_CONSTRUCTOR == null) {
+            resolver.addFontDirectory(fontDir, true);
+            return;
+        }
+
+        // Each renderer gets its own families, since @font-face rules add descriptions to them
+        Map<String, FontFamily> families = resolver.getFonts();
+        for (File file : listFonts(fontDir)) {
+            for (FontFace face : getFaces(file)) {
+                families.computeIfAbsent(face.family, FontRegistry::newFontFamily).addFontDescription(face.description);
+            }
+        }
+    }
+
+    /**
+     * Parses every font in a directory so later renders find them ready.
+     *
+     * @param fontDir the directory containing .ttf and .otf files
+     * @return the number of font files available from the directory
+     */
+    int preload(String fontDir) {
+        int loaded = 0;
+        for (File file : listFonts(fontDir)) {
+            if (!getFaces(file).isEmpty()) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Adds the path, size and modification time of every font in a directory to a hash, so a result
+     * rendered with the directory's fonts is not mistaken for one rendered with other versions of them.
+     *
+     * @param hasher the hash to add the fonts to
+     * @param fontDir the directory containing .ttf and .otf files
+     */
+    void hashFonts(ContentHasher hasher, String fontDir) {
+        List<File> files = new ArrayList<>(listFonts(fontDir));
+        files.sort(Comparator.comparing(File::getAbsolutePath));
+        hasher.putInt(files.size());
+        for (File file : files) {
+            hasher.putString(file.getAbsolutePath()).putLong(file.length()).putLong(file.lastModified());
+        }
+    }
+
+    /**
+     * Forgets all parsed fonts and directory listings.
+     */
+    void clear() {
+        fonts.clear();
+        directories.clear();
+    }
+
+    private List<File> listFonts(String fontDir) {
+        File dir = new File(fontDir);
+        if (!dir.isDirectory()) {
+            return Collections.emptyList();
+        }
+
+        // Adding or removing a file changes the directory's modification time
+        long lastModified = dir.lastModified();
+        DirectoryListing listing = directories.get(fontDir);
+        if (listing == null || listing.lastModified != lastModified) {
+            File[] files = dir.listFiles((d, name) -> {
+                String lower = name.toLowerCase();
+                return lower.endsWith(".ttf") || lower.endsWith(".otf");
+            });
+            List<File> fontFiles = files == null ? Collections.emptyList() : Arrays.asList(files);
+            listing = new DirectoryListing(lastModified, fontFiles);
+            directories.put(fontDir, listing);
+        }
+        return listing.files;
+    }
+
+    private List<FontFace> getFaces(File file) {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        ParsedFont parsed = fonts.compute(path, (key, existing) ->
+                existing != null && existing.lastModified == lastModified ? existing : parse(path, lastModified));
+        return parsed.faces;
+    }
+
+    private static FontFamily newFontFamily(String name) {
+        try {
+            return FONT_FAMILY_CONSTRUCTOR.newInstance(name);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create font family " + name, e);
+        }
+    }
+
+    private static Constructor<FontFamily> findFontFamilyConstructor() {
+        try {
+            Constructor<FontFamily> constructor = FontFamily.class.getDeclaredConstructor(String.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Shared font registry unavailable, fonts will be loaded per renderer", e);
+            return null;
+        }
+    }
+
+    private static ParsedFont parse(String path, long lastModified) {
+        try {
+            // Not cached by OpenPDF, so a changed file is really read again
+            BaseFont font = BaseFont.createFont(path, BaseFont.CP1252, BaseFont.EMBEDDED, false, null, null);
+            List<FontFace> faces = new ArrayList<>();
+            for (String family : TrueTypeUtil.getFamilyNames(font)) {
+                FontDescription description = new FontDescription(font);
+                TrueTypeUtil.populateDescription(path, font, description);
+                faces.add(new FontFace(family, description));
+            }
+            logger.debug("Loaded font: {}", path);
+            return new ParsedFont(lastModified, faces);
+        } catch (Exception e) {
+            logger.warn("Error loading font {}", path, e);
+            return new ParsedFont(lastModified, Collections.emptyList());
+        }
+    }
+
+    private static final class ParsedFont {
+        private final long lastModified;
+        private final List<FontFace> faces;
+
+        ParsedFont(long lastModified, List<FontFace> faces) {
+            this.lastModified = lastModified;
+            this.faces = faces;
+        }
+    }
+
+    private static final class FontFace {
+        private final String family;
+        private final FontDescription description;
+
+        FontFace(String family, FontDescription description) {
+            this.family = family;
+            this.description = description;
+        }
+    }
+
+    private static final class DirectoryListing {
+        private final long lastModified;
+        private final List<File> files;
+
+        DirectoryListing(long lastModified, List<File> files) {
+            this.lastModified = lastModified;
+            this.files = files;
+        }
+    }
+}
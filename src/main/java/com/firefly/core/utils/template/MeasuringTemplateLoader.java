@@ -0,0 +1,182 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import freemarker.cache.StatefulTemplateLoader;
+import freemarker.cache.TemplateLoader;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Template loader that records the length of every template source read through it, so compiled templates
+ * can be weighed by the size of their source without printing them back to text.
+ */
+final class MeasuringTemplateLoader implements StatefulTemplateLoader {
+    private final TemplateLoader delegate;
+    private final Map<String, Integer> sourceLengths = new ConcurrentHashMap<>();
+
+    private MeasuringTemplateLoader(TemplateLoader delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Wraps a template loader, unless it already measures the sources it reads.
+     *
+     * @param loader the template loader, or null
+     * @return the measuring loader, or null if the loader is null
+     */
+    static TemplateLoader wrap(TemplateLoader loader) {
+        if (loader == null || loader instanceof MeasuringTemplateLoader) {
+            return loader;
+        }
+        return new MeasuringTemplateLoader(loader);
+    }
+
+    /**
+     * Gets the loader wrapped by a measuring loader.
+     *
+     * @param loader a template loader
+     * @return the wrapped loader, or the loader itself if it is not a measuring loader
+     */
+    static TemplateLoader unwrap(TemplateLoader loader) {
+        return loader instanceof MeasuringTemplateLoader ? ((MeasuringTemplateLoader) loader).delegate : loader;
+    }
+
+    /**
+     * Gets the length of the source last read for a template.
+     *
+     * @param loader the template loader of the configuration the template was loaded with
+     * @param sourceName the source name of the template
+     * @return the length of the source in characters, or -1 if it was not read through a measuring loader
+     */
+    static int sourceLength(TemplateLoader loader, String sourceName) {
+        if (!(loader instanceof MeasuringTemplateLoader)) {
+            return -1;
+        }
+        return ((MeasuringTemplateLoader) loader).sourceLengths.getOrDefault(sourceName, -1);
+    }
+
+    @Override
+    public Object findTemplateSource(String name) throws IOException {
+        Object source = delegate.findTemplateSource(name);
+        return source == null ? null : new Source(name, source);
+    }
+
+    @Override
+    public long getLastModified(Object templateSource) {
+        return delegate.getLastModified(((Source) templateSource).source);
+    }
+
+    @Override
+    public Reader getReader(Object templateSource, String encoding) throws IOException {
+        Source source = (Source) templateSource;
+        return new CountingReader(delegate.getReader(source.source, encoding), source.name);
+    }
+
+    @Override
+    public void closeTemplateSource(Object templateSource) throws IOException {
+        delegate.closeTemplateSource(((Source) templateSource).source);
+    }
+
+    @Override
+    public void resetState() {
+        if (delegate instanceof StatefulTemplateLoader) {
+            ((StatefulTemplateLoader) delegate).resetState();
+        }
+    }
+
+    /**
+     * Template source of the wrapped loader, with the name it was found under.
+     */
+    private static final class Source {
+        final String name;
+        final Object source;
+
+        Source(String name, Object source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) o;
+            return name.equals(other.name) && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + source.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    /**
+     * Reader that counts the characters read through it and records the count when it is closed.
+     */
+    private final class CountingReader extends FilterReader {
+        private final String name;
+        private long count;
+
+        CountingReader(Reader in, String name) {
+            super(in);
+            this.name = name;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = in.read();
+            if (c >= 0) {
+                count++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = in.read(cbuf, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            sourceLengths.put(name, (int) Math.min(count, Integer.MAX_VALUE));
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RenderObserver} that records render metrics in a Micrometer {@link MeterRegistry}.
+ *
+ * Recorded meters:
+ * - {@code template.render.stage} timer, tagged with {@code stage}
+ * - {@code template.render.output.size} distribution summary, tagged with {@code output}
+ * - {@code template.cache.lookups} counter, tagged with {@code result} ({@code hit} or {@code miss})
+ *
+ * Meters can additionally be tagged with the template name. Only enable this for a bounded set of
+ * templates; template strings rendered without a name get a name derived from their content, which
+ * can create many meters.
+ *
+ * Micrometer is an optional dependency of this library; add {@code io.micrometer:micrometer-core} to use
+ * this class.
+ */
+public class MicrometerRenderObserver implements RenderObserver {
+    static final String STAGE_TIMER = "template.render.stage";
+    static final String OUTPUT_SIZE = "template.render.output.size";
+    static final String CACHE_LOOKUPS = "template.cache.lookups";
+    private static final String NO_TEMPLATE = "none";
+
+    private final MeterRegistry registry;
+    private final boolean tagTemplateNames;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<Output, DistributionSummary> outputSizes = new EnumMap<>(Output.class);
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    /**
+     * Creates an observer whose meters are not tagged with template names.
+     *
+     * @param registry the registry to record metrics in
+     */
+    public MicrometerRenderObserver(MeterRegistry registry) {
+        this(registry, false);
+    }
+
+    /**
+     * @param registry the registry to record metrics in
+     * @param tagTemplateNames whether to tag meters with the template name
+     */
+    public MicrometerRenderObserver(MeterRegistry registry, boolean tagTemplateNames) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Meter registry cannot be null");
+        }
+        this.registry = registry;
+        this.tagTemplateNames = tagTemplateNames;
+
+        // Without template tags the set of meters is fixed, so they are looked up once
+        if (!tagTemplateNames) {
+            for (Stage stage : Stage.values()) {
+                stageTimers.put(stage, stageTimer(stage, null));
+            }
+            for (Output output : Output.values()) {
+                outputSizes.put(output, outputSize(output, null));
+            }
+        }
+        cacheHits = tagTemplateNames ? null : cacheLookups(true, null);
+        cacheMisses = tagTemplateNames ? null : cacheLookups(false, null);
+    }
+
+    @Override
+    public void onStage(Stage stage, String templateName, long durationNanos) {
+        Timer timer = tagTemplateNames ? stageTimer(stage, templateName) : stageTimers.get(stage);
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onOutput(Output output, String templateName, long size) {
+        DistributionSummary summary = tagTemplateNames ? outputSize(output, templateName) : outputSizes.get(output);
+        summary.record(size);
+    }
+
+    @Override
+    public void onTemplateCacheLookup(String templateName, boolean hit) {
+        if (tagTemplateNames) {
+            cacheLookups(hit, templateName).increment();
+        } else {
+            (hit ? cacheHits : cacheMisses).increment();
+        }
+    }
+
+    private Timer stageTimer(Stage stage, String templateName) {
+        Timer.Builder builder = Timer.builder(STAGE_TIMER)
+                .description("Time spent in a template render stage")
+                .tag("stage", stage.name().toLowerCase());
+        if (tagTemplateNames) {
+            builder.tag("template", templateName != null ? templateName : NO_TEMPLATE);
+        }
+        return builder.register(registry);
+    }
+
+    private DistributionSummary outputSize(Output output, String templateName) {
+        DistributionSummary.Builder builder = DistributionSummary.builder(OUTPUT_SIZE)
+                .description("Size of rendered output, in characters for HTML and bytes otherwise")
+                .tag("output", output.name().toLowerCase());
+        if (tagTemplateNames) {
+            builder.tag("template", templateName != null ? templateName : NO_TEMPLATE);
+        }
+        return builder.register(registry);
+    }
+
+    private Counter cacheLookups(boolean hit, String templateName) {
+        Counter.Builder builder = Counter.builder(CACHE_LOOKUPS)
+                .description("Template cache lookups")
+                .tag("result", hit ? "hit" : "miss");
+        if (tagTemplateNames) {
+            builder.tag("template", templateName != null ? templateName : NO_TEMPLATE);
+        }
+        return builder.register(registry);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.css.style.derived.BorderPropertySet;
+import org.xhtmlrenderer.pdf.ITextOutputDevice;
+import org.xhtmlrenderer.render.RenderingContext;
+
+import java.awt.Rectangle;
+
+/**
+ * PDF output device that can report the page count of a larger document to {@code counter(pages)}.
+ *
+ * Flying Saucer sets the page count of a render to the number of pages it laid out, so a segment of a
+ * document rendered in parallel would count only its own pages. Every page starts with painting its
+ * background, before its margin boxes and content, so the device replaces the count there. Flying Saucer
+ * adds the pages before the segment's first page to the count, so the device leaves those out.
+ */
+final class PageCountOutputDevice extends ITextOutputDevice {
+    private int documentPageCount;
+
+    PageCountOutputDevice(float dotsPerPoint) {
+        super(dotsPerPoint);
+    }
+
+    /**
+     * @param documentPageCount the number of pages of the whole document, or 0 to count the pages laid
+     *                          out by the renderer
+     */
+    void setDocumentPageCount(int documentPageCount) {
+        this.documentPageCount = documentPageCount;
+    }
+
+    @Override
+    public void paintBackground(RenderingContext c, CalculatedStyle style, Rectangle bounds,
+                                Rectangle bgBounds, BorderPropertySet border) {
+        if (documentPageCount > 0) {
+            c.setPageCount(documentPageCount - c.getInitialPageNo() + 1);
+        }
+        super.paintBackground(c, style, bounds, bgBounds, border);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives a PDF rendered into a pooled in-memory buffer.
+ *
+ * The buffer is read-only and only valid during the call: once the handler returns, its memory is reused
+ * for other documents. A handler that needs the PDF afterwards copies it.
+ *
+ * @param <T> the type of the handler's result
+ * @see TemplateRenderUtil#renderTemplateToPdfBuffer(String, java.util.Map, TemplateRenderUtil.PdfOptions, PdfBufferHandler)
+ */
+@FunctionalInterface
+public interface PdfBufferHandler<T> {
+
+    /**
+     * Processes the PDF, for example by writing it to a channel or a response.
+     *
+     * @param pdf the PDF, from its position to its limit
+     * @return the result returned by the render method
+     * @throws Exception if the PDF cannot be processed; the exception is passed on to the caller
+     */
+    T handle(ByteBuffer pdf) throws Exception;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One part of a PDF assembled from separately rendered documents, such as a cover letter, a statement
+ * and the terms and conditions: a template with its data model, or ready HTML.
+ *
+ * @see TemplateRenderUtil#renderPartsToPdf(java.util.List, java.io.OutputStream, TemplateRenderUtil.PdfOptions)
+ */
+public final class PdfPart {
+    private final String templateName;
+    private final Map<String, Object> dataModel;
+    private final String html;
+
+    private PdfPart(String templateName, Map<String, Object> dataModel, String html) {
+        this.templateName = templateName;
+        this.dataModel = dataModel;
+        this.html = html;
+    }
+
+    /**
+     * Creates a part rendered from a template.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering, or null for an empty model
+     * @return the part
+     */
+    public static PdfPart template(String templateName, Map<String, Object> dataModel) {
+        if (templateName == null || templateName.isEmpty()) {
+            throw new IllegalArgumentException("Template name cannot be empty");
+        }
+        return new PdfPart(templateName, dataModel != null ? dataModel : Collections.emptyMap(), null);
+    }
+
+    /**
+     * Creates a part from HTML content.
+     *
+     * @param html the HTML content
+     * @return the part
+     */
+    public static PdfPart html(String html) {
+        if (html == null || html.isBlank()) {
+            throw new IllegalArgumentException("HTML content is empty");
+        }
+        return new PdfPart(null, null, html);
+    }
+
+    /**
+     * @return the template name, or null for an HTML part
+     */
+    public String getTemplateName() { return templateName; }
+
+    /**
+     * @return the data model, or null for an HTML part
+     */
+    public Map<String, Object> getDataModel() { return dataModel; }
+
+    /**
+     * @return the HTML content, or null for a template part
+     */
+    public String getHtml() { return html; }
+
+    @Override
+    public String toString() {
+        return templateName != null ? "PdfPart[" + templateName + "]" : "PdfPart[html]";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of PDF renderer state that is reusable across documents, keyed by the font directory.
+ *
+ * A renderer's output device keeps the metadata, bookmarks and imported PDFs of every document it
+ * writes, and Flying Saucer offers no way to clear them, so a renderer must not write documents for
+ * different callers. What the pool reuses is the font resolver, with its registered fonts and cache of
+ * resolved fonts: every borrowed renderer is new, with a new output device and user agent, and is built
+ * around an idle font resolver for its font directory. Renderers whose last use failed must not be
+ * returned, since the state of their font resolver is unknown.
+ *
+ * Idle font resolvers are retained up to a fixed number per key; extra ones are discarded.
+ */
+final class PdfRendererPool {
+    private final ConcurrentHashMap<Key, BlockingQueue<ITextFontResolver>> idle = new ConcurrentHashMap<>();
+    private final RendererFactory factory;
+    private volatile int maxIdlePerKey;
+
+    /**
+     * @param factory creates a renderer for a font directory and base URI, either of which may be null
+     * @param maxIdlePerKey the maximum number of idle font resolvers retained per key
+     */
+    PdfRendererPool(RendererFactory factory, int maxIdlePerKey) {
+        this.factory = factory;
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    /**
+     * Creates a renderer for the given configuration around an idle font resolver, if there is one.
+     *
+     * @param fontDir the font directory, or null
+     * @param baseUri the base URI, or null
+     * @return a new renderer for exclusive use by the caller
+     */
+    ITextRenderer borrow(String fontDir, String baseUri) {
+        BlockingQueue<ITextFontResolver> queue = idle.get(new Key(fontDir));
+        return factory.create(fontDir, baseUri, queue != null ? queue.poll() : null);
+    }
+
+    /**
+     * Makes the font resolver of a renderer available for reuse. The renderer itself is dropped.
+     *
+     * @param fontDir the font directory the renderer was borrowed for
+     * @param renderer a renderer whose last use completed successfully
+     */
+    void release(String fontDir, ITextRenderer renderer) {
+        int capacity = maxIdlePerKey;
+        if (capacity > 0) {
+            idle.computeIfAbsent(new Key(fontDir), key -> new ArrayBlockingQueue<>(capacity))
+                    .offer(renderer.getFontResolver());
+        }
+    }
+
+    /**
+     * Changes the number of idle font resolvers retained per key and drops the current idle ones.
+     *
+     * @param maxIdlePerKey the maximum number of idle font resolvers retained per key
+     */
+    void setMaxIdlePerKey(int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+        clear();
+    }
+
+    /**
+     * Drops all idle font resolvers.
+     */
+    void clear() {
+        idle.clear();
+    }
+
+    /**
+     * @return the number of idle font resolvers across all keys
+     */
+    int idleCount() {
+        return idle.values().stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    /**
+     * Creates renderers for the pool.
+     */
+    @FunctionalInterface
+    interface RendererFactory {
+        /**
+         * @param fontDir the font directory, or null
+         * @param baseUri the base URI, or null
+         * @param fonts an idle font resolver with the fonts of the font directory, or null to create one
+         * @return a new renderer
+         */
+        ITextRenderer create(String fontDir, String baseUri, ITextFontResolver fonts);
+    }
+
+    private static final class Key {
+        private final String fontDir;
+
+        Key(String fontDir) {
+            this.fontDir = fontDir;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(fontDir, other.fontDir);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(fontDir);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent store of rendered PDFs in a local directory, keyed by a content hash of everything that
+ * determines the document, so results survive restarts.
+ *
+ * The directory belongs to a single store. Opening a store deletes the temporary files in it, which
+ * another store may still be writing, and the index of results and their use is kept in memory, so
+ * results stored by another store would be neither found nor counted toward the bound.
+ *
+ * Each result is a file named after its key. Stored results are memory-mapped and written to the caller's
+ * stream without being copied onto the heap first. New results are written to a temporary file and moved
+ * into place, so readers never see a partial file.
+ *
+ * The directory is bounded by the total size of its results: when it grows beyond the bound, the least
+ * recently used results are deleted. Use is tracked in memory; after a restart, results are ordered by the
+ * time they were stored.
+ */
+final class PdfResultStore {
+    private static final Logger logger = LoggerFactory.getLogger(PdfResultStore.class);
+    private static final String SUFFIX = ".pdf";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, StoredResult> results = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Opens a store, indexing the results already in the directory and deleting leftover temporary files.
+     *
+     * @param directory the directory holding the results; created if it does not exist
+     * @param maxBytes the maximum total size of the stored results in bytes
+     * @throws IOException if the directory cannot be created or listed
+     */
+    PdfResultStore(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(AtomicFileOutputStream.TEMP_SUFFIX)) {
+                    // Left behind by a process that stopped while storing a result
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX) && Files.isRegularFile(file)) {
+                    long size = Files.size(file);
+                    results.put(name, new StoredResult(size, Files.getLastModifiedTime(file).toMillis()));
+                    totalBytes.addAndGet(size);
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * @return the directory holding the results
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes a stored result to a stream. The stream is neither flushed nor closed.
+     *
+     * @param key the key of the result
+     * @param os the stream receiving the PDF
+     * @return true if the result was stored and written, false if it is not stored
+     * @throws IOException if the result cannot be read or written
+     */
+    boolean transferTo(ContentHash key, OutputStream os) throws IOException {
+        String name = fileName(key);
+        StoredResult result = results.get(name);
+        if (result == null) {
+            misses.increment();
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(name), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            WritableByteChannel out = Channels.newChannel(os);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted outside of the store
+            forget(name, result);
+            misses.increment();
+            return false;
+        }
+        result.lastUsed = System.currentTimeMillis();
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Stores a result, evicting the least recently used results if the store grows beyond its bound.
+     *
+     * @param key the key of the result
+     * @param pdf the PDF
+     * @throws IOException if the result cannot be written
+     */
+    void store(ContentHash key, byte[] pdf) throws IOException {
+        store(key, pdf, pdf.length);
+    }
+
+    /**
+     * Stores a result held in the first bytes of an array.
+     *
+     * @param key the key of the result
+     * @param pdf an array starting with the PDF
+     * @param length the length of the PDF
+     * @throws IOException if the result cannot be written
+     */
+    void store(ContentHash key, byte[] pdf, int length) throws IOException {
+        if (length > maxBytes) {
+            return;
+        }
+
+        String name = fileName(key);
+        // A lost result is rendered again, so it is not forced to storage
+        AtomicFileOutputStream os = new AtomicFileOutputStream(directory.resolve(name), FileSyncPolicy.NONE);
+        try {
+            os.write(pdf, 0, length);
+            os.commit();
+        } finally {
+            os.discard();
+        }
+
+        StoredResult previous = results.put(name, new StoredResult(length, System.currentTimeMillis()));
+        totalBytes.addAndGet(length - (previous != null ? previous.size : 0));
+        evict();
+    }
+
+    /**
+     * @return a snapshot of the store statistics; the weighted size is the total size in bytes
+     */
+    TemplateCacheStats stats() {
+        return new TemplateCacheStats(hits.sum(), misses.sum(), evictions.sum(), 0, results.size(), totalBytes.get());
+    }
+
+    private synchronized void evict() {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+
+        List<Map.Entry<String, StoredResult>> candidates = new ArrayList<>(results.entrySet());
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+        for (Map.Entry<String, StoredResult> candidate : candidates) {
+            if (totalBytes.get() <= maxBytes) {
+                break;
+            }
+            if (forget(candidate.getKey(), candidate.getValue())) {
+                evictions.increment();
+                try {
+                    // Readers that mapped the file keep their mapping
+                    Files.deleteIfExists(directory.resolve(candidate.getKey()));
+                } catch (IOException e) {
+                    logger.warn("Failed to delete stored PDF: {}", candidate.getKey(), e);
+                }
+            }
+        }
+    }
+
+    private boolean forget(String name, StoredResult result) {
+        if (results.remove(name, result)) {
+            totalBytes.addAndGet(-result.size);
+            return true;
+        }
+        return false;
+    }
+
+    private static String fileName(ContentHash key) {
+        return key.toHex() + SUFFIX;
+    }
+
+    private static final class StoredResult {
+        private final long size;
+        private volatile long lastUsed;
+
+        StoredResult(long size, long lastUsed) {
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import com.firefly.core.utils.template.TemplateRenderUtil.PdfOptions;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.SimpleBookmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits an XHTML document into segments that can be laid out independently, and concatenates the PDFs
+ * of the segments into one document.
+ *
+ * A document is split where its body contains {@link PdfOptions#SEGMENT_BREAK}. Every segment keeps the
+ * markup before and after the body, so it has the same styles and page setup, and starts on a new page.
+ */
+final class PdfSegments {
+    private static final Pattern BODY_START = Pattern.compile("<body\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+
+    private PdfSegments() {
+    }
+
+    /**
+     * Splits a document at its segment breaks. Adjacent parts are combined into segments of similar size
+     * when there are more parts than segments, and blank parts are dropped.
+     *
+     * @param xhtml the document
+     * @param maxSegments the maximum number of segments
+     * @return the segments, each a complete document; the document itself if it has no segment breaks
+     */
+    static List<String> split(String xhtml, int maxSegments) {
+        int firstBreak = xhtml.indexOf(PdfOptions.SEGMENT_BREAK);
+        if (firstBreak < 0) {
+            return List.of(xhtml);
+        }
+
+        // The body around the breaks; a document without a doctype is wrapped into another body
+        int bodyStart = -1;
+        Matcher matcher = BODY_START.matcher(xhtml);
+        while (matcher.find() && matcher.end() <= firstBreak) {
+            bodyStart = matcher.end();
+        }
+        int bodyEnd = xhtml.indexOf("</body>", xhtml.lastIndexOf(PdfOptions.SEGMENT_BREAK));
+        if (bodyStart < 0 || bodyEnd < 0) {
+            return List.of(xhtml);
+        }
+
+        List<String> parts = new ArrayList<>();
+        long partsLength = 0;
+        String body = xhtml.substring(bodyStart, bodyEnd);
+        int from = 0;
+        while (from <= body.length()) {
+            int to = body.indexOf(PdfOptions.SEGMENT_BREAK, from);
+            String part = body.substring(from, to >= 0 ? to : body.length());
+            if (!part.isBlank()) {
+                parts.add(part);
+                partsLength += part.length();
+            }
+            if (to < 0) {
+                break;
+            }
+            from = to + PdfOptions.SEGMENT_BREAK.length();
+        }
+        if (parts.size() <= 1) {
+            return List.of(xhtml);
+        }
+
+        String prefix = xhtml.substring(0, bodyStart);
+        String suffix = xhtml.substring(bodyEnd);
+        long target = partsLength / Math.max(1, Math.min(maxSegments, parts.size()));
+        List<String> segments = new ArrayList<>();
+        StringBuilder segment = new StringBuilder(prefix);
+        for (int i = 0; i < parts.size(); i++) {
+            segment.append(parts.get(i));
+            int remainingParts = parts.size() - i - 1;
+            boolean full = segment.length() - prefix.length() >= target;
+            if (remainingParts == 0 || (full && segments.size() + 1 < maxSegments)) {
+                segments.add(segment.append(suffix).toString());
+                segment = new StringBuilder(prefix);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Concatenates the PDFs of the segments of a document. The outlines of the segments are shifted to the
+     * pages of the concatenated document, followed by the bookmarks of the PDF options, whose page numbers
+     * already refer to the concatenated document. The document information, such as the title, is taken from
+     * the first segment.
+     *
+     * @param segments the PDFs of the segments, in order
+     * @param bookmarks the bookmarks to add
+     * @param os the stream to write the concatenated PDF to; it is closed when the document is complete
+     * @throws IOException if a segment cannot be read
+     * @throws DocumentException if the concatenated PDF cannot be written
+     */
+    static void merge(List<byte[]> segments, List<PdfOptions.Bookmark> bookmarks, OutputStream os)
+            throws IOException, DocumentException {
+        Document document = new Document();
+        PdfCopy copy = new PdfCopy(document, os);
+        List<Map<String, Object>> outline = new ArrayList<>();
+        int pageCount = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            PdfReader reader = new PdfReader(segments.get(i));
+            if (i == 0) {
+                copyInfo(reader.getInfo(), document);
+                document.open();
+            }
+            for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                copy.addPage(copy.getImportedPage(reader, page));
+            }
+            List<Map<String, Object>> segmentOutline = SimpleBookmark.getBookmarkList(reader);
+            if (segmentOutline != null) {
+                shiftPages(segmentOutline, pageCount);
+                outline.addAll(segmentOutline);
+            }
+            pageCount += reader.getNumberOfPages();
+            copy.freeReader(reader);
+            reader.close();
+        }
+
+        if (bookmarks != null && !bookmarks.isEmpty()) {
+            // Like the outline of a single-pass document: a closed root entry on the first page
+            Map<String, Object> root = outlineEntry("Root", 1);
+            root.put("Open", "false");
+            root.put("Kids", outlineEntries(bookmarks, pageCount));
+            outline.add(root);
+        }
+        if (!outline.isEmpty()) {
+            copy.setOutlines(outline);
+        }
+        document.close();
+    }
+
+    /**
+     * Moves the page destinations of outline entries and their children by a number of pages. A
+     * destination is the page number followed by how the page is shown, such as {@code "3 Fit"}.
+     */
+    @SuppressWarnings("unchecked")
+    private static void shiftPages(List<Map<String, Object>> entries, int pageShift) {
+        for (Map<String, Object> entry : entries) {
+            Object page = entry.get("Page");
+            if ("GoTo".equals(entry.get("Action")) && page instanceof String) {
+                String destination = ((String) page).trim();
+                int end = destination.indexOf(' ');
+                String number = end < 0 ? destination : destination.substring(0, end);
+                String view = end < 0 ? "" : destination.substring(end);
+                try {
+                    entry.put("Page", (Integer.parseInt(number) + pageShift) + view);
+                } catch (NumberFormatException e) {
+                    // A named destination, which does not refer to a page number
+                }
+            }
+            Object kids = entry.get("Kids");
+            if (kids instanceof List) {
+                shiftPages((List<Map<String, Object>>) kids, pageShift);
+            }
+        }
+    }
+
+    private static void copyInfo(Map<String, String> info, Document document) {
+        if (info.get("Title") != null) {
+            document.addTitle(info.get("Title"));
+        }
+        if (info.get("Author") != null) {
+            document.addAuthor(info.get("Author"));
+        }
+        if (info.get("Subject") != null) {
+            document.addSubject(info.get("Subject"));
+        }
+        if (info.get("Keywords") != null) {
+            document.addKeywords(info.get("Keywords"));
+        }
+        if (info.get("Creator") != null) {
+            document.addCreator(info.get("Creator"));
+        }
+    }
+
+    private static List<Map<String, Object>> outlineEntries(List<PdfOptions.Bookmark> bookmarks, int pageCount) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (PdfOptions.Bookmark bookmark : bookmarks) {
+            Map<String, Object> entry = outlineEntry(bookmark.getTitle(), pageNumber(bookmark.getDestination(), pageCount));
+            if (!bookmark.getChildren().isEmpty()) {
+                entry.put("Kids", outlineEntries(bookmark.getChildren(), pageCount));
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static Map<String, Object> outlineEntry(String title, int page) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("Title", title);
+        entry.put("Action", "GoTo");
+        entry.put("Page", page + " Fit");
+        return entry;
+    }
+
+    /**
+     * Resolves a bookmark destination the way single-pass rendering does: page numbers are clamped to the
+     * document, anything else points at the first page.
+     */
+    private static int pageNumber(String destination, int pageCount) {
+        if (destination == null || destination.isEmpty()) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(destination), pageCount));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
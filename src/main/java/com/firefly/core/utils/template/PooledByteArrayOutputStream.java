@@ -0,0 +1,132 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * In-memory output stream whose buffer comes from a {@link ByteArrayPool}. When the output outgrows the
+ * buffer, it moves to an array of the next size class and the smaller array goes back to the pool, so
+ * buffering a document allocates nothing once the pool is warm.
+ *
+ * {@link #close()} has no effect, since PDF writers close their stream when the document is complete;
+ * {@link #release()} returns the buffer to the pool, after which the stream and its views must not be used.
+ *
+ * Instances are not thread-safe.
+ */
+final class PooledByteArrayOutputStream extends OutputStream {
+    private final ByteArrayPool pool;
+    private byte[] buffer;
+    private int count;
+
+    PooledByteArrayOutputStream(ByteArrayPool pool) {
+        this.pool = pool;
+        this.buffer = pool.borrow(ByteArrayPool.MIN_CLASS_SIZE);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return the buffer, of which the first {@link #size()} bytes were written
+     */
+    byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * @return a copy of the bytes written
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Returns a read-only view of the bytes written, valid until the stream is written to again or released.
+     *
+     * @return a read-only buffer positioned at the first byte
+     */
+    ByteBuffer view() {
+        return ByteBuffer.wrap(buffer, 0, count).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the bytes written to another stream.
+     *
+     * @param os the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    void writeTo(OutputStream os) throws IOException {
+        os.write(buffer, 0, count);
+    }
+
+    /**
+     * Discards the bytes written, keeping the buffer.
+     */
+    void reset() {
+        count = 0;
+    }
+
+    /**
+     * Returns the buffer to the pool.
+     */
+    void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            count = 0;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer == null) {
+            throw new IllegalStateException("Buffer was released");
+        }
+        if (capacity < 0) {
+            throw new OutOfMemoryError("Output exceeds the maximum array size");
+        }
+        if (capacity > buffer.length) {
+            // The pool rounds up to the next size class; beyond the largest class, grow by half so that
+            // output does not grow byte by byte
+            byte[] larger = pool.borrow(Math.max(capacity, (int) Math.min(Integer.MAX_VALUE - 8, buffer.length * 3L / 2)));
+            System.arraycopy(buffer, 0, larger, 0, count);
+            pool.release(buffer);
+            buffer = larger;
+        }
+    }
+}
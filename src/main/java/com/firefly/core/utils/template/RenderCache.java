@@ -0,0 +1,201 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded, concurrent cache used by {@link TemplateRenderUtil} for parsed templates.
+ * Backed by Caffeine, so admission and eviction are frequency-aware (W-TinyLFU) rather
+ * than a plain LRU, and the bound can be either an entry count or a total weight.
+ *
+ * The bound can be changed at runtime without discarding the cache contents; switching
+ * between count- and weight-based bounds rebuilds the underlying cache and carries the
+ * current entries and statistics over.
+ *
+ * Loads through {@link #get(Object, Loader)} are single-flight: while one thread loads a key,
+ * other threads asking for the same key wait for that load instead of repeating it. Invalidating
+ * a key waits for its load to finish; {@link #invalidateAll()} does not reach loads in progress,
+ * so callers that replace what the values are loaded from must check the values they get.
+ * Callers that arrive while a key is being loaded and get the value without loading it themselves are
+ * counted as coalesced loads; Caffeine itself records them as hits.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class RenderCache<K, V> {
+    private final ToIntFunction<V> weigher;
+    private final Set<K> loading = ConcurrentHashMap.newKeySet();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private volatile Cache<K, V> cache;
+    private long maximumSize;
+    private long maximumWeight;
+    private CacheStats retiredStats = CacheStats.empty();
+
+    /**
+     * Loads a value on a cache miss.
+     *
+     * @param <V> the value type
+     */
+    @FunctionalInterface
+    interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    /**
+     * Creates a cache bounded by entry count.
+     *
+     * @param maximumSize the maximum number of entries
+     * @param weigher function used to weigh values once a weight bound is configured
+     */
+    RenderCache(long maximumSize, ToIntFunction<V> weigher) {
+        this.weigher = weigher;
+        this.maximumSize = maximumSize;
+        this.cache = buildCache();
+    }
+
+    V getIfPresent(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Returns the cached value for a key, loading it on a miss. Concurrent misses for the same
+     * key wait for a single load; a failed load is not cached.
+     *
+     * @param key the key to look up
+     * @param loader loads the value if it is not cached
+     * @return the cached or loaded value
+     * @throws IOException if the load fails
+     */
+    V get(K key, Loader<V> loader) throws IOException {
+        boolean inFlight = loading.contains(key);
+        boolean[] loaded = new boolean[1];
+        V value;
+        try {
+            value = cache.get(key, k -> {
+                loaded[0] = true;
+                loading.add(k);
+                try {
+                    return loader.load();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    loading.remove(k);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (inFlight && !loaded[0]) {
+            coalescedLoads.increment();
+        }
+        return value;
+    }
+
+    void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Bounds the cache by entry count. Excess entries are evicted according to the
+     * eviction policy instead of clearing the cache.
+     *
+     * @param maximumSize the maximum number of entries
+     */
+    synchronized void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        if (maximumWeight > 0) {
+            maximumWeight = 0;
+            rebuild();
+        } else {
+            cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(maximumSize));
+        }
+    }
+
+    /**
+     * Bounds the cache by the total weight of its values as computed by the weigher.
+     *
+     * @param maximumWeight the maximum total weight
+     */
+    synchronized void setMaximumWeight(long maximumWeight) {
+        boolean wasWeighted = this.maximumWeight > 0;
+        this.maximumWeight = maximumWeight;
+        if (wasWeighted) {
+            cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(maximumWeight));
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the current statistics
+     */
+    synchronized TemplateCacheStats stats() {
+        Cache<K, V> current = cache;
+        CacheStats stats = retiredStats.plus(current.stats());
+        long weightedSize = current.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(-1L))
+                .orElse(-1L);
+        return new TemplateCacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount(),
+                coalescedLoads.sum(), current.estimatedSize(), weightedSize);
+    }
+
+    private void rebuild() {
+        Cache<K, V> previous = cache;
+        Cache<K, V> replacement = buildCache();
+        replacement.putAll(previous.asMap());
+        retiredStats = retiredStats.plus(previous.stats());
+        cache = replacement;
+    }
+
+    private Cache<K, V> buildCache() {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .executor(Runnable::run)
+                .recordStats();
+        if (maximumWeight > 0) {
+            return builder
+                    .maximumWeight(maximumWeight)
+                    .<K, V>weigher((key, value) -> Math.max(1, weigher.applyAsInt(value)))
+                    .build();
+        }
+        return builder.maximumSize(maximumSize).build();
+    }
+}
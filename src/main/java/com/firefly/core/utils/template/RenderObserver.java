@@ -0,0 +1,109 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+/**
+ * Receives timings and sizes from {@link TemplateRenderUtil} as documents are rendered.
+ *
+ * All methods have empty default implementations, so an observer only overrides what it needs.
+ * Methods are called synchronously on the rendering thread and should return quickly; exceptions
+ * they throw are logged and otherwise ignored. Template names are null when rendering HTML that did
+ * not come from a template.
+ *
+ * @see TemplateRenderUtil#setRenderObserver(RenderObserver)
+ * @see MicrometerRenderObserver
+ */
+public interface RenderObserver {
+
+    /**
+     * Observer that ignores all events; used when no observer is set.
+     */
+    RenderObserver NOOP = new RenderObserver() {
+    };
+
+    /**
+     * The stages of a render, in the order they run.
+     */
+    enum Stage {
+        /** Looking up a compiled template in the cache, or loading and parsing it. */
+        TEMPLATE_LOAD,
+        /** Running the FreeMarker template against the data model. */
+        TEMPLATE_PROCESS,
+        /** Running the configured post-processor on the template output. */
+        POST_PROCESS,
+        /** Wrapping the HTML into an XHTML document and injecting page CSS. */
+        XHTML_PREPARE,
+        /** Creating or borrowing a PDF renderer, including font registration. */
+        RENDERER_SETUP,
+        /** Parsing the XHTML and loading stylesheets. */
+        DOCUMENT_LOAD,
+        /** Laying out the document into pages. */
+        LAYOUT,
+        /** Writing the PDF, including bookmarks. */
+        PDF_WRITE,
+        /** Adding bookmarks to the PDF outline; part of {@link #PDF_WRITE}. */
+        BOOKMARKS,
+        /** Concatenating the segments or parts of a document into one PDF, including bookmarks. */
+        PDF_MERGE,
+        /** Laying out and painting the document into an image. */
+        IMAGE_RENDER,
+        /** Encoding the image into the requested format. */
+        IMAGE_ENCODE
+    }
+
+    /**
+     * The kinds of rendered output.
+     */
+    enum Output {
+        /** Rendered HTML, measured in characters. */
+        HTML,
+        /** A PDF document, measured in bytes. */
+        PDF,
+        /** An encoded image, measured in bytes. */
+        IMAGE
+    }
+
+    /**
+     * Called when a render stage completes successfully.
+     *
+     * @param stage the completed stage
+     * @param templateName the template being rendered, or null
+     * @param durationNanos the time the stage took, in nanoseconds
+     */
+    default void onStage(Stage stage, String templateName, long durationNanos) {
+    }
+
+    /**
+     * Called when a render produced its output.
+     *
+     * @param output the kind of output
+     * @param templateName the template being rendered, or null
+     * @param size the output size, in characters for HTML and bytes otherwise
+     */
+    default void onOutput(Output output, String templateName, long size) {
+    }
+
+    /**
+     * Called for every template cache lookup while template caching is enabled.
+     *
+     * @param templateName the template looked up
+     * @param hit whether a compiled template was found, or a load was already in progress
+     */
+    default void onTemplateCacheLookup(String templateName, boolean hit) {
+    }
+}
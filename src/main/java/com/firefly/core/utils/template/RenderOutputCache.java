@@ -0,0 +1,371 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import com.firefly.core.utils.template.TemplateRenderUtil.PdfOptions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.temporal.TemporalAccessor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of rendered output (HTML strings and PDF bytes) for templates that render the same document
+ * whenever they are given the same data model.
+ *
+ * Only templates that were explicitly enabled are cached, since a template that reads the current time,
+ * random values or other state outside its data model must be rendered every time. Entries are keyed by
+ * the template name, the configuration generation, a hash of the data model and, for PDFs, a hash of
+ * the PDF options. They expire a fixed time after they were written and are bounded by their total size.
+ *
+ * The cache also keeps the hash of the sources each cached template renders from, for the keys of the
+ * {@link PdfResultStore}, and drops it along with the template's output.
+ *
+ * Data models are hashed by value: strings, numbers, booleans, characters, enums, dates and other
+ * immutable value types, and maps, collections and arrays of those. Maps and sets are hashed in their
+ * iteration order, which is the order a template lists them in, so models that differ only in that order
+ * are different models. A data model containing any other object, such as a bean whose state cannot be
+ * hashed reliably, is not cached.
+ */
+final class RenderOutputCache {
+    private static final int MAX_DEPTH = 32;
+
+    private final Set<String> cachedTemplates = ConcurrentHashMap.newKeySet();
+    private final Map<String, SourceHash> sourceHashes = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private volatile Cache<Key, Object> cache;
+    private CacheStats retiredStats = CacheStats.empty();
+    private long maxBytes;
+    private Duration ttl;
+
+    /**
+     * @param maxBytes the maximum total size of the cached output in bytes
+     * @param ttl how long an entry is kept after it was written
+     */
+    RenderOutputCache(long maxBytes, Duration ttl) {
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.cache = buildCache();
+    }
+
+    /**
+     * Enables or disables output caching for a template. Disabling drops its cached output.
+     *
+     * @param templateName the template name
+     * @param enabled true if the template renders the same output for the same data model
+     */
+    void setEnabled(String templateName, boolean enabled) {
+        if (enabled) {
+            cachedTemplates.add(templateName);
+        } else {
+            cachedTemplates.remove(templateName);
+            invalidate(Collections.singleton(templateName));
+        }
+    }
+
+    /**
+     * @param templateName the template name
+     * @return true if output caching is enabled for the template
+     */
+    boolean isEnabled(String templateName) {
+        return !cachedTemplates.isEmpty() && cachedTemplates.contains(templateName);
+    }
+
+    /**
+     * Changes the bounds of the cache, dropping the cached output.
+     *
+     * @param maxBytes the maximum total size of the cached output in bytes
+     * @param ttl how long an entry is kept after it was written
+     */
+    synchronized void setLimits(long maxBytes, Duration ttl) {
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        epoch.incrementAndGet();
+        retiredStats = retiredStats.plus(cache.stats());
+        cache = buildCache();
+    }
+
+    /**
+     * Computes the cache key of a render.
+     *
+     * @param templateName the template name
+     * @param generation the generation of the configuration used for the render
+     * @param dataModel the data model
+     * @param options the PDF options, or null for HTML output
+     * @return the key, or null if the data model contains values that cannot be hashed
+     */
+    Key key(String templateName, long generation, Map<String, Object> dataModel, PdfOptions options) {
+        ContentHasher hasher = new ContentHasher()
+                .putString(templateName)
+                .putLong(generation)
+                .putBoolean(options != null);
+        if (options != null) {
+            options.hashInto(hasher);
+        }
+        ContentHash model = hashValue(dataModel, 0);
+        if (model == null) {
+            return null;
+        }
+        return new Key(templateName, hasher.putHash(model).hash());
+    }
+
+    /**
+     * @return the current invalidation epoch, to be passed to {@link #put(Key, Object, long)}
+     */
+    long epoch() {
+        return epoch.get();
+    }
+
+    /**
+     * @param key the key of the render
+     * @return the cached HTML string or PDF bytes, or null
+     */
+    Object get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Caches rendered output, unless the cache was invalidated since the render started.
+     *
+     * @param key the key of the render
+     * @param output the HTML string or PDF bytes, which must not be modified afterwards
+     * @param startEpoch the epoch read before the render started
+     */
+    void put(Key key, Object output, long startEpoch) {
+        cache.put(key, output);
+        if (epoch.get() != startEpoch) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Returns the hash of the sources a template renders from, computing it once per configuration
+     * generation. A hash computed while the template was invalidated is returned but not kept.
+     *
+     * @param templateName the template name
+     * @param generation the generation of the configuration used for the render
+     * @param hasher computes the hash
+     * @return the hash, or null if the hasher found sources that cannot be hashed
+     * @throws IOException if the hasher fails
+     */
+    ContentHash sourceHash(String templateName, long generation, SourceHasher hasher) throws IOException {
+        SourceHash cached = sourceHashes.get(templateName);
+        if (cached != null && cached.generation == generation) {
+            return cached.hash;
+        }
+
+        long startEpoch = epoch.get();
+        ContentHash hash = hasher.hash();
+        sourceHashes.put(templateName, new SourceHash(generation, hash));
+        if (epoch.get() != startEpoch) {
+            sourceHashes.remove(templateName);
+        }
+        return hash;
+    }
+
+    /**
+     * Drops the cached output and source hashes of the given templates.
+     *
+     * @param templateNames the template names
+     */
+    void invalidate(Collection<String> templateNames) {
+        epoch.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> templateNames.contains(key.templateName));
+        sourceHashes.keySet().removeAll(templateNames);
+    }
+
+    /**
+     * Drops all cached output and source hashes.
+     */
+    void invalidateAll() {
+        epoch.incrementAndGet();
+        cache.invalidateAll();
+        sourceHashes.clear();
+    }
+
+    /**
+     * @return a snapshot of the cache statistics; the weighted size is in bytes
+     */
+    synchronized TemplateCacheStats stats() {
+        Cache<Key, Object> current = cache;
+        CacheStats stats = retiredStats.plus(current.stats());
+        long weightedSize = current.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(-1L))
+                .orElse(-1L);
+        return new TemplateCacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount(), 0,
+                current.estimatedSize(), weightedSize);
+    }
+
+    private Cache<Key, Object> buildCache() {
+        return Caffeine.newBuilder()
+                .executor(Runnable::run)
+                .expireAfterWrite(ttl)
+                .maximumWeight(maxBytes)
+                .<Key, Object>weigher((key, value) -> Math.max(1, weigh(value)))
+                .recordStats()
+                .build();
+    }
+
+    private static int weigh(Object output) {
+        if (output instanceof byte[]) {
+            return ((byte[]) output).length;
+        }
+        // UTF-16
+        int chars = ((String) output).length();
+        return chars > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : chars * 2;
+    }
+
+    /**
+     * Hashes a data model value by its content. Containers are hashed in iteration order.
+     *
+     * @return the hash, or null if the value or one of its elements cannot be hashed
+     */
+    static ContentHash hashValue(Object value, int depth) {
+        if (depth > MAX_DEPTH) {
+            return null;
+        }
+
+        ContentHasher hasher = new ContentHasher();
+        if (value == null) {
+            hasher.putByte(0);
+        } else if (value instanceof CharSequence) {
+            hasher.putByte(1).putString((CharSequence) value);
+        } else if (value instanceof Boolean) {
+            hasher.putByte(2).putBoolean((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            hasher.putByte(3).putString(value.getClass().getName()).putLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            hasher.putByte(4).putString(value.getClass().getName())
+                    .putLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            hasher.putByte(5).putString(value.getClass().getName()).putString(value.toString());
+        } else if (value instanceof Character) {
+            hasher.putByte(6).putChar((Character) value);
+        } else if (value instanceof Enum) {
+            hasher.putByte(7).putString(((Enum<?>) value).getDeclaringClass().getName())
+                    .putString(((Enum<?>) value).name());
+        } else if (value instanceof Date) {
+            hasher.putByte(8).putString(value.getClass().getName()).putLong(((Date) value).getTime());
+        } else if (value instanceof TemporalAccessor || value instanceof UUID || value instanceof Locale
+                || value instanceof Currency || value instanceof Duration) {
+            // Immutable value types whose string form identifies the value
+            hasher.putByte(9).putString(value.getClass().getName()).putString(value.toString());
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            hasher.putByte(10).putInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                ContentHash key = hashValue(entry.getKey(), depth + 1);
+                ContentHash entryValue = hashValue(entry.getValue(), depth + 1);
+                if (key == null || entryValue == null) {
+                    return null;
+                }
+                hasher.putHash(key).putHash(entryValue);
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            hasher.putByte(value instanceof Set ? 11 : 12).putInt(collection.size());
+            for (Object element : collection) {
+                ContentHash hash = hashValue(element, depth + 1);
+                if (hash == null) {
+                    return null;
+                }
+                hasher.putHash(hash);
+            }
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            hasher.putByte(12).putInt(length);
+            for (int i = 0; i < length; i++) {
+                ContentHash hash = hashValue(Array.get(value, i), depth + 1);
+                if (hash == null) {
+                    return null;
+                }
+                hasher.putHash(hash);
+            }
+        } else {
+            return null;
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Computes the hash of the sources a template renders from.
+     */
+    @FunctionalInterface
+    interface SourceHasher {
+        /**
+         * @return the hash, or null if the sources cannot be hashed
+         * @throws IOException if a source cannot be loaded
+         */
+        ContentHash hash() throws IOException;
+    }
+
+    private static final class SourceHash {
+        private final long generation;
+        private final ContentHash hash;
+
+        SourceHash(long generation, ContentHash hash) {
+            this.generation = generation;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Key of a cached render. The template name is kept to drop the entries of changed templates.
+     */
+    static final class Key {
+        private final String templateName;
+        private final ContentHash hash;
+
+        Key(String templateName, ContentHash hash) {
+            this.templateName = templateName;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash.equals(other.hash) && templateName.equals(other.templateName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+}
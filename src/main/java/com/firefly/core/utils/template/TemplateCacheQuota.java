@@ -0,0 +1,102 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+/**
+ * Immutable bounds for the template caches of a {@link TemplateNamespace}.
+ *
+ * Templates loaded by name are bounded either by their count or by their total source length;
+ * compiled template strings are always bounded by their count.
+ */
+public final class TemplateCacheQuota {
+    /**
+     * The quota of namespaces created without one: 100 templates and 256 template strings,
+     * the same bounds as the renderer's own caches.
+     */
+    public static final TemplateCacheQuota DEFAULT = new TemplateCacheQuota(100, -1, 256);
+
+    private final int maxSize;
+    private final long maxWeight;
+    private final int inlineMaxSize;
+
+    private TemplateCacheQuota(int maxSize, long maxWeight, int inlineMaxSize) {
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.inlineMaxSize = inlineMaxSize;
+    }
+
+    /**
+     * Creates a quota bounding the number of cached templates.
+     *
+     * @param maxSize the maximum number of cached templates
+     * @return a quota with the default bound for template strings
+     */
+    public static TemplateCacheQuota ofSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Template cache max size must be at least 1");
+        }
+        return new TemplateCacheQuota(maxSize, -1, DEFAULT.inlineMaxSize);
+    }
+
+    /**
+     * Creates a quota bounding the total source length of cached templates.
+     *
+     * @param maxWeight the maximum total template size in characters
+     * @return a quota with the default bound for template strings
+     */
+    public static TemplateCacheQuota ofWeight(long maxWeight) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Template cache max weight must be at least 1");
+        }
+        return new TemplateCacheQuota(-1, maxWeight, DEFAULT.inlineMaxSize);
+    }
+
+    /**
+     * Returns a copy of this quota with a different bound for compiled template strings.
+     *
+     * @param inlineMaxSize the maximum number of cached template strings
+     * @return a new quota
+     */
+    public TemplateCacheQuota withInlineMaxSize(int inlineMaxSize) {
+        if (inlineMaxSize < 1) {
+            throw new IllegalArgumentException("Inline template cache max size must be at least 1");
+        }
+        return new TemplateCacheQuota(maxSize, maxWeight, inlineMaxSize);
+    }
+
+    /**
+     * @return the maximum number of cached templates, or -1 if the quota is bounded by weight
+     */
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * @return the maximum total template size in characters, or -1 if the quota is bounded by count
+     */
+    public long getMaxWeight() { return maxWeight; }
+
+    /**
+     * @return the maximum number of cached template strings
+     */
+    public int getInlineMaxSize() { return inlineMaxSize; }
+
+    @Override
+    public String toString() {
+        return "TemplateCacheQuota{maxSize=" + maxSize + ", maxWeight=" + maxWeight
+                + ", inlineMaxSize=" + inlineMaxSize + "}";
+    }
+}
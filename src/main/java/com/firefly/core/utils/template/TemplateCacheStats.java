@@ -0,0 +1,88 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+/**
+ * Immutable snapshot of template cache statistics.
+ * Counters are cumulative since the cache was created; size values reflect the moment
+ * the snapshot was taken.
+ */
+public final class TemplateCacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long coalescedLoadCount;
+    private final long size;
+    private final long weightedSize;
+
+    TemplateCacheStats(long hitCount, long missCount, long evictionCount, long coalescedLoadCount,
+                       long size, long weightedSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.coalescedLoadCount = coalescedLoadCount;
+        this.size = size;
+        this.weightedSize = weightedSize;
+    }
+
+    /**
+     * @return the number of lookups that found a cached template
+     */
+    public long getHitCount() { return hitCount; }
+
+    /**
+     * @return the number of lookups that had to load the template
+     */
+    public long getMissCount() { return missCount; }
+
+    /**
+     * @return the number of templates evicted because the cache reached its bound
+     */
+    public long getEvictionCount() { return evictionCount; }
+
+    /**
+     * @return the number of lookups that waited for another thread's load of the same template
+     *         instead of loading it again; these are also counted as hits
+     */
+    public long getCoalescedLoadCount() { return coalescedLoadCount; }
+
+    /**
+     * @return the approximate number of cached templates
+     */
+    public long getSize() { return size; }
+
+    /**
+     * @return the total weight of cached templates, or -1 if the cache is bounded by entry count
+     */
+    public long getWeightedSize() { return weightedSize; }
+
+    /**
+     * @return the ratio of hits to lookups, or 1.0 if there were no lookups
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateCacheStats{hits=" + hitCount + ", misses=" + missCount
+                + ", evictions=" + evictionCount + ", coalescedLoads=" + coalescedLoadCount + ", size=" + size
+                + ", weightedSize=" + weightedSize + "}";
+    }
+}
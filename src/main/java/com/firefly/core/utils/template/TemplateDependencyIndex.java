@@ -0,0 +1,237 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import freemarker.core.TemplateElement;
+import freemarker.template.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the {@code #include} and {@code #import} edges between templates, used to find the templates
+ * whose rendered output is affected when another template changes.
+ *
+ * A compiled template does not contain what it includes, since FreeMarker resolves includes every time a
+ * template is processed, so compiled templates never need to follow their includes. Cached output does:
+ * it was rendered with the old content of every included template.
+ *
+ * Edges are read from the parsed template tree when a template is loaded, and the templates it includes
+ * are indexed in turn, so indirect dependents are found too. Only includes with a literal template name
+ * can be indexed; a name computed at render time is unknown until the template is processed. Names are
+ * resolved the way FreeMarker resolves them, relative to the including template unless they start with
+ * {@code /}.
+ */
+final class TemplateDependencyIndex {
+    private static final Logger logger = LoggerFactory.getLogger(TemplateDependencyIndex.class);
+
+    // The canonical form of an include or import starts with the quoted template name
+    private static final Pattern LITERAL_NAME = Pattern.compile("^<#(?:include|import) \"([^\"\\\\]*)\"");
+    // An interpolation in the quoted name, in any of FreeMarker's interpolation syntaxes
+    private static final Pattern INTERPOLATION = Pattern.compile("\\$\\{|#\\{|\\[=");
+
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+
+    /**
+     * Loads a template included by another template.
+     */
+    @FunctionalInterface
+    interface TemplateSource {
+        Template getTemplate(String name) throws IOException;
+    }
+
+    /**
+     * Records the includes and imports of a template, replacing what was recorded for it before, and
+     * indexes the templates it includes that are not indexed yet.
+     *
+     * @param template the loaded template
+     * @param source loads included templates; templates that cannot be loaded are skipped
+     */
+    void record(Template template, TemplateSource source) {
+        Deque<Template> pending = new ArrayDeque<>();
+        pending.push(template);
+        while (!pending.isEmpty()) {
+            Template current = pending.pop();
+            Set<String> includes = findDependencies(current);
+            for (String name : setDependencies(current.getName(), includes)) {
+                try {
+                    pending.push(source.getTemplate(name));
+                } catch (IOException | RuntimeException e) {
+                    // Typically an include guarded by a condition; its edge is still recorded
+                    logger.debug("Cannot index template {} included by {}", name, current.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the templates that include or import a template, directly or through other templates.
+     *
+     * @param name the name of the template
+     * @return the names of the dependent templates, not including the template itself
+     */
+    synchronized Set<String> dependentsOf(String name) {
+        Set<String> found = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(name);
+        while (!pending.isEmpty()) {
+            for (String dependent : dependents.getOrDefault(pending.pop(), Collections.emptySet())) {
+                if (!dependent.equals(name) && found.add(dependent)) {
+                    pending.push(dependent);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param name the name of a template
+     * @return the templates the template includes or imports directly, or an empty set if it is not indexed
+     */
+    synchronized Set<String> dependenciesOf(String name) {
+        return new HashSet<>(dependencies.getOrDefault(name, Collections.emptySet()));
+    }
+
+    /**
+     * Forgets all edges.
+     */
+    synchronized void clear() {
+        dependencies.clear();
+        dependents.clear();
+    }
+
+    /**
+     * Replaces the recorded dependencies of a template.
+     *
+     * @return the dependencies that are not indexed themselves yet
+     */
+    private synchronized Set<String> setDependencies(String name, Set<String> includes) {
+        Set<String> previous = dependencies.put(name, includes);
+        if (previous != null) {
+            for (String include : previous) {
+                Set<String> users = dependents.get(include);
+                if (users != null) {
+                    users.remove(name);
+                    if (users.isEmpty()) {
+                        dependents.remove(include);
+                    }
+                }
+            }
+        }
+
+        Set<String> unindexed = new HashSet<>();
+        for (String include : includes) {
+            dependents.computeIfAbsent(include, key -> new HashSet<>()).add(name);
+            if (!dependencies.containsKey(include)) {
+                unindexed.add(include);
+            }
+        }
+        return unindexed;
+    }
+
+    /**
+     * Finds the literal template names included or imported by a template.
+     *
+     * @param template a parsed template
+     * @return the root-based names of the included and imported templates
+     */
+    static Set<String> findDependencies(Template template) {
+        Set<String> names = new LinkedHashSet<>();
+        findDependencies(template, names);
+        return names;
+    }
+
+    /**
+     * Adds the literal template names included or imported by a template to a set.
+     *
+     * @param template a parsed template
+     * @param names receives the root-based names of the included and imported templates
+     * @return true if every include and import has a literal name, false if some name is computed
+     */
+    // FreeMarker has no public API for the parsed tree; TemplateElement and its accessors are deprecated
+    // only to mark them as internal. Reading the tree avoids parsing the template source a second time.
+    @SuppressWarnings("deprecation")
+    static boolean findDependencies(Template template, Set<String> names) {
+        boolean literal = true;
+        Deque<TemplateElement> pending = new ArrayDeque<>();
+        pending.push(template.getRootTreeNode());
+        while (!pending.isEmpty()) {
+            TemplateElement element = pending.pop();
+            String nodeName = element.getNodeName();
+            if ("Include".equals(nodeName) || "LibraryLoad".equals(nodeName)) {
+                Matcher matcher = LITERAL_NAME.matcher(element.getCanonicalForm());
+                if (matcher.find() && !INTERPOLATION.matcher(matcher.group(1)).find()) {
+                    names.add(resolve(template.getName(), matcher.group(1)));
+                } else {
+                    literal = false;
+                    logger.debug("Template {} includes a template by a computed name at {}",
+                            template.getName(), element.getStartLocation());
+                }
+            }
+            for (int i = 0; i < element.getChildCount(); i++) {
+                pending.push((TemplateElement) element.getChildAt(i));
+            }
+        }
+        return literal;
+    }
+
+    /**
+     * Resolves an included template name against the name of the including template.
+     *
+     * @param baseName the root-based name of the including template
+     * @param name the name as written in the include
+     * @return the root-based name of the included template
+     */
+    static String resolve(String baseName, String name) {
+        if (name.contains("://")) {
+            return name;
+        }
+        String path;
+        if (name.startsWith("/")) {
+            path = name;
+        } else {
+            int slash = baseName.lastIndexOf('/');
+            path = slash < 0 ? name : baseName.substring(0, slash + 1) + name;
+        }
+
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+}
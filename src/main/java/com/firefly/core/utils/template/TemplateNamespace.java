@@ -0,0 +1,235 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import com.firefly.core.utils.template.TemplateRenderUtil.PdfOptions;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * A tenant's view of a {@link TemplateRenderer} with template caches of its own.
+ *
+ * Templates are loaded and rendered with the renderer's configuration, but parsed templates and
+ * compiled template strings are cached per namespace, within the namespace's {@link TemplateCacheQuota}.
+ * A tenant that renders many different templates therefore only evicts its own entries, and its hit
+ * and miss counters are reported separately.
+ *
+ * A miss in a namespace's template cache still loads the template through the renderer's FreeMarker
+ * configuration, whose own cache ({@link freemarker.cache.SoftCacheStorage}) is shared by the renderer
+ * and all its namespaces. That cache is not bounded by any quota; its entries are softly referenced and
+ * only released by the garbage collector under memory pressure. Compiled template strings do not go
+ * through it.
+ *
+ * Namespaces are created with {@link TemplateRenderer#namespace(String)}. Changes to templates and to
+ * the renderer's configuration invalidate the caches of all namespaces, like those of the renderer.
+ */
+public final class TemplateNamespace {
+    private final TemplateRenderer renderer;
+    private final String name;
+    final RenderCache<String, Template> templateCache;
+    final RenderCache<ContentHash, Template> inlineTemplateCache;
+    private volatile TemplateCacheQuota quota;
+    private volatile boolean removed = false;
+
+    TemplateNamespace(TemplateRenderer renderer, String name, TemplateCacheQuota quota) {
+        this.renderer = renderer;
+        this.name = name;
+        this.templateCache = new RenderCache<>(TemplateCacheQuota.DEFAULT.getMaxSize(), TemplateRenderer::templateWeight);
+        this.inlineTemplateCache = new RenderCache<>(quota.getInlineMaxSize(), TemplateRenderer::templateWeight);
+        setQuota(quota);
+    }
+
+    /**
+     * @return the name of the namespace
+     */
+    public String getName() { return name; }
+
+    /**
+     * @return the bounds of the namespace's caches
+     */
+    public TemplateCacheQuota getQuota() { return quota; }
+
+    /**
+     * Changes the bounds of the namespace's caches. Entries over the new bounds are evicted.
+     *
+     * @param quota the new bounds
+     */
+    void setQuota(TemplateCacheQuota quota) {
+        if (quota.getMaxWeight() > 0) {
+            templateCache.setMaximumWeight(quota.getMaxWeight());
+        } else {
+            templateCache.setMaximumSize(quota.getMaxSize());
+        }
+        inlineTemplateCache.setMaximumSize(quota.getInlineMaxSize());
+        this.quota = quota;
+    }
+
+    /**
+     * Renders a template to an XHTML string, caching the parsed template in this namespace.
+     *
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @return the rendered HTML as a string
+     * @throws IOException if the template cannot be read
+     * @throws TemplateException if the template cannot be processed
+     */
+    public String renderTemplateToHtml(String templateName, Map<String, Object> dataModel)
+            throws IOException, TemplateException {
+        checkNotRemoved();
+        return renderer.renderTemplateToHtml(templateCache, templateName, dataModel);
+    }
+
+    /**
+     * Renders a template directly to a writer, caching the parsed template in this namespace.
+     * The writer is neither flushed nor closed.
+     *
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @param out the writer receiving the rendered HTML
+     * @throws IOException if the template cannot be read or the output cannot be written
+     * @throws TemplateException if the template cannot be processed
+     */
+    public void renderTemplateToHtml(String templateName, Map<String, Object> dataModel, Writer out)
+            throws IOException, TemplateException {
+        checkNotRemoved();
+        renderer.renderTemplateToHtml(templateCache, templateName, dataModel, out);
+    }
+
+    /**
+     * Renders a template string to an HTML string, caching the compiled template in this namespace.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @return the rendered HTML as a string
+     * @throws IOException if an I/O error occurs
+     * @throws TemplateException if the template cannot be processed
+     */
+    public String renderTemplateStringToHtml(String templateContent, String templateName,
+                                             Map<String, Object> dataModel) throws IOException, TemplateException {
+        checkNotRemoved();
+        return renderer.renderTemplateStringToHtml(inlineTemplateCache, templateContent, templateName, dataModel);
+    }
+
+    /**
+     * Renders a template directly to PDF.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param os the output stream to write the PDF to
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateToPdf(String templateName, Map<String, Object> dataModel,
+                                    OutputStream os, PdfOptions options) throws Exception {
+        String html = renderTemplateToHtml(templateName, dataModel);
+        renderer.renderHtmlToPdf(html, os, options, templateName);
+    }
+
+    /**
+     * Renders a template to a PDF and returns it as a byte array.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateToPdfBytes(String templateName, Map<String, Object> dataModel,
+                                           PdfOptions options) throws Exception {
+        PooledByteArrayOutputStream pdf = new PooledByteArrayOutputStream(TemplateRenderer.bufferPool);
+        try {
+            renderTemplateToPdf(templateName, dataModel, pdf, options);
+            return pdf.toByteArray();
+        } finally {
+            pdf.release();
+        }
+    }
+
+    /**
+     * Renders a template string to a PDF and returns it as a byte array.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateStringToPdfBytes(String templateContent, String templateName,
+                                                 Map<String, Object> dataModel, PdfOptions options) throws Exception {
+        String html = renderTemplateStringToHtml(templateContent, templateName, dataModel);
+        PooledByteArrayOutputStream pdf = new PooledByteArrayOutputStream(TemplateRenderer.bufferPool);
+        try {
+            renderer.renderHtmlToPdf(html, pdf, options, templateName);
+            return pdf.toByteArray();
+        } finally {
+            pdf.release();
+        }
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of this namespace's template cache.
+     *
+     * @return a snapshot of the template cache statistics
+     */
+    public TemplateCacheStats getTemplateCacheStats() {
+        return templateCache.stats();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of this namespace's cache of compiled template strings.
+     *
+     * @return a snapshot of the inline template cache statistics
+     */
+    public TemplateCacheStats getInlineTemplateCacheStats() {
+        return inlineTemplateCache.stats();
+    }
+
+    /**
+     * Clears this namespace's caches. The caches of the renderer and of other namespaces are kept.
+     */
+    public void clearTemplateCache() {
+        templateCache.invalidateAll();
+        inlineTemplateCache.invalidateAll();
+    }
+
+    /**
+     * Clears the caches of a namespace that was removed from its renderer and rejects further renders.
+     */
+    void remove() {
+        removed = true;
+        clearTemplateCache();
+    }
+
+    private void checkNotRemoved() {
+        if (removed) {
+            throw new IllegalStateException("Template namespace was removed: " + name);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateNamespace{name=" + name + ", quota=" + quota + "}";
+    }
+}
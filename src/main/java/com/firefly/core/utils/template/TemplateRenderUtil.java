@@ -17,57 +17,31 @@
 
 package com.firefly.core.utils.template;
 
-import freemarker.cache.ClassTemplateLoader;
-import freemarker.cache.FileTemplateLoader;
-import freemarker.cache.MultiTemplateLoader;
 import freemarker.cache.TemplateLoader;
-import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
-import freemarker.template.TemplateExceptionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xhtmlrenderer.pdf.ITextRenderer;
-import org.xhtmlrenderer.pdf.ITextUserAgent;
-import org.xhtmlrenderer.layout.SharedContext;
-import org.xhtmlrenderer.swing.Java2DRenderer;
-import org.xhtmlrenderer.util.FSImageWriter;
-import com.lowagie.text.DocumentException;
-import com.lowagie.text.pdf.PdfReader;
-import com.lowagie.text.pdf.PdfStamper;
-import com.lowagie.text.pdf.PdfWriter;
-import com.lowagie.text.Rectangle;
-import com.lowagie.text.Element;
-import com.lowagie.text.pdf.PdfContentByte;
-import com.lowagie.text.pdf.BaseFont;
-import com.lowagie.text.pdf.PdfGState;
-import com.lowagie.text.pdf.PdfDictionary;
-import com.lowagie.text.pdf.PdfName;
-import com.lowagie.text.pdf.PdfString;
-import com.lowagie.text.pdf.PdfOutline;
-import com.lowagie.text.pdf.PdfAction;
-import com.lowagie.text.pdf.PdfDestination;
-
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+
+
 import java.io.*;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Locale;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 /**
  * Utility for rendering FreeMarker templates to XHTML, PDF, and images using Flying Saucer.
@@ -81,81 +55,22 @@ import java.util.function.BiFunction;
  * - Template validation
  * - HTML to image conversion
  * - Enhanced PDF options (watermarks, encryption, metadata)
+ *
+ * The static methods render with a process-wide default {@link TemplateRenderer}, which the setters of
+ * this class reconfigure. Applications that need several configurations, such as one per tenant, build
+ * their own renderers with {@link TemplateRenderer#builder()}.
  */
 public class TemplateRenderUtil {
     private static final Logger logger = LoggerFactory.getLogger(TemplateRenderUtil.class);
-    private static final List<TemplateLoader> additionalLoaders = new ArrayList<>();
-    private static Configuration freemarkerConfig = createFreemarkerConfig();
-    private static final Map<String, Template> templateCache = new ConcurrentHashMap<>();
-    private static boolean templateCachingEnabled = true;
-    private static int templateCacheMaxSize = 100;
-    private static final Map<String, Object> sharedVariables = new HashMap<>();
-    private static ExecutorService executorService = Executors.newFixedThreadPool(
-            Math.max(2, Runtime.getRuntime().availableProcessors()));
-    private static BiFunction<String, Map<String, Object>, String> templatePreProcessor = null;
-    private static BiFunction<String, Map<String, Object>, String> templatePostProcessor = null;
-
-    /**
-     * Creates the default FreeMarker configuration.
-     *
-     * @return A configured FreeMarker Configuration instance
-     */
-    private static Configuration createFreemarkerConfig() {
-        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
-        cfg.setDefaultEncoding(StandardCharsets.UTF_8.name());
-        cfg.setLocale(Locale.US);
-        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
-
-        // Multi-loader: first classpath:/templates, then ./templates
-        ClassTemplateLoader ctl = new ClassTemplateLoader(
-                Thread.currentThread().getContextClassLoader(), "/templates");
-        try {
-            FileTemplateLoader ftl = new FileTemplateLoader(new File("templates"));
-            List<TemplateLoader> loaderList = new ArrayList<>();
-            loaderList.add(ctl);
-            loaderList.add(ftl);
-            loaderList.addAll(additionalLoaders);
-
-            TemplateLoader[] loaders = loaderList.toArray(new TemplateLoader[0]);
-            cfg.setTemplateLoader(new MultiTemplateLoader(loaders));
-        } catch (IOException e) {
-            logger.warn("Filesystem loader not available, falling back to classpath only", e);
-
-            if (additionalLoaders.isEmpty()) {
-                cfg.setTemplateLoader(ctl);
-            } else {
-                List<TemplateLoader> loaderList = new ArrayList<>();
-                loaderList.add(ctl);
-                loaderList.addAll(additionalLoaders);
-                TemplateLoader[] loaders = loaderList.toArray(new TemplateLoader[0]);
-                cfg.setTemplateLoader(new MultiTemplateLoader(loaders));
-            }
-        }
-
-        return cfg;
-    }
+    private static final TemplateRenderer defaultRenderer = new TemplateRenderer();
 
     /**
-     * Resets the FreeMarker configuration with the current settings.
-     * This is useful after adding custom template loaders or changing configuration.
+     * Returns the renderer used by the static methods of this class.
+     *
+     * @return the default renderer
      */
-    private static void resetConfiguration() {
-        // Clear the template cache when resetting configuration
-        templateCache.clear();
-
-        // Recreate the configuration with current settings
-        freemarkerConfig = createFreemarkerConfig();
-
-        // Re-apply shared variables
-        for (Map.Entry<String, Object> entry : sharedVariables.entrySet()) {
-            try {
-                freemarkerConfig.setSharedVariable(entry.getKey(), entry.getValue());
-            } catch (TemplateException e) {
-                logger.error("Failed to set shared variable: {}", entry.getKey(), e);
-            }
-        }
-
-        logger.info("FreeMarker configuration has been reset");
+    public static TemplateRenderer getDefaultRenderer() {
+        return defaultRenderer;
     }
 
     /**
@@ -166,13 +81,7 @@ public class TemplateRenderUtil {
      * @throws TemplateException if the variable cannot be set
      */
     public static void addSharedVariable(String name, Object value) throws TemplateException {
-        if (name == null || name.trim().isEmpty()) {
-            throw new IllegalArgumentException("Variable name cannot be null or empty");
-        }
-
-        sharedVariables.put(name, value);
-        freemarkerConfig.setSharedVariable(name, value);
-        logger.info("Added shared variable: {}", name);
+        defaultRenderer.addSharedVariable(name, value);
     }
 
     /**
@@ -181,22 +90,14 @@ public class TemplateRenderUtil {
      * @param name the name of the variable to remove
      */
     public static void removeSharedVariable(String name) {
-        if (name == null || name.trim().isEmpty()) {
-            return;
-        }
-
-        sharedVariables.remove(name);
-        // Just remove from the map, no need to set to null in the config
-        logger.info("Removed shared variable: {}", name);
+        defaultRenderer.removeSharedVariable(name);
     }
 
     /**
      * Clears all shared variables.
      */
     public static void clearSharedVariables() {
-        sharedVariables.clear();
-        resetConfiguration();
-        logger.info("Cleared all shared variables");
+        defaultRenderer.clearSharedVariables();
     }
 
     /**
@@ -206,17 +107,7 @@ public class TemplateRenderUtil {
      * @throws TemplateException if there is an error setting the properties
      */
     public static void setConfigurationProperties(Properties properties) throws TemplateException {
-        if (properties == null) {
-            throw new IllegalArgumentException("Properties cannot be null");
-        }
-
-        try {
-            freemarkerConfig.setSettings(properties);
-            logger.info("Applied configuration properties");
-        } catch (TemplateException e) {
-            logger.error("Failed to apply configuration properties", e);
-            throw e;
-        }
+        defaultRenderer.setConfigurationProperties(properties);
     }
 
     /**
@@ -226,8 +117,7 @@ public class TemplateRenderUtil {
      * @param preprocessor the preprocessor function, or null to remove the current preprocessor
      */
     public static void setTemplatePreProcessor(BiFunction<String, Map<String, Object>, String> preprocessor) {
-        templatePreProcessor = preprocessor;
-        logger.info("Template preprocessor {}", preprocessor != null ? "set" : "removed");
+        defaultRenderer.setTemplatePreProcessor(preprocessor);
     }
 
     /**
@@ -237,28 +127,171 @@ public class TemplateRenderUtil {
      * @param postprocessor the postprocessor function, or null to remove the current postprocessor
      */
     public static void setTemplatePostProcessor(BiFunction<String, Map<String, Object>, String> postprocessor) {
-        templatePostProcessor = postprocessor;
-        logger.info("Template postprocessor {}", postprocessor != null ? "set" : "removed");
+        defaultRenderer.setTemplatePostProcessor(postprocessor);
     }
 
     /**
      * Configures the thread pool for asynchronous rendering.
+     * This switches asynchronous rendering back to platform threads if virtual threads were enabled.
      *
      * @param threadCount the number of threads in the pool
      */
     public static void setAsyncThreadPoolSize(int threadCount) {
-        if (threadCount < 1) {
-            throw new IllegalArgumentException("Thread count must be at least 1");
-        }
+        defaultRenderer.setAsyncThreadPoolSize(threadCount);
+    }
 
-        // Shutdown the existing executor service
-        if (executorService != null) {
-            executorService.shutdown();
-        }
+    /**
+     * Bounds the number of asynchronous renders waiting for a thread.
+     * Every queued render holds its data model in memory, so an unbounded queue can run out of memory
+     * under a burst of requests. Once the queue is full, new renders are handled according to the policy:
+     * {@link AsyncRejectionPolicy#FAIL_FAST} makes the *Async method throw a
+     * {@link java.util.concurrent.RejectedExecutionException}, {@link AsyncRejectionPolicy#CALLER_RUNS}
+     * renders in the calling thread, and {@link AsyncRejectionPolicy#AWAIT} blocks until there is room.
+     *
+     * With virtual threads enabled, every render gets a thread right away; the capacity then bounds the
+     * renders beyond the concurrent layout limit.
+     *
+     * @param capacity the maximum number of waiting renders
+     * @param policy what to do with renders that do not fit
+     */
+    public static void setAsyncQueueCapacity(int capacity, AsyncRejectionPolicy policy) {
+        defaultRenderer.setAsyncQueueCapacity(capacity, policy);
+    }
+
+    /**
+     * Bounds the number of asynchronous renders waiting for a thread.
+     * With {@link AsyncRejectionPolicy#AWAIT}, a caller waits at most the given time for room in the
+     * queue before the render is rejected; the timeout is ignored by the other policies.
+     *
+     * @param capacity the maximum number of waiting renders
+     * @param policy what to do with renders that do not fit
+     * @param awaitTimeout the maximum time to wait for room in the queue
+     * @param unit the unit of the timeout
+     * @see #setAsyncQueueCapacity(int, AsyncRejectionPolicy)
+     */
+    public static void setAsyncQueueCapacity(int capacity, AsyncRejectionPolicy policy, long awaitTimeout, TimeUnit unit) {
+        defaultRenderer.setAsyncQueueCapacity(capacity, policy, awaitTimeout, unit);
+    }
+
+    /**
+     * Removes the bound on waiting asynchronous renders, which is the default.
+     */
+    public static void setAsyncQueueUnbounded() {
+        defaultRenderer.setAsyncQueueUnbounded();
+    }
+
+    /**
+     * Returns statistics for asynchronous rendering: queue depth, time spent waiting for a thread,
+     * and how many renders were rejected or run by the caller.
+     *
+     * @return a snapshot of the asynchronous rendering statistics
+     */
+    public static AsyncExecutorStats getAsyncExecutorStats() {
+        return defaultRenderer.getAsyncExecutorStats();
+    }
 
-        // Create a new executor service with the specified thread count
-        executorService = Executors.newFixedThreadPool(threadCount);
-        logger.info("Async thread pool size set to {}", threadCount);
+    /**
+     * Runs asynchronous rendering on virtual threads, one per task, instead of a fixed thread pool.
+     * Renders that wait on I/O (remote images and stylesheets, fonts on disk, slow output streams)
+     * then no longer hold a pool thread while waiting. To keep the CPU-bound part in check, PDF and
+     * image layout is limited to {@code maxConcurrentLayouts} documents at a time while this mode is
+     * active, including for synchronous calls. A PDF is written to memory while its layout slot is held
+     * and copied to the caller's stream after the slot is freed, so a slow stream does not block layout.
+     *
+     * Virtual threads require Java 21 or later. Use {@link #setAsyncThreadPoolSize(int)} to return
+     * to a fixed thread pool.
+     *
+     * @param maxConcurrentLayouts the maximum number of documents laid out concurrently
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    public static void setAsyncVirtualThreadsEnabled(int maxConcurrentLayouts) {
+        defaultRenderer.setAsyncVirtualThreadsEnabled(maxConcurrentLayouts);
+    }
+
+    /**
+     * Runs asynchronous rendering on virtual threads, limiting layout to one document per processor.
+     *
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     * @see #setAsyncVirtualThreadsEnabled(int)
+     */
+    public static void setAsyncVirtualThreadsEnabled() {
+        defaultRenderer.setAsyncVirtualThreadsEnabled();
+    }
+
+    /**
+     * Sets the observer that receives render stage timings, output sizes and template cache lookups,
+     * e.g. a {@link MicrometerRenderObserver}. Without an observer, no measurements are reported and
+     * PDF and image output is not counted.
+     *
+     * @param observer the observer, or null to remove the current observer
+     */
+    public static void setRenderObserver(RenderObserver observer) {
+        defaultRenderer.setRenderObserver(observer);
+    }
+
+    /**
+     * Enables or disables reuse of PDF renderers.
+     * When enabled, {@link #renderHtmlToPdf} builds its renderer around a font resolver from a pool keyed
+     * by the font directory of the {@link PdfOptions}, which saves registering the fonts and resolving
+     * them again for every document. The rest of the renderer, including the output device that collects
+     * document metadata, is new for every document; the font resolver of a render that failed is discarded.
+     * When disabled, every document gets a new font resolver and the pool is emptied.
+     *
+     * @param enabled true to reuse renderers, false to create a renderer per document
+     */
+    public static void setPdfRendererPoolingEnabled(boolean enabled) {
+        defaultRenderer.setPdfRendererPoolingEnabled(enabled);
+    }
+
+    /**
+     * Sets how many idle font resolvers are kept per font directory when renderer pooling is enabled.
+     *
+     * @param maxIdle the maximum number of idle font resolvers per font directory
+     */
+    public static void setPdfRendererPoolSize(int maxIdle) {
+        defaultRenderer.setPdfRendererPoolSize(maxIdle);
+    }
+
+    /**
+     * Parses all .ttf and .otf fonts in a directory ahead of time, typically at application startup.
+     * Fonts are parsed once per process and shared by every PDF render that uses the directory through
+     * {@link PdfOptions#withFontDirectory(String)}; a font file is parsed again only if it changes on disk.
+     *
+     * @param fontDir the directory containing the font files
+     * @return the number of font files that were loaded successfully
+     */
+    public static int preloadFonts(String fontDir) {
+        return TemplateRenderer.preloadFonts(fontDir);
+    }
+
+    /**
+     * Prepares for the first renders, typically at application startup, using one thread per processor
+     * and a PDF render with default options.
+     *
+     * @return the templates loaded and the time spent
+     * @throws InterruptedException if interrupted while warming up
+     * @see #warmUp(int, PdfOptions)
+     */
+    public static WarmUpReport warmUp() throws InterruptedException {
+        return defaultRenderer.warmUp();
+    }
+
+    /**
+     * Prepares for the first renders, typically at application startup.
+     *
+     * Every template found in the file system and class path template loaders is parsed into the
+     * template cache, using several threads. Templates that fail to parse are reported but do not stop
+     * the warm-up. Then, if PDF options are given, a small sample document is rendered to PDF with them.
+     * This loads and compiles the layout engine, and parses the fonts of the options' font directory.
+     *
+     * @param parallelism the number of templates parsed concurrently
+     * @param pdfOptions the options of the sample PDF render, usually those the application renders with,
+     *                   or null to skip it
+     * @return the templates loaded and the time spent
+     * @throws InterruptedException if interrupted while warming up; the templates already parsed stay cached
+     */
+    public static WarmUpReport warmUp(int parallelism, PdfOptions pdfOptions) throws InterruptedException {
+        return defaultRenderer.warmUp(parallelism, pdfOptions);
     }
 
     /**
@@ -266,10 +299,7 @@ public class TemplateRenderUtil {
      * This should be called when the application is shutting down.
      */
     public static void shutdownAsyncThreadPool() {
-        if (executorService != null) {
-            executorService.shutdown();
-            logger.info("Async thread pool shut down");
-        }
+        defaultRenderer.shutdownAsyncThreadPool();
     }
 
     /**
@@ -279,14 +309,7 @@ public class TemplateRenderUtil {
      * @throws IOException if the directory cannot be accessed
      */
     public static void setTemplateDirectory(String templateDir) throws IOException {
-        File dir = new File(templateDir);
-        if (!dir.exists() || !dir.isDirectory()) {
-            throw new IOException("Template directory does not exist: " + templateDir);
-        }
-        freemarkerConfig.setDirectoryForTemplateLoading(dir);
-        // Clear the template cache when changing the template directory
-        templateCache.clear();
-        logger.info("FreeMarker configured to load templates from directory: {}", templateDir);
+        defaultRenderer.setTemplateDirectory(templateDir);
     }
 
     /**
@@ -296,13 +319,40 @@ public class TemplateRenderUtil {
      * @param loader the template loader to add
      */
     public static void addTemplateLoader(TemplateLoader loader) {
-        if (loader == null) {
-            throw new IllegalArgumentException("Template loader cannot be null");
-        }
+        defaultRenderer.addTemplateLoader(loader);
+    }
 
-        additionalLoaders.add(loader);
-        resetConfiguration();
-        logger.info("Added custom template loader: {}", loader.getClass().getSimpleName());
+    /**
+     * Enables or disables reloading of edited templates.
+     * When enabled, the directories of the file system template loaders are watched, and a template file
+     * that changes is dropped from the template cache so that its next render loads it again. Other cached
+     * templates are kept. Templates that include or import a changed template also see the change on their
+     * next render, since FreeMarker resolves includes and imports when a template is processed.
+     *
+     * The watched directories follow later changes to the template loaders.
+     *
+     * @param enabled true to watch template directories, false to stop watching
+     * @throws IOException if the directories cannot be watched
+     */
+    public static void setTemplateWatchingEnabled(boolean enabled) throws IOException {
+        defaultRenderer.setTemplateWatchingEnabled(enabled);
+    }
+
+    /**
+     * Removes a template from the template cache and FreeMarker's own cache, so the next render reads it
+     * from its loader again, and drops the cached output of the template and of every template that
+     * includes or imports it, directly or through other templates. Other cached templates and output are
+     * kept.
+     *
+     * Templates that include the changed template stay compiled, since FreeMarker resolves includes when
+     * a template is processed. Dependents are known from the {@code #include} and {@code #import}
+     * directives with a literal template name in the templates loaded so far.
+     *
+     * @param templateName the name of the template, relative to the template root
+     * @return the names of the invalidated templates, starting with the given one
+     */
+    public static Set<String> invalidateTemplate(String templateName) {
+        return defaultRenderer.invalidateTemplate(templateName);
     }
 
     /**
@@ -312,44 +362,183 @@ public class TemplateRenderUtil {
      * @param enabled true to enable caching, false to disable
      */
     public static void setTemplateCachingEnabled(boolean enabled) {
-        templateCachingEnabled = enabled;
-        if (!enabled) {
-            templateCache.clear();
-            logger.info("Template caching disabled and cache cleared");
-        } else {
-            logger.info("Template caching enabled");
-        }
+        defaultRenderer.setTemplateCachingEnabled(enabled);
     }
 
     /**
      * Sets the maximum number of templates to keep in the cache.
-     * If the cache exceeds this size, the least recently used templates will be removed.
+     * If the cache exceeds this size, the templates least likely to be used again are evicted;
+     * eviction takes both recency and frequency of use into account.
+     * This replaces any weight bound set with {@link #setTemplateCacheMaxWeight(long)}.
      *
      * @param maxSize the maximum number of templates in the cache
      */
     public static void setTemplateCacheMaxSize(int maxSize) {
-        if (maxSize < 1) {
-            throw new IllegalArgumentException("Template cache max size must be at least 1");
-        }
+        defaultRenderer.setTemplateCacheMaxSize(maxSize);
+    }
 
-        templateCacheMaxSize = maxSize;
+    /**
+     * Bounds the template cache by the total size of the cached templates instead of their count.
+     * Each template is weighed by the length of its source text, so a few large layouts cannot
+     * crowd out many small templates unnoticed.
+     * This replaces any count bound set with {@link #setTemplateCacheMaxSize(int)}.
+     *
+     * @param maxWeight the maximum total template size in characters
+     */
+    public static void setTemplateCacheMaxWeight(long maxWeight) {
+        defaultRenderer.setTemplateCacheMaxWeight(maxWeight);
+    }
 
-        // If the current cache is larger than the new max size, trim it
-        if (templateCache.size() > maxSize) {
-            // Simple approach: clear the cache entirely
-            // A more sophisticated approach would use a LinkedHashMap with access order
-            templateCache.clear();
-        }
+    /**
+     * Returns the hit, miss and eviction counters of the template cache.
+     *
+     * @return a snapshot of the template cache statistics
+     */
+    public static TemplateCacheStats getTemplateCacheStats() {
+        return defaultRenderer.getTemplateCacheStats();
+    }
+
+    /**
+     * Sets the maximum number of compiled template strings to keep in the inline template cache
+     * used by {@link #renderTemplateStringToHtml(String, String, Map)} and the methods built on it.
+     *
+     * @param maxSize the maximum number of compiled template strings in the cache
+     */
+    public static void setInlineTemplateCacheMaxSize(int maxSize) {
+        defaultRenderer.setInlineTemplateCacheMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the inline template cache.
+     *
+     * @return a snapshot of the inline template cache statistics
+     */
+    public static TemplateCacheStats getInlineTemplateCacheStats() {
+        return defaultRenderer.getInlineTemplateCacheStats();
+    }
+
+    /**
+     * Enables or disables caching of the rendered output of a template. Only enable it for templates
+     * that render the same document whenever they are given the same data model: output is cached by
+     * {@link #renderTemplateToHtml(String, Map)} and {@link #renderTemplateToPdfBytes(String, Map, PdfOptions)},
+     * keyed by the template, a hash of the data model and the PDF options, and is reused until it
+     * expires or the template changes.
+     *
+     * @param templateName the template name
+     * @param enabled true to cache the template's output
+     */
+    public static void setOutputCachingEnabled(String templateName, boolean enabled) {
+        defaultRenderer.setOutputCachingEnabled(templateName, enabled);
+    }
+
+    /**
+     * Bounds the rendered output cache and drops its current entries. By default, up to 32 MB of output
+     * is cached for 10 minutes.
+     *
+     * @param maxBytes the maximum total size of the cached HTML and PDF output in bytes
+     * @param ttl how long rendered output is reused after it was cached
+     */
+    public static void setOutputCacheLimits(long maxBytes, Duration ttl) {
+        defaultRenderer.setOutputCacheLimits(maxBytes, ttl);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the rendered output cache.
+     *
+     * @return a snapshot of the output cache statistics
+     */
+    public static TemplateCacheStats getOutputCacheStats() {
+        return defaultRenderer.getOutputCacheStats();
+    }
+
+    /**
+     * Sets how far PDF files written by the {@code render*ToPdfFile} methods are forced to storage before
+     * they are renamed into place. Files are always written to a temporary file first, so a crash of the
+     * process never leaves a partial PDF; forcing them to storage also protects against a crash of the
+     * machine, at the cost of throughput.
+     *
+     * @param policy the sync policy; {@link FileSyncPolicy#NONE} by default
+     */
+    public static void setFileSyncPolicy(FileSyncPolicy policy) {
+        defaultRenderer.setFileSyncPolicy(policy);
+    }
+
+    /**
+     * Stores finished PDFs of templates with output caching enabled in a local directory, and serves
+     * later renders of the same template content, data model and PDF options from there, also after a
+     * restart. Stored PDFs are memory-mapped and written straight to the caller's stream.
+     *
+     * The key covers the templates and the templates they include and the font files of the font
+     * directory, but not the post-processor, fonts loaded through {@code @font-face} or the version of
+     * this library; clear the directory after changing any of them. Templates that include a
+     * template by a computed name are not stored. The directory must not be used by another store.
+     *
+     * @param directory the directory holding the PDFs, or null to stop using a result store
+     * @param maxBytes the maximum total size of the stored PDFs in bytes; least recently used PDFs are
+     *                 deleted beyond it
+     * @throws IOException if the directory cannot be created or read
+     */
+    public static void setPdfResultStore(Path directory, long maxBytes) throws IOException {
+        defaultRenderer.setPdfResultStore(directory, maxBytes);
+    }
 
-        logger.info("Template cache max size set to: {}", maxSize);
+    /**
+     * Returns the hit, miss and eviction counters of the PDF result store.
+     *
+     * @return a snapshot of the result store statistics, or null if no result store is used
+     */
+    public static TemplateCacheStats getPdfResultStoreStats() {
+        return defaultRenderer.getPdfResultStoreStats();
     }
 
     /**
-     * Clears the template cache.
+     * Clears the template cache, including compiled template strings, the caches of all namespaces and
+     * the rendered output cache.
      */
     public static void clearTemplateCache() {
-        templateCache.clear();
-        logger.info("Template cache cleared");
+        defaultRenderer.clearTemplateCache();
+    }
+
+    /**
+     * Returns a namespace of the default renderer with template caches of its own, creating it with the
+     * default namespace quota if it does not exist yet.
+     *
+     * @param name the namespace name, typically a tenant id
+     * @return the namespace
+     */
+    public static TemplateNamespace namespace(String name) {
+        return defaultRenderer.namespace(name);
+    }
+
+    /**
+     * Returns a namespace of the default renderer, creating it with the given quota if it does not exist
+     * yet. The quota of an existing namespace is replaced.
+     *
+     * @param name the namespace name, typically a tenant id
+     * @param quota the bounds of the namespace's caches
+     * @return the namespace
+     */
+    public static TemplateNamespace namespace(String name, TemplateCacheQuota quota) {
+        return defaultRenderer.namespace(name, quota);
+    }
+
+    /**
+     * Removes a namespace of the default renderer and drops its cached templates.
+     *
+     * @param name the namespace name
+     * @return true if the namespace existed
+     */
+    public static boolean removeNamespace(String name) {
+        return defaultRenderer.removeNamespace(name);
+    }
+
+    /**
+     * Sets the quota of namespaces created without one from now on. Existing namespaces keep their quota.
+     *
+     * @param quota the bounds of the caches of new namespaces
+     */
+    public static void setDefaultNamespaceQuota(TemplateCacheQuota quota) {
+        defaultRenderer.setDefaultNamespaceQuota(quota);
     }
 
     /**
@@ -361,44 +550,7 @@ public class TemplateRenderUtil {
      * @throws IOException if the file system directory cannot be accessed
      */
     public static void setClasspathAndFileTemplateLoaders(String classpathPrefix, String fileSystemDir) throws IOException {
-        if (classpathPrefix == null || classpathPrefix.trim().isEmpty()) {
-            classpathPrefix = "templates";
-        }
-
-        if (fileSystemDir == null || fileSystemDir.trim().isEmpty()) {
-            fileSystemDir = "templates";
-        }
-
-        ClassTemplateLoader classLoader = new ClassTemplateLoader(
-                Thread.currentThread().getContextClassLoader(), classpathPrefix);
-
-        File dir = new File(fileSystemDir);
-        if (!dir.exists()) {
-            if (!dir.mkdirs()) {
-                logger.warn("Could not create template directory: {}", fileSystemDir);
-                // Continue with just the classpath loader
-                freemarkerConfig.setTemplateLoader(classLoader);
-                logger.info("FreeMarker configured to load templates from classpath:{} only", classpathPrefix);
-                return;
-            }
-        }
-
-        if (!dir.isDirectory()) {
-            throw new IOException("Template path is not a directory: " + fileSystemDir);
-        }
-
-        try {
-            FileTemplateLoader fileLoader = new FileTemplateLoader(dir);
-            TemplateLoader[] loaders = new TemplateLoader[]{classLoader, fileLoader};
-            freemarkerConfig.setTemplateLoader(new MultiTemplateLoader(loaders));
-            logger.info("FreeMarker configured to load templates from classpath:{} and directory:{}",
-                      classpathPrefix, fileSystemDir);
-        } catch (IOException e) {
-            // If file loader fails, continue with just the classpath loader
-            freemarkerConfig.setTemplateLoader(classLoader);
-            logger.info("FreeMarker configured to load templates from classpath:{} only", classpathPrefix);
-            logger.warn("Could not configure file system template loader", e);
-        }
+        defaultRenderer.setClasspathAndFileTemplateLoaders(classpathPrefix, fileSystemDir);
     }
 
     /**
@@ -411,90 +563,59 @@ public class TemplateRenderUtil {
      */
     public static String renderTemplateToHtml(String templateName, Map<String, Object> dataModel)
             throws IOException, TemplateException {
-        if (templateName == null || templateName.trim().isEmpty()) {
-            throw new IllegalArgumentException("Template name cannot be null or empty");
-        }
-
-        if (dataModel == null) {
-            dataModel = new HashMap<>();
-        }
-
-        try {
-            // Get template from cache or load it
-            Template tpl = getTemplateFromCacheOrLoad(templateName);
-
-            try (StringWriter out = new StringWriter()) {
-                tpl.process(dataModel, out);
-                String result = out.toString();
-
-                // Apply post-processing if configured
-                if (templatePostProcessor != null) {
-                    result = templatePostProcessor.apply(result, dataModel);
-                }
-
-                return result;
-            }
-        } catch (IOException e) {
-            logger.error("Failed to load template: {}", templateName, e);
-            throw new IOException("Failed to load template: " + templateName, e);
-        } catch (TemplateException e) {
-            logger.error("Failed to process template: {}", templateName, e);
-            throw e;
-        }
+        return defaultRenderer.renderTemplateToHtml(templateName, dataModel);
     }
 
     /**
-     * Renders a FreeMarker template to an XHTML string asynchronously.
+     * Renders a FreeMarker template directly to a writer, without holding the whole output in memory.
+     * If a post-processor is configured, the output has to be buffered so that it can be post-processed
+     * before it is written.
+     *
+     * The writer is neither flushed nor closed. Template output consists of many small writes, so an
+     * unbuffered writer should be wrapped in a {@link BufferedWriter}.
+     *
      * @param templateName path within loaders, e.g., "invoice.ftl"
      * @param dataModel the data model to use for rendering
-     * @return a CompletableFuture that will complete with the rendered HTML
+     * @param out the writer receiving the rendered HTML
+     * @throws IOException if the template cannot be read or the output cannot be written
+     * @throws TemplateException if the template cannot be processed
      */
-    public static CompletableFuture<String> renderTemplateToHtmlAsync(String templateName, Map<String, Object> dataModel) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return renderTemplateToHtml(templateName, dataModel);
-            } catch (Exception e) {
-                throw new CompletionException(e);
-            }
-        }, executorService);
+    public static void renderTemplateToHtml(String templateName, Map<String, Object> dataModel, Writer out)
+            throws IOException, TemplateException {
+        defaultRenderer.renderTemplateToHtml(templateName, dataModel, out);
     }
 
     /**
-     * Gets a template from the cache or loads it if not cached.
+     * Renders a FreeMarker template directly to an output stream in the given charset.
+     * Output is encoded through a fixed-size buffer, so memory use does not grow with the size of
+     * the rendered document. The stream is flushed but not closed.
      *
-     * @param templateName the name of the template to load
-     * @return the loaded template
-     * @throws IOException if the template cannot be loaded
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @param os the output stream receiving the rendered HTML
+     * @param charset the charset used to encode the output
+     * @throws IOException if the template cannot be read or the output cannot be written
+     * @throws TemplateException if the template cannot be processed
      */
-    private static Template getTemplateFromCacheOrLoad(String templateName) throws IOException {
-        if (!templateCachingEnabled) {
-            return freemarkerConfig.getTemplate(templateName);
-        }
-
-        // Check if the template is in the cache
-        Template template = templateCache.get(templateName);
-        if (template == null) {
-            // Template not in cache, load it
-            template = freemarkerConfig.getTemplate(templateName);
-
-            // Add to cache if not at max size
-            if (templateCache.size() < templateCacheMaxSize) {
-                templateCache.put(templateName, template);
-                logger.debug("Added template to cache: {}", templateName);
-            } else {
-                // Cache is full, log a warning
-                logger.warn("Template cache is full (size: {}). Consider increasing the cache size.",
-                        templateCacheMaxSize);
-            }
-        } else {
-            logger.debug("Template loaded from cache: {}", templateName);
-        }
+    public static void renderTemplate(String templateName, Map<String, Object> dataModel, OutputStream os, Charset charset)
+            throws IOException, TemplateException {
+        defaultRenderer.renderTemplate(templateName, dataModel, os, charset);
+    }
 
-        return template;
+    /**
+     * Renders a FreeMarker template to an XHTML string asynchronously.
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @return a CompletableFuture that will complete with the rendered HTML
+     */
+    public static CompletableFuture<String> renderTemplateToHtmlAsync(String templateName, Map<String, Object> dataModel) {
+        return defaultRenderer.renderTemplateToHtmlAsync(templateName, dataModel);
     }
 
     /**
      * Renders a FreeMarker template string (not a file) to an HTML string.
+     * Compiled template strings are cached by content, so rendering the same template string
+     * repeatedly only parses it once.
      *
      * @param templateContent the template content as a string
      * @param templateName a name for the template (used for error reporting)
@@ -506,42 +627,26 @@ public class TemplateRenderUtil {
      */
     public static String renderTemplateStringToHtml(String templateContent, String templateName, Map<String, Object> dataModel)
             throws IOException, TemplateException {
-        if (templateContent == null || templateContent.trim().isEmpty()) {
-            throw new IllegalArgumentException("Template content cannot be null or empty");
-        }
-
-        if (templateName == null || templateName.trim().isEmpty()) {
-            templateName = "inline-template-" + System.currentTimeMillis();
-        }
-
-        if (dataModel == null) {
-            dataModel = new HashMap<>();
-        }
-
-        try {
-            // Apply preprocessing if configured
-            if (templatePreProcessor != null) {
-                templateContent = templatePreProcessor.apply(templateContent, dataModel);
-            }
-
-            Template template = new Template(templateName, new StringReader(templateContent), freemarkerConfig);
-            StringWriter writer = new StringWriter();
-            template.process(dataModel, writer);
-            String result = writer.toString();
-
-            // Apply postprocessing if configured
-            if (templatePostProcessor != null) {
-                result = templatePostProcessor.apply(result, dataModel);
-            }
+        return defaultRenderer.renderTemplateStringToHtml(templateContent, templateName, dataModel);
+    }
 
-            return result;
-        } catch (TemplateException e) {
-            logger.error("Failed to process template string: {}", templateName, e);
-            throw e;
-        } catch (IOException e) {
-            logger.error("I/O error processing template string: {}", templateName, e);
-            throw e;
-        }
+    /**
+     * Renders a FreeMarker template string (not a file) directly to a writer, without holding the
+     * whole output in memory. If a post-processor is configured, the output has to be buffered so
+     * that it can be post-processed before it is written. The writer is neither flushed nor closed.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param out the writer receiving the rendered HTML
+     * @throws IOException if an I/O error occurs
+     * @throws TemplateException if the template cannot be processed
+     * @throws IllegalArgumentException if templateContent is null or empty
+     */
+    public static void renderTemplateStringToHtml(String templateContent, String templateName,
+                                                  Map<String, Object> dataModel, Writer out)
+            throws IOException, TemplateException {
+        defaultRenderer.renderTemplateStringToHtml(templateContent, templateName, dataModel, out);
     }
 
     /**
@@ -553,13 +658,7 @@ public class TemplateRenderUtil {
      * @return a CompletableFuture that will complete with the rendered HTML
      */
     public static CompletableFuture<String> renderTemplateStringToHtmlAsync(String templateContent, String templateName, Map<String, Object> dataModel) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return renderTemplateStringToHtml(templateContent, templateName, dataModel);
-            } catch (Exception e) {
-                throw new CompletionException(e);
-            }
-        }, executorService);
+        return defaultRenderer.renderTemplateStringToHtmlAsync(templateContent, templateName, dataModel);
     }
 
     /**
@@ -587,113 +686,7 @@ public class TemplateRenderUtil {
      * Renders HTML/XHTML content to PDF using custom options.
      */
     public static void renderHtmlToPdf(String htmlContent, OutputStream os, PdfOptions options) throws Exception {
-        if (htmlContent == null || htmlContent.isBlank()) {
-            throw new IllegalArgumentException("HTML content is empty");
-        }
-
-        // Ensure well-formed XHTML and inject page CSS
-        String xhtml = ensureXhtmlDocument(htmlContent);
-        xhtml = injectPageCss(xhtml, options);
-
-        ITextRenderer renderer = new ITextRenderer();
-        configureFonts(renderer, options);
-
-        if (options.getBaseUri() != null) {
-            ITextUserAgent ua = new ITextUserAgent(renderer.getOutputDevice());
-            ua.setSharedContext(renderer.getSharedContext());
-            ua.setBaseURL(options.getBaseUri());
-            renderer.getSharedContext().setUserAgentCallback(ua);
-            renderer.setDocumentFromString(xhtml, options.getBaseUri());
-        } else {
-            renderer.setDocumentFromString(xhtml);
-        }
-
-        renderer.layout();
-
-        // Create PDF with bookmarks if specified
-        if (options.hasBookmarks()) {
-            ByteArrayOutputStream tempOs = new ByteArrayOutputStream();
-            renderer.createPDF(tempOs);
-            tempOs.flush();
-
-            // Create a reader for the generated PDF
-            PdfReader reader = new PdfReader(tempOs.toByteArray());
-
-            // Create a stamper to modify the PDF
-            PdfStamper stamper = new PdfStamper(reader, os);
-
-            // Add bookmarks
-            addBookmarksToPdf(stamper, options.getBookmarks());
-
-            // Close the stamper to finalize the PDF
-            stamper.close();
-            reader.close();
-        } else {
-            // No bookmarks, create PDF directly
-            renderer.createPDF(os);
-            os.flush();
-        }
-    }
-
-    /**
-     * Adds bookmarks to a PDF document.
-     *
-     * @param stamper the PdfStamper to modify
-     * @param bookmarks the list of bookmarks to add
-     */
-    private static void addBookmarksToPdf(PdfStamper stamper, List<PdfOptions.Bookmark> bookmarks) {
-        if (bookmarks == null || bookmarks.isEmpty()) {
-            return;
-        }
-
-        // Create the root outline
-        PdfContentByte cb = stamper.getOverContent(1);
-        PdfOutline root = new PdfOutline(cb.getRootOutline(), new PdfDestination(PdfDestination.FIT), "Root", false);
-
-        // Add each bookmark
-        for (PdfOptions.Bookmark bookmark : bookmarks) {
-            addBookmarkToPdf(root, bookmark, stamper);
-        }
-    }
-
-    /**
-     * Recursively adds a bookmark and its children to a PDF document.
-     *
-     * @param parent the parent PdfOutline
-     * @param bookmark the bookmark to add
-     * @param stamper the PdfStamper to modify
-     */
-    private static void addBookmarkToPdf(PdfOutline parent, PdfOptions.Bookmark bookmark, PdfStamper stamper) {
-        // Create destination (default to first page if not specified)
-        String dest = bookmark.getDestination();
-        int pageNum = 1;
-
-        // Try to parse destination as page number
-        if (dest != null && !dest.isEmpty()) {
-            try {
-                pageNum = Integer.parseInt(dest);
-                if (pageNum < 1) pageNum = 1;
-                if (pageNum > stamper.getReader().getNumberOfPages()) {
-                    pageNum = stamper.getReader().getNumberOfPages();
-                }
-            } catch (NumberFormatException e) {
-                // Not a page number, use as named destination
-                // For simplicity, we'll default to first page in this example
-                pageNum = 1;
-            }
-        }
-
-        // Create the destination and action
-        PdfDestination destination = new PdfDestination(PdfDestination.FIT);
-        PdfAction action = PdfAction.gotoLocalPage(pageNum, destination, stamper.getWriter());
-
-        // Create the outline entry with the action
-        PdfOutline outline = new PdfOutline(parent, action, bookmark.getTitle());
-
-        // Add children recursively
-        for (PdfOptions.Bookmark child : bookmark.getChildren()) {
-            addBookmarkToPdf(outline, child, stamper);
-        }
+        defaultRenderer.renderHtmlToPdf(htmlContent, os, options);
     }
 
     /**
@@ -707,8 +700,7 @@ public class TemplateRenderUtil {
      */
     public static void renderTemplateToPdf(String templateName, Map<String, Object> dataModel,
                                            OutputStream os, PdfOptions options) throws Exception {
-        String html = renderTemplateToHtml(templateName, dataModel);
-        renderHtmlToPdf(html, os, options);
+        defaultRenderer.renderTemplateToPdf(templateName, dataModel, os, options);
     }
 
     /**
@@ -724,8 +716,7 @@ public class TemplateRenderUtil {
     public static void renderTemplateStringToPdf(String templateContent, String templateName,
                                                 Map<String, Object> dataModel,
                                                 OutputStream os, PdfOptions options) throws Exception {
-        String html = renderTemplateStringToHtml(templateContent, templateName, dataModel);
-        renderHtmlToPdf(html, os, options);
+        defaultRenderer.renderTemplateStringToPdf(templateContent, templateName, dataModel, os, options);
     }
 
     /**
@@ -740,7 +731,7 @@ public class TemplateRenderUtil {
     public static void renderTemplateStringToPdf(String templateContent, String templateName,
                                                 Map<String, Object> dataModel,
                                                 OutputStream os) throws Exception {
-        renderTemplateStringToPdf(templateContent, templateName, dataModel, os, new PdfOptions());
+        defaultRenderer.renderTemplateStringToPdf(templateContent, templateName, dataModel, os);
     }
 
     /**
@@ -754,10 +745,7 @@ public class TemplateRenderUtil {
      */
     public static void renderTemplateToPdfFile(String templateName, Map<String, Object> dataModel,
                                               String outputPath, PdfOptions options) throws Exception {
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            renderTemplateToPdf(templateName, dataModel, fos, options);
-            logger.info("PDF created successfully at: {}", outputPath);
-        }
+        defaultRenderer.renderTemplateToPdfFile(templateName, dataModel, outputPath, options);
     }
 
     /**
@@ -770,7 +758,7 @@ public class TemplateRenderUtil {
      */
     public static void renderTemplateToPdfFile(String templateName, Map<String, Object> dataModel,
                                               String outputPath) throws Exception {
-        renderTemplateToPdfFile(templateName, dataModel, outputPath, new PdfOptions());
+        defaultRenderer.renderTemplateToPdfFile(templateName, dataModel, outputPath);
     }
 
     /**
@@ -786,10 +774,7 @@ public class TemplateRenderUtil {
     public static void renderTemplateStringToPdfFile(String templateContent, String templateName,
                                                     Map<String, Object> dataModel,
                                                     String outputPath, PdfOptions options) throws Exception {
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            renderTemplateStringToPdf(templateContent, templateName, dataModel, fos, options);
-            logger.info("PDF created successfully at: {}", outputPath);
-        }
+        defaultRenderer.renderTemplateStringToPdfFile(templateContent, templateName, dataModel, outputPath, options);
     }
 
     /**
@@ -804,7 +789,7 @@ public class TemplateRenderUtil {
     public static void renderTemplateStringToPdfFile(String templateContent, String templateName,
                                                     Map<String, Object> dataModel,
                                                     String outputPath) throws Exception {
-        renderTemplateStringToPdfFile(templateContent, templateName, dataModel, outputPath, new PdfOptions());
+        defaultRenderer.renderTemplateStringToPdfFile(templateContent, templateName, dataModel, outputPath);
     }
 
     /**
@@ -818,10 +803,24 @@ public class TemplateRenderUtil {
      */
     public static byte[] renderTemplateToPdfBytes(String templateName, Map<String, Object> dataModel,
                                                  PdfOptions options) throws Exception {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            renderTemplateToPdf(templateName, dataModel, baos, options);
-            return baos.toByteArray();
-        }
+        return defaultRenderer.renderTemplateToPdfBytes(templateName, dataModel, options);
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF in a pooled buffer and passes it to a handler, which avoids
+     * copying the document into a new array. The buffer is only valid while the handler runs.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @param handler receives a read-only view of the PDF
+     * @param <T> the type of the handler's result
+     * @return the result of the handler
+     * @throws Exception if an error occurs during rendering or in the handler
+     */
+    public static <T> T renderTemplateToPdfBuffer(String templateName, Map<String, Object> dataModel,
+                                                  PdfOptions options, PdfBufferHandler<T> handler) throws Exception {
+        return defaultRenderer.renderTemplateToPdfBuffer(templateName, dataModel, options, handler);
     }
 
     /**
@@ -833,7 +832,7 @@ public class TemplateRenderUtil {
      * @throws Exception if an error occurs during rendering
      */
     public static byte[] renderTemplateToPdfBytes(String templateName, Map<String, Object> dataModel) throws Exception {
-        return renderTemplateToPdfBytes(templateName, dataModel, new PdfOptions());
+        return defaultRenderer.renderTemplateToPdfBytes(templateName, dataModel);
     }
 
     /**
@@ -846,13 +845,7 @@ public class TemplateRenderUtil {
      */
     public static CompletableFuture<byte[]> renderTemplateToPdfBytesAsync(String templateName, Map<String, Object> dataModel,
                                                                          PdfOptions options) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return renderTemplateToPdfBytes(templateName, dataModel, options);
-            } catch (Exception e) {
-                throw new CompletionException(e);
-            }
-        }, executorService);
+        return defaultRenderer.renderTemplateToPdfBytesAsync(templateName, dataModel, options);
     }
 
     /**
@@ -863,7 +856,7 @@ public class TemplateRenderUtil {
      * @return a CompletableFuture that will complete with the PDF data as a byte array
      */
     public static CompletableFuture<byte[]> renderTemplateToPdfBytesAsync(String templateName, Map<String, Object> dataModel) {
-        return renderTemplateToPdfBytesAsync(templateName, dataModel, new PdfOptions());
+        return defaultRenderer.renderTemplateToPdfBytesAsync(templateName, dataModel);
     }
 
     /**
@@ -879,10 +872,7 @@ public class TemplateRenderUtil {
     public static byte[] renderTemplateStringToPdfBytes(String templateContent, String templateName,
                                                        Map<String, Object> dataModel,
                                                        PdfOptions options) throws Exception {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            renderTemplateStringToPdf(templateContent, templateName, dataModel, baos, options);
-            return baos.toByteArray();
-        }
+        return defaultRenderer.renderTemplateStringToPdfBytes(templateContent, templateName, dataModel, options);
     }
 
     /**
@@ -896,7 +886,49 @@ public class TemplateRenderUtil {
      */
     public static byte[] renderTemplateStringToPdfBytes(String templateContent, String templateName,
                                                        Map<String, Object> dataModel) throws Exception {
-        return renderTemplateStringToPdfBytes(templateContent, templateName, dataModel, new PdfOptions());
+        return defaultRenderer.renderTemplateStringToPdfBytes(templateContent, templateName, dataModel);
+    }
+
+    /**
+     * Renders several parts into one PDF, such as a cover letter, a statement and the terms and conditions.
+     * The parts are written through a single PDF writer, so shared fonts are embedded once and the outline
+     * covers all parts, while the following parts are rendered to HTML in parallel. Each part starts on a
+     * new page and its page counters start at 1.
+     *
+     * @param parts the parts, in document order
+     * @param os the output stream to write the PDF to
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public static void renderPartsToPdf(List<PdfPart> parts, OutputStream os, PdfOptions options) throws Exception {
+        defaultRenderer.renderPartsToPdf(parts, os, options);
+    }
+
+    /**
+     * Renders several parts into one PDF and returns it as a byte array.
+     *
+     * @param parts the parts, in document order
+     * @param options custom PDF rendering options
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     * @see #renderPartsToPdf(List, OutputStream, PdfOptions)
+     */
+    public static byte[] renderPartsToPdfBytes(List<PdfPart> parts, PdfOptions options) throws Exception {
+        return defaultRenderer.renderPartsToPdfBytes(parts, options);
+    }
+
+    /**
+     * Renders several parts into one PDF file.
+     *
+     * @param parts the parts, in document order
+     * @param outputPath the path where the PDF file will be saved
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     * @see #renderPartsToPdf(List, OutputStream, PdfOptions)
+     */
+    public static void renderPartsToPdfFile(List<PdfPart> parts, String outputPath, PdfOptions options)
+            throws Exception {
+        defaultRenderer.renderPartsToPdfFile(parts, outputPath, options);
     }
 
     /**
@@ -911,13 +943,7 @@ public class TemplateRenderUtil {
     public static CompletableFuture<byte[]> renderTemplateStringToPdfBytesAsync(String templateContent, String templateName,
                                                                                Map<String, Object> dataModel,
                                                                                PdfOptions options) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return renderTemplateStringToPdfBytes(templateContent, templateName, dataModel, options);
-            } catch (Exception e) {
-                throw new CompletionException(e);
-            }
-        }, executorService);
+        return defaultRenderer.renderTemplateStringToPdfBytesAsync(templateContent, templateName, dataModel, options);
     }
 
     /**
@@ -930,73 +956,65 @@ public class TemplateRenderUtil {
      */
     public static CompletableFuture<byte[]> renderTemplateStringToPdfBytesAsync(String templateContent, String templateName,
                                                                                Map<String, Object> dataModel) {
-        return renderTemplateStringToPdfBytesAsync(templateContent, templateName, dataModel, new PdfOptions());
-    }
-
-    private static String ensureXhtmlDocument(String html) {
-        String trimmed = html.trim().toLowerCase();
-        if (!trimmed.startsWith("<!doctype")) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            sb.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \n");
-            sb.append(" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n");
-            sb.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n");
-            sb.append("<head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\" />");
-            sb.append("</head><body>");
-            sb.append(html);
-            sb.append("</body></html>");
-            return sb.toString();
-        }
-        return html;
-    }
-
-    private static String injectPageCss(String html, PdfOptions opts) {
-        StringBuilder css = new StringBuilder();
-        css.append("<style> @page { size: ")
-                .append(opts.pageSize.name().toLowerCase())
-                .append("; margin: ")
-                .append(opts.marginTop).append("pt ")
-                .append(opts.marginRight).append("pt ")
-                .append(opts.marginBottom).append("pt ")
-                .append(opts.marginLeft).append("pt; }");
-        if (opts.getDefaultFont() != null) {
-            css.append(" body { font-family: '")
-                    .append(opts.getDefaultFont())
-                    .append("'; }");
-        }
-        css.append(" </style>");
+        return defaultRenderer.renderTemplateStringToPdfBytesAsync(templateContent, templateName, dataModel);
+    }
 
-        int idx = html.indexOf("</head>");
-        if (idx > -1) {
-            return html.substring(0, idx) + css + html.substring(idx);
-        }
-        return css + html;
-    }
-
-    private static void configureFonts(ITextRenderer renderer, PdfOptions opts) {
-        if (opts.getFontDir() != null) {
-            try {
-                org.xhtmlrenderer.pdf.ITextFontResolver fr = renderer.getFontResolver();
-                File dir = new File(opts.getFontDir());
-                if (dir.isDirectory()) {
-                    for (File f : dir.listFiles()) {
-                        String name = f.getName().toLowerCase();
-                        if (name.endsWith(".ttf") || name.endsWith(".otf")) {
-                            fr.addFont(f.getAbsolutePath(), true);
-                            logger.debug("Loaded font: {}", f.getName());
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                logger.warn("Error loading fonts from {}", opts.getFontDir(), e);
-            }
-        }
+    /**
+     * Renders one template to PDF for many data models, using several threads.
+     *
+     * The template is resolved once for the whole batch, and every worker thread keeps its PDF renderer,
+     * with its fonts, for all the items it renders. Data models are taken from the iterator one at a time
+     * as workers become free, so the input can be larger than memory. An item that fails is reported to
+     * the sink and in the result, and the batch continues with the next item.
+     *
+     * This method returns when all items are rendered.
+     *
+     * @param templateName the name of the template file
+     * @param dataModels the data models to render; accessed by one thread at a time
+     * @param sink where the documents go
+     * @param options custom PDF rendering options, shared by all items
+     * @param parallelism the number of documents rendered concurrently
+     * @return the number of successful and failed items, and the errors of failed items
+     * @throws IOException if the template cannot be loaded
+     * @throws InterruptedException if interrupted while waiting for the batch; rendering is stopped
+     * @throws CompletionException if the iterator fails, wrapping its exception; rendering is stopped
+     */
+    public static BatchRenderResult renderTemplateToPdfBatch(String templateName,
+                                                             Iterator<? extends Map<String, Object>> dataModels,
+                                                             BatchRenderSink sink, PdfOptions options,
+                                                             int parallelism) throws IOException, InterruptedException {
+        return defaultRenderer.renderTemplateToPdfBatch(templateName, dataModels, sink, options, parallelism);
+    }
+
+    /**
+     * Renders one template to PDF for a stream of data models, using several threads.
+     *
+     * @param templateName the name of the template file
+     * @param dataModels the data models to render; closed when the batch completes
+     * @param sink where the documents go
+     * @param options custom PDF rendering options, shared by all items
+     * @param parallelism the number of documents rendered concurrently
+     * @return the number of successful and failed items, and the errors of failed items
+     * @throws IOException if the template cannot be loaded
+     * @throws InterruptedException if interrupted while waiting for the batch; rendering is stopped
+     * @see #renderTemplateToPdfBatch(String, Iterator, BatchRenderSink, PdfOptions, int)
+     */
+    public static BatchRenderResult renderTemplateToPdfBatch(String templateName,
+                                                             Stream<? extends Map<String, Object>> dataModels,
+                                                             BatchRenderSink sink, PdfOptions options,
+                                                             int parallelism) throws IOException, InterruptedException {
+        return defaultRenderer.renderTemplateToPdfBatch(templateName, dataModels, sink, options, parallelism);
     }
 
     /**
      * Options for PDF rendering.
      */
     public static class PdfOptions {
+        /**
+         * Marks where a document may be split for parallel rendering, see {@link #withParallelSegments(boolean)}.
+         */
+        public static final String SEGMENT_BREAK = "<!--pdf-segment-break-->";
+
         private String baseUri;
         private String fontDir;
         private String defaultFont;
@@ -1028,6 +1046,8 @@ public class TemplateRenderUtil {
         // Bookmark options
         private List<Bookmark> bookmarks = new ArrayList<>();
 
+        private boolean parallelSegments = false;
+
         /**
          * Represents a bookmark (outline entry) in the PDF.
          */
@@ -1195,15 +1215,61 @@ public class TemplateRenderUtil {
             return this;
         }
 
+        /**
+         * Splits the document at every {@link #SEGMENT_BREAK} in its body, lays out and writes the segments in
+         * parallel on the async executor and concatenates them into one PDF. Each segment starts on a new page,
+         * page numbers continue across segments and {@code counter(pages)} counts the pages of the whole
+         * document, but links only work within a segment. Markers must be placed between top-level elements of
+         * the body.
+         *
+         * @param enabled whether to render segments in parallel
+         * @return this PdfOptions instance for method chaining
+         */
+        public PdfOptions withParallelSegments(boolean enabled) {
+            this.parallelSegments = enabled;
+            return this;
+        }
+
         public enum PageSize { A4, LETTER, LEGAL, A3 }
 
         // getters for internal use
-        private String getBaseUri() { return baseUri; }
-        private String getFontDir() { return fontDir; }
-        private String getDefaultFont() { return defaultFont; }
-        private String getWatermarkText() { return watermarkText; }
-        private boolean isEncrypted() { return encrypted; }
-        private boolean hasMetadata() { return title != null || author != null || subject != null || keywords != null; }
+        String getBaseUri() { return baseUri; }
+        String getFontDir() { return fontDir; }
+        String getDefaultFont() { return defaultFont; }
+        PageSize getPageSize() { return pageSize; }
+        float getMarginTop() { return marginTop; }
+        float getMarginRight() { return marginRight; }
+        float getMarginBottom() { return marginBottom; }
+        float getMarginLeft() { return marginLeft; }
+        String getWatermarkText() { return watermarkText; }
+        boolean isEncrypted() { return encrypted; }
+        boolean hasMetadata() { return title != null || author != null || subject != null || keywords != null; }
+        boolean isParallelSegments() { return parallelSegments; }
+
+        /**
+         * Adds every option that affects the rendered document to a hash.
+         */
+        void hashInto(ContentHasher hasher) {
+            hasher.putString(baseUri).putString(fontDir).putString(defaultFont)
+                    .putString(pageSize != null ? pageSize.name() : null)
+                    .putInt(Float.floatToIntBits(marginTop)).putInt(Float.floatToIntBits(marginRight))
+                    .putInt(Float.floatToIntBits(marginBottom)).putInt(Float.floatToIntBits(marginLeft));
+            hasher.putString(watermarkText).putInt(Float.floatToIntBits(watermarkOpacity))
+                    .putInt(watermarkFontSize).putInt(watermarkRotation).putString(watermarkColor);
+            hasher.putBoolean(encrypted).putString(userPassword).putString(ownerPassword)
+                    .putBoolean(allowPrinting).putBoolean(allowCopy).putBoolean(allowModify);
+            hasher.putString(title).putString(author).putString(subject).putString(keywords).putString(creator);
+            hashBookmarks(hasher, bookmarks);
+            hasher.putBoolean(parallelSegments);
+        }
+
+        private static void hashBookmarks(ContentHasher hasher, List<Bookmark> bookmarks) {
+            hasher.putInt(bookmarks.size());
+            for (Bookmark bookmark : bookmarks) {
+                hasher.putString(bookmark.getTitle()).putInt(bookmark.getLevel()).putString(bookmark.getDestination());
+                hashBookmarks(hasher, bookmark.getChildren());
+            }
+        }
 
         // Bookmark getters (public for testing)
         public boolean hasBookmarks() { return !bookmarks.isEmpty(); }
@@ -1221,33 +1287,25 @@ public class TemplateRenderUtil {
      * @throws Exception if an error occurs during rendering
      */
     public static byte[] renderHtmlToImage(String htmlContent, int width, int height, String imageType) throws Exception {
-        if (htmlContent == null || htmlContent.isBlank()) {
-            throw new IllegalArgumentException("HTML content is empty");
-        }
-
-        // Ensure well-formed XHTML
-        String xhtml = ensureXhtmlDocument(htmlContent);
-
-        // Create a temporary file for the HTML
-        Path tempHtmlFile = Files.createTempFile("render_", ".html");
-        Files.write(tempHtmlFile, xhtml.getBytes(StandardCharsets.UTF_8));
-
-        try {
-            // Create a URL for the temporary file
-            String url = tempHtmlFile.toUri().toURL().toString();
-
-            // Use Flying Saucer to render the HTML to an image
-            Java2DRenderer renderer = new Java2DRenderer(url, width, height);
-            BufferedImage image = renderer.getImage();
+        return defaultRenderer.renderHtmlToImage(htmlContent, width, height, imageType);
+    }
 
-            // Convert the image to bytes
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(image, imageType, baos);
-            return baos.toByteArray();
-        } finally {
-            // Clean up the temporary file
-            Files.deleteIfExists(tempHtmlFile);
-        }
+    /**
+     * Renders HTML content to an image and writes the encoded image to an output stream.
+     * The document is parsed in memory and handed to the renderer as a DOM, so no temporary
+     * files are involved. The stream is flushed but not closed.
+     *
+     * @param htmlContent the HTML content to render
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param imageType the type of image to create (e.g., "png", "jpg")
+     * @param os the output stream to write the encoded image to
+     * @throws Exception if an error occurs during rendering
+     * @throws IllegalArgumentException if no image writer is available for the image type
+     */
+    public static void renderHtmlToImage(String htmlContent, int width, int height, String imageType,
+                                         OutputStream os) throws Exception {
+        defaultRenderer.renderHtmlToImage(htmlContent, width, height, imageType, os);
     }
 
     /**
@@ -1263,8 +1321,7 @@ public class TemplateRenderUtil {
      */
     public static byte[] renderTemplateToImage(String templateName, Map<String, Object> dataModel,
                                               int width, int height, String imageType) throws Exception {
-        String html = renderTemplateToHtml(templateName, dataModel);
-        return renderHtmlToImage(html, width, height, imageType);
+        return defaultRenderer.renderTemplateToImage(templateName, dataModel, width, height, imageType);
     }
 
     /**
@@ -1282,8 +1339,7 @@ public class TemplateRenderUtil {
     public static byte[] renderTemplateStringToImage(String templateContent, String templateName,
                                                    Map<String, Object> dataModel,
                                                    int width, int height, String imageType) throws Exception {
-        String html = renderTemplateStringToHtml(templateContent, templateName, dataModel);
-        return renderHtmlToImage(html, width, height, imageType);
+        return defaultRenderer.renderTemplateStringToImage(templateContent, templateName, dataModel, width, height, imageType);
     }
 
     /**
@@ -1295,10 +1351,7 @@ public class TemplateRenderUtil {
      * @throws Exception if an error occurs during rendering
      */
     public static void renderHtmlToPdfFile(String htmlContent, String outputPath, PdfOptions options) throws Exception {
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            renderHtmlToPdf(htmlContent, fos, options);
-            logger.info("PDF created successfully at: {}", outputPath);
-        }
+        defaultRenderer.renderHtmlToPdfFile(htmlContent, outputPath, options);
     }
 
     /**
@@ -1309,7 +1362,7 @@ public class TemplateRenderUtil {
      * @throws Exception if an error occurs during rendering
      */
     public static void renderHtmlToPdfFile(String htmlContent, String outputPath) throws Exception {
-        renderHtmlToPdfFile(htmlContent, outputPath, new PdfOptions());
+        defaultRenderer.renderHtmlToPdfFile(htmlContent, outputPath);
     }
 
     /**
@@ -1321,10 +1374,23 @@ public class TemplateRenderUtil {
      * @throws Exception if an error occurs during rendering
      */
     public static byte[] renderHtmlToPdfBytes(String htmlContent, PdfOptions options) throws Exception {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            renderHtmlToPdf(htmlContent, baos, options);
-            return baos.toByteArray();
-        }
+        return defaultRenderer.renderHtmlToPdfBytes(htmlContent, options);
+    }
+
+    /**
+     * Renders HTML content to a PDF in a pooled buffer and passes it to a handler, which avoids copying
+     * the document into a new array. The buffer is only valid while the handler runs.
+     *
+     * @param htmlContent the HTML content to render
+     * @param options custom PDF rendering options
+     * @param handler receives a read-only view of the PDF
+     * @param <T> the type of the handler's result
+     * @return the result of the handler
+     * @throws Exception if an error occurs during rendering or in the handler
+     */
+    public static <T> T renderHtmlToPdfBuffer(String htmlContent, PdfOptions options,
+                                              PdfBufferHandler<T> handler) throws Exception {
+        return defaultRenderer.renderHtmlToPdfBuffer(htmlContent, options, handler);
     }
 
     /**
@@ -1335,7 +1401,7 @@ public class TemplateRenderUtil {
      * @throws Exception if an error occurs during rendering
      */
     public static byte[] renderHtmlToPdfBytes(String htmlContent) throws Exception {
-        return renderHtmlToPdfBytes(htmlContent, new PdfOptions());
+        return defaultRenderer.renderHtmlToPdfBytes(htmlContent);
     }
 
     /**
@@ -1346,13 +1412,7 @@ public class TemplateRenderUtil {
      * @return a CompletableFuture that will complete with the PDF data as a byte array
      */
     public static CompletableFuture<byte[]> renderHtmlToPdfBytesAsync(String htmlContent, PdfOptions options) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return renderHtmlToPdfBytes(htmlContent, options);
-            } catch (Exception e) {
-                throw new CompletionException(e);
-            }
-        }, executorService);
+        return defaultRenderer.renderHtmlToPdfBytesAsync(htmlContent, options);
     }
 
     /**
@@ -1362,7 +1422,7 @@ public class TemplateRenderUtil {
      * @return a CompletableFuture that will complete with the PDF data as a byte array
      */
     public static CompletableFuture<byte[]> renderHtmlToPdfBytesAsync(String htmlContent) {
-        return renderHtmlToPdfBytesAsync(htmlContent, new PdfOptions());
+        return defaultRenderer.renderHtmlToPdfBytesAsync(htmlContent);
     }
 
     /**
@@ -1386,22 +1446,7 @@ public class TemplateRenderUtil {
      * @return a list of validation errors, or an empty list if the template is valid
      */
     public static List<String> validateTemplate(String templateContent) {
-        List<String> errors = new ArrayList<>();
-
-        if (templateContent == null || templateContent.trim().isEmpty()) {
-            errors.add("Template content is empty");
-            return errors;
-        }
-
-        try {
-            // Try to create a template from the content
-            new Template("validation-template", new StringReader(templateContent), freemarkerConfig);
-        } catch (Exception e) {
-            // Add the error message to the list
-            errors.add(e.getMessage());
-        }
-
-        return errors;
+        return defaultRenderer.validateTemplate(templateContent);
     }
 
     /**
@@ -1411,21 +1456,6 @@ public class TemplateRenderUtil {
      * @return a list of validation errors, or an empty list if the template is valid
      */
     public static List<String> validateTemplateFile(String templateName) {
-        List<String> errors = new ArrayList<>();
-
-        if (templateName == null || templateName.trim().isEmpty()) {
-            errors.add("Template name is empty");
-            return errors;
-        }
-
-        try {
-            // Try to load the template
-            freemarkerConfig.getTemplate(templateName);
-        } catch (Exception e) {
-            // Add the error message to the list
-            errors.add(e.getMessage());
-        }
-
-        return errors;
+        return defaultRenderer.validateTemplateFile(templateName);
     }
 }
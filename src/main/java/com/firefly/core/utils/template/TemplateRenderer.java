@@ -0,0 +1,3625 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.MultiTemplateLoader;
+import freemarker.cache.SoftCacheStorage;
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import freemarker.template.TemplateModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.pdf.DefaultPDFCreationListener;
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextUserAgent;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xhtmlrenderer.swing.Java2DRenderer;
+import com.firefly.core.utils.template.TemplateRenderUtil.PdfOptions;
+import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.pdf.PdfOutline;
+import com.lowagie.text.pdf.PdfAction;
+import com.lowagie.text.pdf.PdfDestination;
+
+import org.w3c.dom.Document;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Renders FreeMarker templates to XHTML, PDF, and images using Flying Saucer.
+ *
+ * A renderer owns its FreeMarker configuration, template caches, asynchronous executor and PDF renderer
+ * pool, so renderers configured for different template locations or locales, such as one per tenant, do
+ * not affect each other: reconfiguring or invalidating one leaves the caches of the others intact. Only
+ * parsed fonts are shared by all renderers in the process.
+ *
+ * A renderer is configured once with its {@link #builder()} and is safe for concurrent use. The static
+ * methods of {@link TemplateRenderUtil} use a default renderer that can be reconfigured at runtime.
+ */
+public final class TemplateRenderer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TemplateRenderer.class);
+    // Parsed fonts are shared by all renderers
+    private static final FontRegistry fontRegistry = new FontRegistry();
+    // In-memory PDF buffers are shared by all renderers
+    static final ByteArrayPool bufferPool = new ByteArrayPool(64L * 1024 * 1024);
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    // Custom template attribute holding the length of the template source, in characters
+    private static final String SOURCE_LENGTH_ATTRIBUTE = "firefly.sourceLength";
+    // Exercises common layout paths: block and inline text, a table, lists and page breaks
+    private static final String WARM_UP_HTML = "<html><head><style>"
+            + "td { border: 1px solid #000; padding: 2px; } .next { page-break-before: always; }"
+            + "</style></head><body>"
+            + "<h1>Warm-up</h1><p>Text with <b>bold</b>, <i>italic</i> and <span style=\"color: #336699\">color</span>.</p>"
+            + "<table><thead><tr><th>Item</th><th>Amount</th></tr></thead>"
+            + "<tbody><tr><td>First</td><td>1.00</td></tr><tr><td>Second</td><td>2.00</td></tr></tbody></table>"
+            + "<ul><li>One</li><li>Two</li></ul><div class=\"next\"><p>Second page</p></div>"
+            + "</body></html>";
+    private final Object configLock = new Object();
+    // Guarded by configLock
+    private final List<TemplateLoader> additionalLoaders = new ArrayList<>();
+    // Guarded by configLock
+    private TemplateWatcher templateWatcher = null;
+    private volatile ConfigSnapshot config =
+            new ConfigSnapshot(createFreemarkerConfig(), 0, Collections.emptyMap(), Collections.emptyMap());
+    private final RenderCache<String, Template> templateCache =
+            new RenderCache<>(100, TemplateRenderer::templateWeight);
+    private final RenderCache<ContentHash, Template> inlineTemplateCache =
+            new RenderCache<>(256, TemplateRenderer::templateWeight);
+    private volatile boolean templateCachingEnabled = true;
+    private final ConcurrentHashMap<String, TemplateNamespace> namespaces = new ConcurrentHashMap<>();
+    private final RenderOutputCache outputCache = new RenderOutputCache(32L * 1024 * 1024, Duration.ofMinutes(10));
+    private volatile TemplateCacheQuota defaultNamespaceQuota = TemplateCacheQuota.DEFAULT;
+    private final TemplateDependencyIndex dependencyIndex = new TemplateDependencyIndex();
+    private final AsyncRenderExecutor executorService = newDefaultAsyncExecutor();
+    private volatile Semaphore layoutLimiter = null;
+    private volatile BiFunction<String, Map<String, Object>, String> templatePreProcessor = null;
+    private volatile BiFunction<String, Map<String, Object>, String> templatePostProcessor = null;
+    private final PdfRendererPool pdfRendererPool = new PdfRendererPool(
+            TemplateRenderer::createPdfRenderer, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private volatile boolean pdfRendererPoolingEnabled = false;
+    private volatile PdfResultStore pdfResultStore = null;
+    private volatile FileSyncPolicy fileSyncPolicy = FileSyncPolicy.NONE;
+    private volatile RenderObserver renderObserver = RenderObserver.NOOP;
+
+    /**
+     * Creates a renderer with the default configuration: templates are loaded from the class path under
+     * {@code /templates} and from the {@code templates} directory, and asynchronous renders run on a fixed
+     * thread pool with a thread per processor, and at least two.
+     */
+    TemplateRenderer() {
+    }
+
+    /**
+     * Creates a builder for a renderer with its own configuration, caches and executor.
+     *
+     * @return a builder with the default configuration
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Stops the renderer's asynchronous executor and template watcher. Renders already submitted
+     * complete; the renderer cannot render asynchronously afterwards.
+     */
+    @Override
+    public void close() {
+        shutdownAsyncThreadPool();
+        try {
+            setTemplateWatchingEnabled(false);
+        } catch (IOException e) {
+            logger.warn("Failed to stop the template watcher", e);
+        }
+    }
+
+    /**
+     * Creates the default FreeMarker configuration.
+     *
+     * @return A configured FreeMarker Configuration instance
+     */
+    private Configuration createFreemarkerConfig() {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        cfg.setDefaultEncoding(StandardCharsets.UTF_8.name());
+        cfg.setLocale(Locale.US);
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+
+        // Multi-loader: first classpath:/templates, then ./templates
+        ClassTemplateLoader ctl = new ClassTemplateLoader(
+                Thread.currentThread().getContextClassLoader(), "/templates");
+        try {
+            FileTemplateLoader ftl = new FileTemplateLoader(new File("templates"));
+            List<TemplateLoader> loaderList = new ArrayList<>();
+            loaderList.add(ctl);
+            loaderList.add(ftl);
+            loaderList.addAll(additionalLoaders);
+
+            TemplateLoader[] loaders = loaderList.toArray(new TemplateLoader[0]);
+            cfg.setTemplateLoader(new MultiTemplateLoader(loaders));
+        } catch (IOException e) {
+            logger.warn("Filesystem loader not available, falling back to classpath only", e);
+
+            if (additionalLoaders.isEmpty()) {
+                cfg.setTemplateLoader(ctl);
+            } else {
+                List<TemplateLoader> loaderList = new ArrayList<>();
+                loaderList.add(ctl);
+                loaderList.addAll(additionalLoaders);
+                TemplateLoader[] loaders = loaderList.toArray(new TemplateLoader[0]);
+                cfg.setTemplateLoader(new MultiTemplateLoader(loaders));
+            }
+        }
+        cfg.setTemplateLoader(MeasuringTemplateLoader.wrap(cfg.getTemplateLoader()));
+
+        return cfg;
+    }
+
+    /**
+     * Resets the FreeMarker configuration with the current settings.
+     * This is useful after adding custom template loaders or changing configuration.
+     * Must be called while holding {@code configLock}.
+     *
+     * @param sharedVariables the shared variables to set on the new configuration
+     */
+    private void resetConfiguration(Map<String, Object> sharedVariables) {
+        // Recreate the configuration with current settings
+        Configuration cfg = createFreemarkerConfig();
+
+        // Re-apply shared variables
+        for (Map.Entry<String, Object> entry : sharedVariables.entrySet()) {
+            try {
+                cfg.setSharedVariable(entry.getKey(), entry.getValue());
+            } catch (TemplateException e) {
+                logger.error("Failed to set shared variable: {}", entry.getKey(), e);
+            }
+        }
+
+        publish(cfg, sharedVariables, Collections.emptyMap());
+        logger.info("FreeMarker configuration has been reset");
+    }
+
+    /**
+     * Applies a change to a copy of the current configuration and publishes the copy.
+     * Renders in progress keep using the configuration they started with.
+     *
+     * @param change the change to apply
+     * @throws E if the change fails, in which case nothing is published
+     */
+    private <E extends Exception> void updateConfiguration(ConfigurationChange<E> change) throws E {
+        synchronized (configLock) {
+            updateConfiguration(config.sharedVariables, change);
+        }
+    }
+
+    /**
+     * Applies a change to a copy of the current configuration and publishes the copy along with a new
+     * set of shared variables.
+     *
+     * @param sharedVariables the shared variables set on the configuration once changed
+     * @param change the change to apply
+     * @throws E if the change fails, in which case nothing is published
+     */
+    private <E extends Exception> void updateConfiguration(Map<String, Object> sharedVariables,
+                                                           ConfigurationChange<E> change) throws E {
+        synchronized (configLock) {
+            updateConfiguration(sharedVariables, config.settings, change);
+        }
+    }
+
+    /**
+     * Applies a change to a copy of the current configuration and publishes the copy along with a new
+     * set of shared variables and configuration properties.
+     *
+     * @param sharedVariables the shared variables set on the configuration once changed
+     * @param settings the configuration properties applied to the configuration once changed
+     * @param change the change to apply
+     * @throws E if the change fails, in which case nothing is published
+     */
+    private <E extends Exception> void updateConfiguration(Map<String, Object> sharedVariables,
+                                                           Map<String, String> settings,
+                                                           ConfigurationChange<E> change) throws E {
+        synchronized (configLock) {
+            Configuration cfg = (Configuration) config.configuration.clone();
+            // A clone shares its template cache storage with the original; templates in it belong to the original
+            cfg.setCacheStorage(new SoftCacheStorage());
+            change.apply(cfg);
+            publish(cfg, sharedVariables, settings);
+        }
+    }
+
+    /**
+     * Publishes a new configuration generation. Must be called while holding {@code configLock}.
+     *
+     * @param cfg the configuration, which must not be modified afterwards
+     * @param sharedVariables the shared variables set on the configuration
+     * @param settings the configuration properties applied to the configuration
+     */
+    private void publish(Configuration cfg, Map<String, Object> sharedVariables, Map<String, String> settings) {
+        // Record the source lengths of the templates read by a newly set loader, to weigh them by
+        cfg.setTemplateLoader(MeasuringTemplateLoader.wrap(cfg.getTemplateLoader()));
+        config = new ConfigSnapshot(cfg, config.generation + 1, Collections.unmodifiableMap(sharedVariables),
+                Collections.unmodifiableMap(settings));
+        // Compiled templates refer to the configuration they were compiled with
+        templateCache.invalidateAll();
+        inlineTemplateCache.invalidateAll();
+        namespaces.values().forEach(TemplateNamespace::clearTemplateCache);
+        outputCache.invalidateAll();
+        dependencyIndex.clear();
+
+        if (templateWatcher != null) {
+            try {
+                templateWatcher.watch(fileTemplateDirectories(MeasuringTemplateLoader.unwrap(cfg.getTemplateLoader())));
+            } catch (IOException e) {
+                logger.warn("Failed to watch the new template directories", e);
+            }
+        }
+    }
+
+    /**
+     * An immutable generation of the FreeMarker configuration. Renders read the current snapshot once,
+     * without locking; changes publish a new snapshot instead of modifying the configuration in use.
+     */
+    private static final class ConfigSnapshot {
+        private final Configuration configuration;
+        private final long generation;
+        private final Map<String, Object> sharedVariables;
+        // The configuration properties applied to the default configuration, by setting name
+        private final Map<String, String> settings;
+
+        ConfigSnapshot(Configuration configuration, long generation, Map<String, Object> sharedVariables,
+                       Map<String, String> settings) {
+            this.configuration = configuration;
+            this.generation = generation;
+            this.sharedVariables = sharedVariables;
+            this.settings = settings;
+        }
+    }
+
+    /**
+     * A change to a copy of the FreeMarker configuration.
+     */
+    @FunctionalInterface
+    private interface ConfigurationChange<E extends Exception> {
+        void apply(Configuration cfg) throws E;
+    }
+
+    /**
+     * Adds a shared variable that will be available to all templates.
+     *
+     * @param name the name of the variable
+     * @param value the value of the variable
+     * @throws TemplateException if the variable cannot be set
+     */
+    void addSharedVariable(String name, Object value) throws TemplateException {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Variable name cannot be null or empty");
+        }
+
+        synchronized (configLock) {
+            Map<String, Object> sharedVariables = new HashMap<>(config.sharedVariables);
+            sharedVariables.put(name, value);
+            updateConfiguration(sharedVariables, cfg -> cfg.setSharedVariable(name, value));
+        }
+        logger.info("Added shared variable: {}", name);
+    }
+
+    /**
+     * Removes a shared variable.
+     *
+     * @param name the name of the variable to remove
+     */
+    void removeSharedVariable(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+
+        synchronized (configLock) {
+            if (!config.sharedVariables.containsKey(name)) {
+                return;
+            }
+            Map<String, Object> sharedVariables = new HashMap<>(config.sharedVariables);
+            sharedVariables.remove(name);
+            // Configuration cannot remove a shared variable, but a null value makes it undefined
+            updateConfiguration(sharedVariables, cfg -> cfg.setSharedVariable(name, (TemplateModel) null));
+        }
+        logger.info("Removed shared variable: {}", name);
+    }
+
+    /**
+     * Clears all shared variables.
+     */
+    void clearSharedVariables() {
+        synchronized (configLock) {
+            resetConfiguration(Collections.emptyMap());
+        }
+        logger.info("Cleared all shared variables");
+    }
+
+    /**
+     * Sets configuration properties for FreeMarker.
+     *
+     * @param properties the properties to set
+     * @throws TemplateException if there is an error setting the properties
+     */
+    void setConfigurationProperties(Properties properties) throws TemplateException {
+        if (properties == null) {
+            throw new IllegalArgumentException("Properties cannot be null");
+        }
+
+        try {
+            synchronized (configLock) {
+                // Kept by name, in name order, for the keys of the PDF result store
+                Map<String, String> settings = new TreeMap<>(config.settings);
+                for (String name : properties.stringPropertyNames()) {
+                    settings.put(name, properties.getProperty(name));
+                }
+                updateConfiguration(config.sharedVariables, settings, cfg -> cfg.setSettings(properties));
+            }
+            logger.info("Applied configuration properties");
+        } catch (TemplateException e) {
+            logger.error("Failed to apply configuration properties", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sets a template preprocessor function that will be applied to template content before rendering.
+     * The function takes the template content and data model as input and returns the modified template content.
+     *
+     * @param preprocessor the preprocessor function, or null to remove the current preprocessor
+     */
+    void setTemplatePreProcessor(BiFunction<String, Map<String, Object>, String> preprocessor) {
+        templatePreProcessor = preprocessor;
+        logger.info("Template preprocessor {}", preprocessor != null ? "set" : "removed");
+    }
+
+    /**
+     * Sets a template postprocessor function that will be applied to rendered output.
+     * The function takes the rendered output and the original data model as input and returns the modified output.
+     *
+     * @param postprocessor the postprocessor function, or null to remove the current postprocessor
+     */
+    void setTemplatePostProcessor(BiFunction<String, Map<String, Object>, String> postprocessor) {
+        templatePostProcessor = postprocessor;
+        outputCache.invalidateAll();
+        logger.info("Template postprocessor {}", postprocessor != null ? "set" : "removed");
+    }
+
+    /**
+     * Configures the thread pool for asynchronous rendering.
+     * This switches asynchronous rendering back to platform threads if virtual threads were enabled.
+     *
+     * @param threadCount the number of threads in the pool
+     */
+    void setAsyncThreadPoolSize(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+
+        // Replace the thread pool and shut down the existing one
+        executorService.setDelegate(Executors.newFixedThreadPool(threadCount), threadCount).shutdown();
+        layoutLimiter = null;
+        logger.info("Async thread pool size set to {}", threadCount);
+    }
+
+    /**
+     * Bounds the number of asynchronous renders waiting for a thread.
+     * Every queued render holds its data model in memory, so an unbounded queue can run out of memory
+     * under a burst of requests. Once the queue is full, new renders are handled according to the policy:
+     * {@link AsyncRejectionPolicy#FAIL_FAST} makes the *Async method throw a
+     * {@link java.util.concurrent.RejectedExecutionException}, {@link AsyncRejectionPolicy#CALLER_RUNS}
+     * renders in the calling thread, and {@link AsyncRejectionPolicy#AWAIT} blocks until there is room.
+     *
+     * With virtual threads enabled, every render gets a thread right away; the capacity then bounds the
+     * renders beyond the concurrent layout limit.
+     *
+     * @param capacity the maximum number of waiting renders
+     * @param policy what to do with renders that do not fit
+     */
+    void setAsyncQueueCapacity(int capacity, AsyncRejectionPolicy policy) {
+        setAsyncQueueCapacity(capacity, policy, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Bounds the number of asynchronous renders waiting for a thread.
+     * With {@link AsyncRejectionPolicy#AWAIT}, a caller waits at most the given time for room in the
+     * queue before the render is rejected; the timeout is ignored by the other policies.
+     *
+     * @param capacity the maximum number of waiting renders
+     * @param policy what to do with renders that do not fit
+     * @param awaitTimeout the maximum time to wait for room in the queue
+     * @param unit the unit of the timeout
+     * @see #setAsyncQueueCapacity(int, AsyncRejectionPolicy)
+     */
+    void setAsyncQueueCapacity(int capacity, AsyncRejectionPolicy policy, long awaitTimeout, TimeUnit unit) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Queue capacity cannot be negative");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Rejection policy cannot be null");
+        }
+        if (awaitTimeout < 0 || unit == null) {
+            throw new IllegalArgumentException("Await timeout must be a non-negative duration");
+        }
+
+        executorService.setQueueCapacity(capacity, policy, awaitTimeout, unit);
+        logger.info("Async queue capacity set to {} with policy {}", capacity, policy);
+    }
+
+    /**
+     * Removes the bound on waiting asynchronous renders, which is the default.
+     */
+    void setAsyncQueueUnbounded() {
+        executorService.setQueueCapacity(-1, AsyncRejectionPolicy.FAIL_FAST, 0, TimeUnit.NANOSECONDS);
+        logger.info("Async queue capacity removed");
+    }
+
+    /**
+     * Returns statistics for asynchronous rendering: queue depth, time spent waiting for a thread,
+     * and how many renders were rejected or run by the caller.
+     *
+     * @return a snapshot of the asynchronous rendering statistics
+     */
+    public AsyncExecutorStats getAsyncExecutorStats() {
+        return executorService.stats();
+    }
+
+    private static AsyncRenderExecutor newDefaultAsyncExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        return new AsyncRenderExecutor(Executors.newFixedThreadPool(threads), threads);
+    }
+
+    /**
+     * Runs asynchronous rendering on virtual threads, one per task, instead of a fixed thread pool.
+     * Renders that wait on I/O (remote images and stylesheets, fonts on disk, slow output streams)
+     * then no longer hold a pool thread while waiting. To keep the CPU-bound part in check, PDF and
+     * image layout is limited to {@code maxConcurrentLayouts} documents at a time while this mode is
+     * active, including for synchronous calls. A PDF is written to memory while its layout slot is held
+     * and copied to the caller's stream after the slot is freed, so a slow stream does not block layout.
+     *
+     * Virtual threads require Java 21 or later. Use {@link #setAsyncThreadPoolSize(int)} to return
+     * to a fixed thread pool.
+     *
+     * @param maxConcurrentLayouts the maximum number of documents laid out concurrently
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    void setAsyncVirtualThreadsEnabled(int maxConcurrentLayouts) {
+        if (maxConcurrentLayouts < 1) {
+            throw new IllegalArgumentException("Concurrent layout limit must be at least 1");
+        }
+
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        layoutLimiter = new Semaphore(maxConcurrentLayouts);
+        executorService.setDelegate(virtualThreads, maxConcurrentLayouts).shutdown();
+        logger.info("Async rendering uses virtual threads, with at most {} concurrent layouts", maxConcurrentLayouts);
+    }
+
+    /**
+     * Runs asynchronous rendering on virtual threads, limiting layout to one document per processor.
+     *
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     * @see #setAsyncVirtualThreadsEnabled(int)
+     */
+    void setAsyncVirtualThreadsEnabled() {
+        setAsyncVirtualThreadsEnabled(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor. Looked up reflectively, since the library is built
+     * for runtimes that predate virtual threads.
+     *
+     * @return the executor
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Takes a layout permit if layout concurrency is limited.
+     *
+     * @return the limiter to release the permit to, or null if layout is not limited
+     * @throws InterruptedException if interrupted while waiting for a permit
+     */
+    private Semaphore acquireLayoutPermit() throws InterruptedException {
+        Semaphore limiter = layoutLimiter;
+        if (limiter != null) {
+            limiter.acquire();
+        }
+        return limiter;
+    }
+
+    /**
+     * Sets the observer that receives render stage timings, output sizes and template cache lookups,
+     * e.g. a {@link MicrometerRenderObserver}. Without an observer, no measurements are reported and
+     * PDF and image output is not counted.
+     *
+     * @param observer the observer, or null to remove the current observer
+     */
+    void setRenderObserver(RenderObserver observer) {
+        renderObserver = observer != null ? observer : RenderObserver.NOOP;
+        logger.info("Render observer {}", observer != null ? "set" : "removed");
+    }
+
+    private void observeStage(RenderObserver.Stage stage, String templateName, long startNanos) {
+        RenderObserver observer = renderObserver;
+        if (observer == RenderObserver.NOOP) {
+            return;
+        }
+        try {
+            observer.onStage(stage, templateName, System.nanoTime() - startNanos);
+        } catch (RuntimeException e) {
+            logger.warn("Render observer failed for stage {}", stage, e);
+        }
+    }
+
+    private void observeOutput(RenderObserver.Output output, String templateName, long size) {
+        RenderObserver observer = renderObserver;
+        if (observer == RenderObserver.NOOP) {
+            return;
+        }
+        try {
+            observer.onOutput(output, templateName, size);
+        } catch (RuntimeException e) {
+            logger.warn("Render observer failed for {} output", output, e);
+        }
+    }
+
+    private void observeCacheLookup(String templateName, boolean hit) {
+        RenderObserver observer = renderObserver;
+        if (observer == RenderObserver.NOOP) {
+            return;
+        }
+        try {
+            observer.onTemplateCacheLookup(templateName, hit);
+        } catch (RuntimeException e) {
+            logger.warn("Render observer failed for cache lookup", e);
+        }
+    }
+
+    /**
+     * Enables or disables reuse of PDF renderers.
+     * When enabled, {@link #renderHtmlToPdf} builds its renderer around a font resolver from a pool keyed
+     * by the font directory of the {@link PdfOptions}, which saves registering the fonts and resolving
+     * them again for every document. The rest of the renderer, including the output device that collects
+     * document metadata, is new for every document; the font resolver of a render that failed is discarded.
+     * When disabled, every document gets a new font resolver and the pool is emptied.
+     *
+     * @param enabled true to reuse renderers, false to create a renderer per document
+     */
+    void setPdfRendererPoolingEnabled(boolean enabled) {
+        pdfRendererPoolingEnabled = enabled;
+        if (!enabled) {
+            pdfRendererPool.clear();
+        }
+        logger.info("PDF renderer pooling {}", enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Sets how many idle font resolvers are kept per font directory when renderer pooling is enabled.
+     *
+     * @param maxIdle the maximum number of idle renderers per configuration
+     */
+    void setPdfRendererPoolSize(int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("PDF renderer pool size must be at least 1");
+        }
+
+        pdfRendererPool.setMaxIdlePerKey(maxIdle);
+        logger.info("PDF renderer pool size set to {}", maxIdle);
+    }
+
+    /**
+     * Parses all .ttf and .otf fonts in a directory ahead of time, typically at application startup.
+     * Fonts are parsed once per process and shared by every PDF render that uses the directory through
+     * {@link PdfOptions#withFontDirectory(String)}; a font file is parsed again only if it changes on disk.
+     *
+     * @param fontDir the directory containing the font files
+     * @return the number of font files that were loaded successfully
+     */
+    public static int preloadFonts(String fontDir) {
+        if (fontDir == null || fontDir.trim().isEmpty()) {
+            throw new IllegalArgumentException("Font directory cannot be null or empty");
+        }
+
+        int loaded = fontRegistry.preload(fontDir);
+        logger.info("Preloaded {} fonts from {}", loaded, fontDir);
+        return loaded;
+    }
+
+    /**
+     * Prepares for the first renders, typically at application startup, using one thread per processor
+     * and a PDF render with default options.
+     *
+     * @return the templates loaded and the time spent
+     * @throws InterruptedException if interrupted while warming up
+     * @see #warmUp(int, PdfOptions)
+     */
+    public WarmUpReport warmUp() throws InterruptedException {
+        return warmUp(Runtime.getRuntime().availableProcessors(), new PdfOptions());
+    }
+
+    /**
+     * Prepares for the first renders, typically at application startup.
+     *
+     * Every template found in the file system and class path template loaders is parsed into the
+     * template cache, using several threads. Templates that fail to parse are reported but do not stop
+     * the warm-up. Then, if PDF options are given, a small sample document is rendered to PDF with them.
+     * This loads and compiles the layout engine, and parses the fonts of the options' font directory.
+     *
+     * @param parallelism the number of templates parsed concurrently
+     * @param pdfOptions the options of the sample PDF render, usually those the application renders with,
+     *                   or null to skip it
+     * @return the templates loaded and the time spent
+     * @throws InterruptedException if interrupted while warming up; the templates already parsed stay cached
+     */
+    public WarmUpReport warmUp(int parallelism, PdfOptions pdfOptions) throws InterruptedException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+
+        long start = System.nanoTime();
+        Set<String> templateNames = TemplateScanner.findTemplates(
+                MeasuringTemplateLoader.unwrap(config.configuration.getTemplateLoader()));
+        Map<String, Exception> failures = new ConcurrentHashMap<>();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "template-warmup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Callable<Void>> loads = new ArrayList<>();
+            for (String templateName : templateNames) {
+                loads.add(() -> {
+                    try {
+                        getTemplateFromCacheOrLoad(templateCache, templateName);
+                    } catch (Exception e) {
+                        logger.warn("Failed to load template during warm-up: {}", templateName, e);
+                        failures.put(templateName, e);
+                    }
+                    return null;
+                });
+            }
+            workers.invokeAll(loads);
+        } finally {
+            workers.shutdownNow();
+        }
+        long templateNanos = System.nanoTime() - start;
+
+        long pdfNanos = 0;
+        boolean pdfWarmedUp = false;
+        if (pdfOptions != null) {
+            long pdfStart = System.nanoTime();
+            try {
+                renderHtmlToPdf(WARM_UP_HTML, OutputStream.nullOutputStream(), pdfOptions);
+                pdfWarmedUp = true;
+            } catch (Exception e) {
+                logger.warn("Warm-up PDF render failed", e);
+            }
+            pdfNanos = System.nanoTime() - pdfStart;
+        }
+
+        WarmUpReport report = new WarmUpReport(templateNames.size(), new TreeMap<>(failures), templateNanos,
+                pdfNanos, pdfWarmedUp, System.nanoTime() - start);
+        logger.info("Warm-up completed: {}", report);
+        return report;
+    }
+
+    /**
+     * Shuts down the thread pool for asynchronous rendering.
+     * This should be called when the application is shutting down.
+     */
+    void shutdownAsyncThreadPool() {
+        executorService.shutdown();
+        logger.info("Async thread pool shut down");
+    }
+
+    /**
+     * Sets the directory where template files are located.
+     *
+     * @param templateDir the directory containing template files
+     * @throws IOException if the directory cannot be accessed
+     */
+    void setTemplateDirectory(String templateDir) throws IOException {
+        File dir = new File(templateDir);
+        if (!dir.exists() || !dir.isDirectory()) {
+            throw new IOException("Template directory does not exist: " + templateDir);
+        }
+        updateConfiguration(cfg -> cfg.setDirectoryForTemplateLoading(dir));
+        logger.info("FreeMarker configured to load templates from directory: {}", templateDir);
+    }
+
+    /**
+     * Adds a custom template loader to the configuration.
+     * The loader will be added to the existing loaders.
+     *
+     * @param loader the template loader to add
+     */
+    void addTemplateLoader(TemplateLoader loader) {
+        if (loader == null) {
+            throw new IllegalArgumentException("Template loader cannot be null");
+        }
+
+        synchronized (configLock) {
+            additionalLoaders.add(loader);
+            resetConfiguration(config.sharedVariables);
+        }
+        logger.info("Added custom template loader: {}", loader.getClass().getSimpleName());
+    }
+
+    /**
+     * Enables or disables reloading of edited templates.
+     * When enabled, the directories of the file system template loaders are watched, and a template file
+     * that changes is dropped from the template cache so that its next render loads it again. Other cached
+     * templates are kept. Templates that include or import a changed template also see the change on their
+     * next render, since FreeMarker resolves includes and imports when a template is processed.
+     *
+     * The watched directories follow later changes to the template loaders.
+     *
+     * @param enabled true to watch template directories, false to stop watching
+     * @throws IOException if the directories cannot be watched
+     */
+    void setTemplateWatchingEnabled(boolean enabled) throws IOException {
+        synchronized (configLock) {
+            if (enabled == (templateWatcher != null)) {
+                return;
+            }
+            if (enabled) {
+                TemplateWatcher watcher = new TemplateWatcher(this::templateFileChanged,
+                        this::templateFilesChanged);
+                try {
+                    watcher.watch(fileTemplateDirectories(
+                            MeasuringTemplateLoader.unwrap(config.configuration.getTemplateLoader())));
+                } catch (IOException e) {
+                    watcher.close();
+                    throw e;
+                }
+                templateWatcher = watcher;
+                logger.info("Template watching enabled");
+            } else {
+                templateWatcher.close();
+                templateWatcher = null;
+                logger.info("Template watching disabled");
+            }
+        }
+    }
+
+    /**
+     * Invalidates a changed template and its dependents.
+     *
+     * @param templateName the name of the changed template
+     */
+    private void templateFileChanged(String templateName) {
+        Set<String> invalidated = invalidateTemplate(templateName);
+        logger.info("Template changed, removed from cache: {}", invalidated);
+    }
+
+    /**
+     * Removes a template from the template cache and FreeMarker's own cache, so the next render reads it
+     * from its loader again, and drops the cached output of the template and of every template that
+     * includes or imports it, directly or through other templates. Other cached templates and output are
+     * kept.
+     *
+     * Templates that include the changed template stay compiled, since FreeMarker resolves includes when
+     * a template is processed. Dependents are known from the {@code #include} and {@code #import}
+     * directives with a literal template name in the templates loaded so far.
+     *
+     * @param templateName the name of the template, relative to the template root
+     * @return the names of the invalidated templates, starting with the given one
+     */
+    public Set<String> invalidateTemplate(String templateName) {
+        if (templateName == null || templateName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template name cannot be null or empty");
+        }
+
+        try {
+            // First, so that a reload through the template cache does not find the old template here
+            config.configuration.removeTemplateFromCache(templateName);
+        } catch (IOException e) {
+            logger.warn("Failed to remove template from the FreeMarker cache: {}", templateName, e);
+        }
+        templateCache.invalidate(templateName);
+        for (TemplateNamespace namespace : namespaces.values()) {
+            namespace.templateCache.invalidate(templateName);
+        }
+
+        // Output rendered by the dependents contains the old content of the template
+        Set<String> invalidated = new LinkedHashSet<>();
+        invalidated.add(templateName);
+        invalidated.addAll(dependencyIndex.dependentsOf(templateName));
+        outputCache.invalidate(invalidated);
+        logger.debug("Invalidated templates: {}", invalidated);
+        return invalidated;
+    }
+
+    /**
+     * Drops all templates from the FreeMarker template cache and the template cache, for when it is
+     * unknown which templates changed.
+     */
+    private void templateFilesChanged() {
+        config.configuration.clearTemplateCache();
+        templateCache.invalidateAll();
+        namespaces.values().forEach(namespace -> namespace.templateCache.invalidateAll());
+        outputCache.invalidateAll();
+        logger.info("Template changes were missed, template cache cleared");
+    }
+
+    /**
+     * Finds the directories of the file system loaders in a template loader.
+     *
+     * @param loader a template loader, possibly combining several loaders
+     * @return the base directories of the file system loaders, in lookup order
+     */
+    private static List<Path> fileTemplateDirectories(TemplateLoader loader) {
+        List<Path> directories = new ArrayList<>();
+        if (loader instanceof FileTemplateLoader) {
+            directories.add(((FileTemplateLoader) loader).getBaseDirectory().toPath());
+        } else if (loader instanceof MultiTemplateLoader) {
+            MultiTemplateLoader multiLoader = (MultiTemplateLoader) loader;
+            for (int i = 0; i < multiLoader.getTemplateLoaderCount(); i++) {
+                directories.addAll(fileTemplateDirectories(multiLoader.getTemplateLoader(i)));
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Enables or disables template caching.
+     * When enabled, templates are cached in memory for faster access.
+     *
+     * @param enabled true to enable caching, false to disable
+     */
+    void setTemplateCachingEnabled(boolean enabled) {
+        templateCachingEnabled = enabled;
+        if (!enabled) {
+            templateCache.invalidateAll();
+            inlineTemplateCache.invalidateAll();
+            namespaces.values().forEach(TemplateNamespace::clearTemplateCache);
+            logger.info("Template caching disabled and cache cleared");
+        } else {
+            logger.info("Template caching enabled");
+        }
+    }
+
+    /**
+     * Sets the maximum number of templates to keep in the cache.
+     * If the cache exceeds this size, the templates least likely to be used again are evicted;
+     * eviction takes both recency and frequency of use into account.
+     * This replaces any weight bound set with {@link #setTemplateCacheMaxWeight(long)}.
+     *
+     * @param maxSize the maximum number of templates in the cache
+     */
+    void setTemplateCacheMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Template cache max size must be at least 1");
+        }
+
+        templateCache.setMaximumSize(maxSize);
+        logger.info("Template cache max size set to: {}", maxSize);
+    }
+
+    /**
+     * Bounds the template cache by the total size of the cached templates instead of their count.
+     * Each template is weighed by the length of its source text, so a few large layouts cannot
+     * crowd out many small templates unnoticed.
+     * This replaces any count bound set with {@link #setTemplateCacheMaxSize(int)}.
+     *
+     * @param maxWeight the maximum total template size in characters
+     */
+    void setTemplateCacheMaxWeight(long maxWeight) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Template cache max weight must be at least 1");
+        }
+
+        templateCache.setMaximumWeight(maxWeight);
+        logger.info("Template cache max weight set to: {} characters", maxWeight);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the template cache.
+     *
+     * @return a snapshot of the template cache statistics
+     */
+    public TemplateCacheStats getTemplateCacheStats() {
+        return templateCache.stats();
+    }
+
+    /**
+     * Sets the maximum number of compiled template strings to keep in the inline template cache
+     * used by {@link #renderTemplateStringToHtml(String, String, Map)} and the methods built on it.
+     *
+     * @param maxSize the maximum number of compiled template strings in the cache
+     */
+    void setInlineTemplateCacheMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Inline template cache max size must be at least 1");
+        }
+
+        inlineTemplateCache.setMaximumSize(maxSize);
+        logger.info("Inline template cache max size set to: {}", maxSize);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the inline template cache.
+     *
+     * @return a snapshot of the inline template cache statistics
+     */
+    public TemplateCacheStats getInlineTemplateCacheStats() {
+        return inlineTemplateCache.stats();
+    }
+
+    /**
+     * Enables or disables caching of the rendered output of a template. Only enable it for templates
+     * that render the same document whenever they are given the same data model: output is cached by
+     * {@link #renderTemplateToHtml(String, Map)} and {@link #renderTemplateToPdfBytes(String, Map, PdfOptions)},
+     * keyed by the template, a hash of the data model and the PDF options, and is reused until it
+     * expires or the template changes.
+     *
+     * @param templateName the template name
+     * @param enabled true to cache the template's output
+     */
+    void setOutputCachingEnabled(String templateName, boolean enabled) {
+        if (templateName == null || templateName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template name cannot be null or empty");
+        }
+
+        outputCache.setEnabled(templateName, enabled);
+        logger.info("Output caching {} for template: {}", enabled ? "enabled" : "disabled", templateName);
+    }
+
+    /**
+     * Bounds the rendered output cache and drops its current entries.
+     *
+     * @param maxBytes the maximum total size of the cached HTML and PDF output in bytes
+     * @param ttl how long rendered output is reused after it was cached
+     */
+    void setOutputCacheLimits(long maxBytes, Duration ttl) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Output cache max size must be at least 1 byte");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Output cache time to live must be positive");
+        }
+
+        outputCache.setLimits(maxBytes, ttl);
+        logger.info("Output cache limited to {} bytes for {}", maxBytes, ttl);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the rendered output cache. The weighted size is the
+     * total size of the cached output in bytes.
+     *
+     * @return a snapshot of the output cache statistics
+     */
+    public TemplateCacheStats getOutputCacheStats() {
+        return outputCache.stats();
+    }
+
+    /**
+     * Clears the template cache, including compiled template strings, the caches of all namespaces and
+     * the rendered output cache.
+     */
+    public void clearTemplateCache() {
+        templateCache.invalidateAll();
+        inlineTemplateCache.invalidateAll();
+        namespaces.values().forEach(TemplateNamespace::clearTemplateCache);
+        outputCache.invalidateAll();
+        logger.info("Template cache cleared");
+    }
+
+    /**
+     * Returns the namespace with the given name, creating it with the default namespace quota if it
+     * does not exist yet.
+     *
+     * @param name the namespace name, typically a tenant id
+     * @return the namespace
+     */
+    public TemplateNamespace namespace(String name) {
+        checkNamespaceName(name);
+        return namespaces.computeIfAbsent(name, key -> newNamespace(key, defaultNamespaceQuota));
+    }
+
+    /**
+     * Returns the namespace with the given name, creating it with the given quota if it does not exist
+     * yet. The quota of an existing namespace is replaced, evicting entries over the new bounds.
+     *
+     * @param name the namespace name, typically a tenant id
+     * @param quota the bounds of the namespace's caches
+     * @return the namespace
+     */
+    public TemplateNamespace namespace(String name, TemplateCacheQuota quota) {
+        checkNamespaceName(name);
+        if (quota == null) {
+            throw new IllegalArgumentException("Template cache quota cannot be null");
+        }
+        return namespaces.compute(name, (key, existing) -> {
+            if (existing == null) {
+                return newNamespace(key, quota);
+            }
+            existing.setQuota(quota);
+            logger.info("Template namespace {} quota changed to {}", key, quota);
+            return existing;
+        });
+    }
+
+    /**
+     * Removes a namespace and drops its cached templates. Renders through the removed namespace fail
+     * with an {@link IllegalStateException}.
+     *
+     * @param name the namespace name
+     * @return true if the namespace existed
+     */
+    public boolean removeNamespace(String name) {
+        TemplateNamespace namespace = namespaces.remove(name);
+        if (namespace == null) {
+            return false;
+        }
+        namespace.remove();
+        logger.info("Template namespace removed: {}", name);
+        return true;
+    }
+
+    /**
+     * @return the names of the current namespaces, in alphabetical order
+     */
+    public Set<String> getNamespaceNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(namespaces.keySet()));
+    }
+
+    /**
+     * Sets the quota of namespaces created without one from now on. Existing namespaces keep their quota.
+     *
+     * @param quota the bounds of the caches of new namespaces
+     */
+    void setDefaultNamespaceQuota(TemplateCacheQuota quota) {
+        if (quota == null) {
+            throw new IllegalArgumentException("Template cache quota cannot be null");
+        }
+        defaultNamespaceQuota = quota;
+        logger.info("Default template namespace quota set to: {}", quota);
+    }
+
+    private TemplateNamespace newNamespace(String name, TemplateCacheQuota quota) {
+        logger.info("Template namespace created: {} with {}", name, quota);
+        return new TemplateNamespace(this, name, quota);
+    }
+
+    private static void checkNamespaceName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Namespace name cannot be null or empty");
+        }
+    }
+
+    /**
+     * Configures FreeMarker to load templates from both classpath and file system.
+     * Templates will be searched first in the classpath, then in the file system.
+     *
+     * @param classpathPrefix prefix for classpath resources (e.g., "templates")
+     * @param fileSystemDir directory for file system resources
+     * @throws IOException if the file system directory cannot be accessed
+     */
+    void setClasspathAndFileTemplateLoaders(String classpathPrefix, String fileSystemDir) throws IOException {
+        if (classpathPrefix == null || classpathPrefix.trim().isEmpty()) {
+            classpathPrefix = "templates";
+        }
+
+        if (fileSystemDir == null || fileSystemDir.trim().isEmpty()) {
+            fileSystemDir = "templates";
+        }
+
+        ClassTemplateLoader classLoader = new ClassTemplateLoader(
+                Thread.currentThread().getContextClassLoader(), classpathPrefix);
+
+        File dir = new File(fileSystemDir);
+        if (!dir.exists()) {
+            if (!dir.mkdirs()) {
+                logger.warn("Could not create template directory: {}", fileSystemDir);
+                // Continue with just the classpath loader
+                updateConfiguration(cfg -> cfg.setTemplateLoader(classLoader));
+                logger.info("FreeMarker configured to load templates from classpath:{} only", classpathPrefix);
+                return;
+            }
+        }
+
+        if (!dir.isDirectory()) {
+            throw new IOException("Template path is not a directory: " + fileSystemDir);
+        }
+
+        try {
+            FileTemplateLoader fileLoader = new FileTemplateLoader(dir);
+            TemplateLoader[] loaders = new TemplateLoader[]{classLoader, fileLoader};
+            updateConfiguration(cfg -> cfg.setTemplateLoader(new MultiTemplateLoader(loaders)));
+            logger.info("FreeMarker configured to load templates from classpath:{} and directory:{}",
+                      classpathPrefix, fileSystemDir);
+        } catch (IOException e) {
+            // If file loader fails, continue with just the classpath loader
+            updateConfiguration(cfg -> cfg.setTemplateLoader(classLoader));
+            logger.info("FreeMarker configured to load templates from classpath:{} only", classpathPrefix);
+            logger.warn("Could not configure file system template loader", e);
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template to an XHTML string.
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @return the rendered HTML as a string
+     * @throws IOException if the template cannot be read
+     * @throws TemplateException if the template cannot be processed
+     */
+    public String renderTemplateToHtml(String templateName, Map<String, Object> dataModel)
+            throws IOException, TemplateException {
+        RenderOutputCache.Key key = outputCacheKey(templateName, dataModel, null);
+        if (key == null) {
+            return renderTemplateToHtml(templateCache, templateName, dataModel);
+        }
+
+        Object cached = outputCache.get(key);
+        if (cached != null) {
+            return (String) cached;
+        }
+        long epoch = outputCache.epoch();
+        String html = renderTemplateToHtml(templateCache, templateName, dataModel);
+        outputCache.put(key, html, epoch);
+        return html;
+    }
+
+    /**
+     * Computes the output cache key of a render.
+     *
+     * @return the key, or null if the template's output is not cached or the data model cannot be hashed
+     */
+    private RenderOutputCache.Key outputCacheKey(String templateName, Map<String, Object> dataModel,
+                                                 PdfOptions options) {
+        if (templateName == null || !outputCache.isEnabled(templateName)) {
+            return null;
+        }
+
+        RenderOutputCache.Key key = outputCache.key(templateName, config.generation,
+                dataModel != null ? dataModel : Collections.emptyMap(), options);
+        if (key == null) {
+            logger.debug("Data model of template {} cannot be hashed, output is not cached", templateName);
+        }
+        return key;
+    }
+
+    /**
+     * Renders a FreeMarker template to an XHTML string, caching the parsed template in the given cache.
+     */
+    String renderTemplateToHtml(RenderCache<String, Template> cache, String templateName, Map<String, Object> dataModel)
+            throws IOException, TemplateException {
+        if (templateName == null || templateName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template name cannot be null or empty");
+        }
+
+        if (dataModel == null) {
+            dataModel = new HashMap<>();
+        }
+
+        try {
+            // Get template from cache or load it
+            Template tpl = getTemplateFromCacheOrLoad(cache, templateName);
+            return processTemplate(tpl, dataModel, templateName);
+        } catch (IOException e) {
+            logger.error("Failed to load template: {}", templateName, e);
+            throw new IOException("Failed to load template: " + templateName, e);
+        } catch (TemplateException e) {
+            logger.error("Failed to process template: {}", templateName, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template directly to a writer, without holding the whole output in memory.
+     * If a post-processor is configured, the output has to be buffered so that it can be post-processed
+     * before it is written.
+     *
+     * The writer is neither flushed nor closed. Template output consists of many small writes, so an
+     * unbuffered writer should be wrapped in a {@link BufferedWriter}.
+     *
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @param out the writer receiving the rendered HTML
+     * @throws IOException if the template cannot be read or the output cannot be written
+     * @throws TemplateException if the template cannot be processed
+     */
+    public void renderTemplateToHtml(String templateName, Map<String, Object> dataModel, Writer out)
+            throws IOException, TemplateException {
+        renderTemplateToHtml(templateCache, templateName, dataModel, out);
+    }
+
+    /**
+     * Renders a FreeMarker template directly to a writer, caching the parsed template in the given cache.
+     */
+    void renderTemplateToHtml(RenderCache<String, Template> cache, String templateName, Map<String, Object> dataModel,
+                              Writer out) throws IOException, TemplateException {
+        if (templateName == null || templateName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template name cannot be null or empty");
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Writer cannot be null");
+        }
+
+        if (dataModel == null) {
+            dataModel = new HashMap<>();
+        }
+
+        Template tpl;
+        try {
+            tpl = getTemplateFromCacheOrLoad(cache, templateName);
+        } catch (IOException e) {
+            logger.error("Failed to load template: {}", templateName, e);
+            throw new IOException("Failed to load template: " + templateName, e);
+        }
+
+        try {
+            processTemplate(tpl, dataModel, out, templateName);
+        } catch (TemplateException e) {
+            logger.error("Failed to process template: {}", templateName, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template directly to an output stream in the given charset.
+     * Output is encoded through a fixed-size buffer, so memory use does not grow with the size of
+     * the rendered document. The stream is flushed but not closed.
+     *
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @param os the output stream receiving the rendered HTML
+     * @param charset the charset used to encode the output
+     * @throws IOException if the template cannot be read or the output cannot be written
+     * @throws TemplateException if the template cannot be processed
+     */
+    public void renderTemplate(String templateName, Map<String, Object> dataModel, OutputStream os, Charset charset)
+            throws IOException, TemplateException {
+        if (os == null) {
+            throw new IllegalArgumentException("Output stream cannot be null");
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(os, charset != null ? charset : StandardCharsets.UTF_8),
+                STREAM_BUFFER_SIZE);
+        renderTemplateToHtml(templateName, dataModel, out);
+        out.flush();
+    }
+
+    /**
+     * Processes a template into a writer, applying the post-processor if one is configured.
+     *
+     * @param template the template to process
+     * @param dataModel the data model to use for rendering
+     * @param out the writer receiving the output
+     * @param templateName the template name reported to the render observer
+     * @throws IOException if the output cannot be written
+     * @throws TemplateException if the template cannot be processed
+     */
+    private void processTemplate(Template template, Map<String, Object> dataModel, Writer out,
+                                 String templateName) throws IOException, TemplateException {
+        if (templatePostProcessor == null) {
+            long start = System.nanoTime();
+            template.process(dataModel, out);
+            observeStage(RenderObserver.Stage.TEMPLATE_PROCESS, templateName, start);
+            return;
+        }
+
+        // The post-processor works on the complete output
+        out.write(processTemplate(template, dataModel, templateName));
+    }
+
+    /**
+     * Processes a template into a string, applying the post-processor if one is configured.
+     *
+     * @param template the template to process
+     * @param dataModel the data model to use for rendering
+     * @param templateName the template name reported to the render observer
+     * @return the rendered output
+     * @throws IOException if the template cannot be processed due to an I/O error
+     * @throws TemplateException if the template cannot be processed
+     */
+    private String processTemplate(Template template, Map<String, Object> dataModel, String templateName)
+            throws IOException, TemplateException {
+        long start = System.nanoTime();
+        StringWriter out = new StringWriter();
+        template.process(dataModel, out);
+        String result = out.toString();
+        observeStage(RenderObserver.Stage.TEMPLATE_PROCESS, templateName, start);
+
+        // Apply post-processing if configured
+        BiFunction<String, Map<String, Object>, String> postProcessor = templatePostProcessor;
+        if (postProcessor != null) {
+            start = System.nanoTime();
+            result = postProcessor.apply(result, dataModel);
+            observeStage(RenderObserver.Stage.POST_PROCESS, templateName, start);
+        }
+
+        observeOutput(RenderObserver.Output.HTML, templateName, result.length());
+        return result;
+    }
+
+    /**
+     * Renders a FreeMarker template to an XHTML string asynchronously.
+     * @param templateName path within loaders, e.g., "invoice.ftl"
+     * @param dataModel the data model to use for rendering
+     * @return a CompletableFuture that will complete with the rendered HTML
+     */
+    public CompletableFuture<String> renderTemplateToHtmlAsync(String templateName, Map<String, Object> dataModel) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return renderTemplateToHtml(templateName, dataModel);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Gets a template from a template cache or loads it if not cached.
+     * Concurrent requests for a template that is not cached share a single load.
+     *
+     * @param cache the template cache of the renderer or of a namespace
+     * @param templateName the name of the template to load
+     * @return the loaded template
+     * @throws IOException if the template cannot be loaded
+     */
+    private Template getTemplateFromCacheOrLoad(RenderCache<String, Template> cache, String templateName)
+            throws IOException {
+        long start = System.nanoTime();
+        Configuration cfg = config.configuration;
+        if (!templateCachingEnabled) {
+            Template template = cfg.getTemplate(templateName);
+            observeStage(RenderObserver.Stage.TEMPLATE_LOAD, templateName, start);
+            return template;
+        }
+
+        // The cache evicts other entries if it is full
+        boolean[] loaded = new boolean[1];
+        Template template = cache.get(templateName, () -> {
+            logger.debug("Loading template into cache: {}", templateName);
+            loaded[0] = true;
+            Template loadedTemplate = cfg.getTemplate(templateName);
+            setSourceLength(loadedTemplate,
+                    MeasuringTemplateLoader.sourceLength(cfg.getTemplateLoader(), loadedTemplate.getSourceName()));
+            return loadedTemplate;
+        });
+        if (loaded[0]) {
+            // Loads the included templates, so it runs outside the cache's lock on the key
+            dependencyIndex.record(template, cfg::getTemplate);
+        }
+        if (template.getConfiguration() != cfg) {
+            // Loaded from a configuration replaced since; the invalidation may have run before it was cached
+            cache.invalidate(templateName);
+            template = cfg.getTemplate(templateName);
+        }
+        observeCacheLookup(templateName, !loaded[0]);
+        observeStage(RenderObserver.Stage.TEMPLATE_LOAD, templateName, start);
+        return template;
+    }
+
+    /**
+     * Weighs a template by the length of its source text, for weight-bounded caching.
+     * The length is recorded when the template is loaded; a template without one weighs 1.
+     *
+     * @param template the template to weigh
+     * @return the template weight in characters
+     */
+    static int templateWeight(Template template) {
+        Object length = template.getCustomAttribute(SOURCE_LENGTH_ATTRIBUTE);
+        return length instanceof Integer ? Math.max((Integer) length, 1) : 1;
+    }
+
+    /**
+     * Records the length of the source a template was compiled from, for {@link #templateWeight(Template)}.
+     *
+     * @param template the compiled template
+     * @param length the source length in characters, or a negative value if unknown
+     */
+    private static void setSourceLength(Template template, int length) {
+        if (length >= 0) {
+            template.setCustomAttribute(SOURCE_LENGTH_ATTRIBUTE, length);
+        }
+    }
+
+    /**
+     * Gets a compiled template for a template string from an inline template cache, or parses it.
+     * Entries are keyed by a 128-bit hash of the template text, the template name and the
+     * configuration generation, so identical template strings are only parsed once per configuration.
+     *
+     * @param cache the inline template cache of the renderer or of a namespace
+     * @param templateContent the template content, after preprocessing
+     * @param templateName the name given by the caller, or null to derive one from the content hash
+     * @return the compiled template
+     * @throws IOException if the template cannot be parsed
+     */
+    private Template getInlineTemplate(RenderCache<ContentHash, Template> cache, String templateContent,
+                                       String templateName) throws IOException {
+        long start = System.nanoTime();
+        ConfigSnapshot snapshot = config;
+        long generation = snapshot.generation;
+        Configuration cfg = snapshot.configuration;
+
+        ContentHash key = new ContentHasher()
+                .putLong(generation)
+                .putString(templateContent)
+                .putString(templateName)
+                .hash();
+        if (templateName == null) {
+            templateName = "inline-template-" + key.toHex().substring(0, 16);
+        }
+
+        if (!templateCachingEnabled) {
+            Template template = new Template(templateName, new StringReader(templateContent), cfg);
+            observeStage(RenderObserver.Stage.TEMPLATE_LOAD, templateName, start);
+            return template;
+        }
+
+        String name = templateName;
+        boolean[] loaded = new boolean[1];
+        Template template = cache.get(key, () -> {
+            logger.debug("Adding template string to cache: {}", name);
+            loaded[0] = true;
+            Template compiled = new Template(name, new StringReader(templateContent), cfg);
+            setSourceLength(compiled, templateContent.length());
+            return compiled;
+        });
+        observeCacheLookup(name, !loaded[0]);
+        observeStage(RenderObserver.Stage.TEMPLATE_LOAD, name, start);
+        return template;
+    }
+
+    /**
+     * Renders a FreeMarker template string (not a file) to an HTML string.
+     * Compiled template strings are cached by content, so rendering the same template string
+     * repeatedly only parses it once.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @return the rendered HTML as a string
+     * @throws IOException if an I/O error occurs
+     * @throws TemplateException if the template cannot be processed
+     * @throws IllegalArgumentException if templateContent is null or empty
+     */
+    public String renderTemplateStringToHtml(String templateContent, String templateName, Map<String, Object> dataModel)
+            throws IOException, TemplateException {
+        return renderTemplateStringToHtml(inlineTemplateCache, templateContent, templateName, dataModel);
+    }
+
+    /**
+     * Renders a FreeMarker template string to an HTML string, caching the compiled template in the given cache.
+     */
+    String renderTemplateStringToHtml(RenderCache<ContentHash, Template> cache, String templateContent,
+                                      String templateName, Map<String, Object> dataModel)
+            throws IOException, TemplateException {
+        if (templateContent == null || templateContent.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template content cannot be null or empty");
+        }
+
+        if (templateName != null && templateName.trim().isEmpty()) {
+            // A name is derived from the content hash instead
+            templateName = null;
+        }
+
+        if (dataModel == null) {
+            dataModel = new HashMap<>();
+        }
+
+        try {
+            // Apply preprocessing if configured
+            BiFunction<String, Map<String, Object>, String> preProcessor = templatePreProcessor;
+            if (preProcessor != null) {
+                templateContent = preProcessor.apply(templateContent, dataModel);
+            }
+
+            Template template = getInlineTemplate(cache, templateContent, templateName);
+            return processTemplate(template, dataModel, template.getName());
+        } catch (TemplateException e) {
+            logger.error("Failed to process template string: {}", templateName, e);
+            throw e;
+        } catch (IOException e) {
+            logger.error("I/O error processing template string: {}", templateName, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template string (not a file) directly to a writer, without holding the
+     * whole output in memory. If a post-processor is configured, the output has to be buffered so
+     * that it can be post-processed before it is written. The writer is neither flushed nor closed.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param out the writer receiving the rendered HTML
+     * @throws IOException if an I/O error occurs
+     * @throws TemplateException if the template cannot be processed
+     * @throws IllegalArgumentException if templateContent is null or empty
+     */
+    public void renderTemplateStringToHtml(String templateContent, String templateName,
+                                           Map<String, Object> dataModel, Writer out)
+            throws IOException, TemplateException {
+        if (templateContent == null || templateContent.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template content cannot be null or empty");
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Writer cannot be null");
+        }
+
+        if (templateName != null && templateName.trim().isEmpty()) {
+            templateName = null;
+        }
+
+        if (dataModel == null) {
+            dataModel = new HashMap<>();
+        }
+
+        try {
+            BiFunction<String, Map<String, Object>, String> preProcessor = templatePreProcessor;
+            if (preProcessor != null) {
+                templateContent = preProcessor.apply(templateContent, dataModel);
+            }
+
+            Template template = getInlineTemplate(inlineTemplateCache, templateContent, templateName);
+            processTemplate(template, dataModel, out, template.getName());
+        } catch (TemplateException e) {
+            logger.error("Failed to process template string: {}", templateName, e);
+            throw e;
+        } catch (IOException e) {
+            logger.error("I/O error processing template string: {}", templateName, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template string (not a file) to an HTML string asynchronously.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @return a CompletableFuture that will complete with the rendered HTML
+     */
+    public CompletableFuture<String> renderTemplateStringToHtmlAsync(String templateContent, String templateName, Map<String, Object> dataModel) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return renderTemplateStringToHtml(templateContent, templateName, dataModel);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Renders HTML/XHTML content to PDF using custom options.
+     */
+    public void renderHtmlToPdf(String htmlContent, OutputStream os, PdfOptions options) throws Exception {
+        renderHtmlToPdf(htmlContent, os, options, null);
+    }
+
+    /**
+     * Renders HTML/XHTML content to PDF, reporting render stages for the given template.
+     */
+    void renderHtmlToPdf(String htmlContent, OutputStream os, PdfOptions options,
+                         String templateName) throws Exception {
+        String xhtml = prepareXhtml(htmlContent, options, templateName);
+        if (options.isParallelSegments()) {
+            // A few segments per worker, so that uneven segments still keep every worker busy
+            List<String> segments = PdfSegments.split(xhtml, 4 * Math.max(1, executorService.workers()));
+            if (segments.size() > 1) {
+                renderSegmentedPdf(segments, os, options, templateName);
+                return;
+            }
+        }
+
+        ITextRenderer renderer = acquirePdfRenderer(options, templateName);
+        writePdf(renderer, xhtml, os, options, templateName);
+
+        // Only a renderer that completed its document is safe to hand out again
+        releasePdfRenderer(options, renderer);
+    }
+
+    /**
+     * Wraps HTML into a well-formed XHTML document and injects the page CSS of the PDF options.
+     */
+    private String prepareXhtml(String htmlContent, PdfOptions options, String templateName) {
+        if (htmlContent == null || htmlContent.isBlank()) {
+            throw new IllegalArgumentException("HTML content is empty");
+        }
+
+        long start = System.nanoTime();
+        String xhtml = ensureXhtmlDocument(htmlContent);
+        xhtml = injectPageCss(xhtml, options);
+        observeStage(RenderObserver.Stage.XHTML_PREPARE, templateName, start);
+        return xhtml;
+    }
+
+    /**
+     * Borrows a PDF renderer for the given options from the pool, or creates one if pooling is disabled.
+     */
+    private ITextRenderer acquirePdfRenderer(PdfOptions options, String templateName) {
+        long start = System.nanoTime();
+        ITextRenderer renderer = pdfRendererPoolingEnabled
+                ? pdfRendererPool.borrow(options.getFontDir(), options.getBaseUri())
+                : createPdfRenderer(options.getFontDir(), options.getBaseUri());
+        observeStage(RenderObserver.Stage.RENDERER_SETUP, templateName, start);
+        return renderer;
+    }
+
+    /**
+     * Returns the reusable state of a renderer whose last document completed to the pool, if pooling is
+     * enabled.
+     */
+    private void releasePdfRenderer(PdfOptions options, ITextRenderer renderer) {
+        if (pdfRendererPoolingEnabled) {
+            pdfRendererPool.release(options.getFontDir(), renderer);
+        }
+    }
+
+    /**
+     * Writes an XHTML document as PDF with the given renderer, reporting the output size.
+     */
+    private void writePdf(ITextRenderer renderer, String xhtml, OutputStream os, PdfOptions options,
+                          String templateName) throws Exception {
+        // Output is only counted when someone is listening
+        CountingOutputStream counter = renderObserver != RenderObserver.NOOP ? new CountingOutputStream(os) : null;
+        renderPdf(renderer, xhtml, counter != null ? counter : os, options, templateName);
+        if (counter != null) {
+            observeOutput(RenderObserver.Output.PDF, templateName, counter.getCount());
+        }
+    }
+
+    /**
+     * Creates a PDF renderer with the fonts and base URI of a PDF configuration.
+     *
+     * @param fontDir the directory to load fonts from, or null
+     * @param baseUri the base URI for resolving relative resources, or null
+     * @return a new renderer
+     */
+    private static ITextRenderer createPdfRenderer(String fontDir, String baseUri) {
+        return createPdfRenderer(fontDir, baseUri, null);
+    }
+
+    /**
+     * Creates a PDF renderer with the base URI of a PDF configuration and an existing font resolver.
+     * The output device, which collects the metadata of every document it writes, is always new.
+     *
+     * @param fontDir the directory to load fonts from, or null
+     * @param baseUri the base URI for resolving relative resources, or null
+     * @param fonts a font resolver that already has the fonts of the directory, or null to create one
+     * @return a new renderer
+     */
+    private static ITextRenderer createPdfRenderer(String fontDir, String baseUri, ITextFontResolver fonts) {
+        PageCountOutputDevice device = new PageCountOutputDevice(ITextRenderer.DEFAULT_DOTS_PER_POINT);
+        ITextRenderer renderer = fonts != null
+                ? new ITextRenderer(ITextRenderer.DEFAULT_DOTS_PER_POINT, ITextRenderer.DEFAULT_DOTS_PER_PIXEL,
+                        device, fonts)
+                : new ITextRenderer(ITextRenderer.DEFAULT_DOTS_PER_POINT, ITextRenderer.DEFAULT_DOTS_PER_PIXEL,
+                        device);
+        if (fonts == null) {
+            configureFonts(renderer, fontDir);
+        }
+
+        if (baseUri != null) {
+            ITextUserAgent ua = new ITextUserAgent(renderer.getOutputDevice());
+            ua.setSharedContext(renderer.getSharedContext());
+            ua.setBaseURL(baseUri);
+            renderer.getSharedContext().setUserAgentCallback(ua);
+        }
+        return renderer;
+    }
+
+    /**
+     * Lays out an XHTML document and writes it as PDF with the given renderer.
+     */
+    private void renderPdf(ITextRenderer renderer, String xhtml, OutputStream os, PdfOptions options,
+                           String templateName) throws Exception {
+        loadPdfDocument(renderer, xhtml, options, templateName);
+
+        // Parsing and loading the document may wait on I/O; layout and PDF output are CPU-bound
+        Semaphore permit = acquireLayoutPermit();
+        if (permit == null || os instanceof PooledByteArrayOutputStream) {
+            try {
+                layoutAndWritePdf(renderer, os, options, templateName);
+            } finally {
+                if (permit != null) {
+                    permit.release();
+                }
+            }
+            return;
+        }
+
+        // The caller's stream may block, so the PDF is written to memory while the permit is held
+        PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream(bufferPool);
+        try {
+            try {
+                layoutAndWritePdf(renderer, buffer, options, templateName);
+            } finally {
+                permit.release();
+            }
+            buffer.writeTo(os);
+            os.flush();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Parses an XHTML document into a renderer.
+     */
+    private void loadPdfDocument(ITextRenderer renderer, String xhtml, PdfOptions options, String templateName) {
+        long start = System.nanoTime();
+        if (options.getBaseUri() != null) {
+            renderer.setDocumentFromString(xhtml, options.getBaseUri());
+        } else {
+            renderer.setDocumentFromString(xhtml);
+        }
+        observeStage(RenderObserver.Stage.DOCUMENT_LOAD, templateName, start);
+    }
+
+    /**
+     * Renders the segments of a document in parallel and concatenates them into one PDF.
+     *
+     * All segments are laid out first, since a segment's first page number depends on the page counts of
+     * the segments before it. Each segment is then written with its first page number and the page count
+     * of the whole document, so {@code counter(page)} continues across segments and {@code counter(pages)}
+     * counts all of them, and the PDFs are concatenated.
+     */
+    private void renderSegmentedPdf(List<String> segments, OutputStream os, PdfOptions options,
+                                    String templateName) throws Exception {
+        int count = segments.size();
+        ITextRenderer[] renderers = new ITextRenderer[count];
+        PooledByteArrayOutputStream[] outputs = new PooledByteArrayOutputStream[count];
+        boolean completed = false;
+        try {
+            runSegments(count, i -> {
+                renderers[i] = acquirePdfRenderer(options, templateName);
+                loadPdfDocument(renderers[i], segments.get(i), options, templateName);
+                Semaphore permit = acquireLayoutPermit();
+                try {
+                    long start = System.nanoTime();
+                    renderers[i].layout();
+                    observeStage(RenderObserver.Stage.LAYOUT, templateName, start);
+                } finally {
+                    if (permit != null) {
+                        permit.release();
+                    }
+                }
+            });
+
+            int[] firstPages = new int[count];
+            int page = 1;
+            for (int i = 0; i < count; i++) {
+                firstPages[i] = page;
+                page += renderers[i].getRootBox().getLayer().getPages().size();
+            }
+            for (ITextRenderer renderer : renderers) {
+                ((PageCountOutputDevice) renderer.getOutputDevice()).setDocumentPageCount(page - 1);
+            }
+
+            runSegments(count, i -> {
+                outputs[i] = new PooledByteArrayOutputStream(bufferPool);
+                Semaphore permit = acquireLayoutPermit();
+                try {
+                    long start = System.nanoTime();
+                    renderers[i].createPDF(outputs[i], true, firstPages[i]);
+                    observeStage(RenderObserver.Stage.PDF_WRITE, templateName, start);
+                } finally {
+                    if (permit != null) {
+                        permit.release();
+                    }
+                }
+            });
+
+            List<byte[]> pdfs = new ArrayList<>(count);
+            for (PooledByteArrayOutputStream output : outputs) {
+                pdfs.add(output.toByteArray());
+            }
+            long start = System.nanoTime();
+            CountingOutputStream counter = renderObserver != RenderObserver.NOOP ? new CountingOutputStream(os) : null;
+            PdfSegments.merge(pdfs, options.getBookmarks(), counter != null ? counter : os);
+            os.flush();
+            observeStage(RenderObserver.Stage.PDF_MERGE, templateName, start);
+            if (counter != null) {
+                observeOutput(RenderObserver.Output.PDF, templateName, counter.getCount());
+            }
+            completed = true;
+        } finally {
+            for (PooledByteArrayOutputStream output : outputs) {
+                if (output != null) {
+                    output.release();
+                }
+            }
+            // Renderers are only reused if every segment completed
+            for (ITextRenderer renderer : renderers) {
+                if (completed && renderer != null) {
+                    releasePdfRenderer(options, renderer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a task for every segment on the async executor. The calling thread takes segments as well, so
+     * the segments complete even when the executor is busy, or when the caller is one of its workers.
+     * Once a segment fails, the remaining segments are skipped and the first failure is thrown.
+     */
+    private void runSegments(int count, SegmentTask task) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(count);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < count) {
+                try {
+                    if (failure.get() == null) {
+                        task.run(i);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        int helpers = Math.min(count - 1, executorService.workers());
+        for (int h = 0; h < helpers; h++) {
+            try {
+                executorService.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+
+        // Segments still running use renderers and buffers that are released after this returns
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    /**
+     * Renders one segment of a document.
+     */
+    @FunctionalInterface
+    private interface SegmentTask {
+        void run(int index) throws Exception;
+    }
+
+    /**
+     * Lays out the document loaded into a renderer and writes it as PDF.
+     */
+    private void layoutAndWritePdf(ITextRenderer renderer, OutputStream os, PdfOptions options,
+                                   String templateName) throws Exception {
+        long start = System.nanoTime();
+        renderer.layout();
+        observeStage(RenderObserver.Stage.LAYOUT, templateName, start);
+
+        // Bookmarks are added to the outline just before the document is closed, so the PDF
+        // is written in a single pass
+        if (options.hasBookmarks()) {
+            List<PdfOptions.Bookmark> bookmarks = options.getBookmarks();
+            renderer.setListener(new DefaultPDFCreationListener() {
+                @Override
+                public void onClose(ITextRenderer r) {
+                    long bookmarkStart = System.nanoTime();
+                    addBookmarksToPdf(r.getWriter(), bookmarks);
+                    observeStage(RenderObserver.Stage.BOOKMARKS, templateName, bookmarkStart);
+                }
+            });
+        }
+
+        start = System.nanoTime();
+        renderer.createPDF(os);
+        os.flush();
+        observeStage(RenderObserver.Stage.PDF_WRITE, templateName, start);
+    }
+
+    /**
+     * Adds bookmarks to a PDF document that is being written.
+     * Must be called while the last page is still open, i.e. before the document is closed.
+     *
+     * @param writer the PdfWriter of the document
+     * @param bookmarks the list of bookmarks to add
+     */
+    private static void addBookmarksToPdf(PdfWriter writer, List<PdfOptions.Bookmark> bookmarks) {
+        if (bookmarks == null || bookmarks.isEmpty()) {
+            return;
+        }
+
+        // Create the root outline, pointing at the first page
+        int pageCount = writer.getPageNumber();
+        PdfAction rootAction = PdfAction.gotoLocalPage(1, new PdfDestination(PdfDestination.FIT), writer);
+        PdfOutline root = new PdfOutline(writer.getRootOutline(), rootAction, "Root", false);
+
+        // Add each bookmark
+        for (PdfOptions.Bookmark bookmark : bookmarks) {
+            addBookmarkToPdf(root, bookmark, writer, pageCount);
+        }
+    }
+
+    /**
+     * Recursively adds a bookmark and its children to a PDF document.
+     *
+     * @param parent the parent PdfOutline
+     * @param bookmark the bookmark to add
+     * @param writer the PdfWriter of the document
+     * @param pageCount the number of pages in the document
+     */
+    private static void addBookmarkToPdf(PdfOutline parent, PdfOptions.Bookmark bookmark, PdfWriter writer,
+                                         int pageCount) {
+        // Create destination (default to first page if not specified)
+        String dest = bookmark.getDestination();
+        int pageNum = 1;
+
+        // Try to parse destination as page number
+        if (dest != null && !dest.isEmpty()) {
+            try {
+                pageNum = Integer.parseInt(dest);
+                if (pageNum < 1) pageNum = 1;
+                if (pageNum > pageCount) {
+                    pageNum = pageCount;
+                }
+            } catch (NumberFormatException e) {
+                // Not a page number, use as named destination
+                // For simplicity, we'll default to first page in this example
+                pageNum = 1;
+            }
+        }
+
+        // Create the destination and action
+        PdfDestination destination = new PdfDestination(PdfDestination.FIT);
+        PdfAction action = PdfAction.gotoLocalPage(pageNum, destination, writer);
+
+        // Create the outline entry with the action
+        PdfOutline outline = new PdfOutline(parent, action, bookmark.getTitle());
+
+        // Add children recursively
+        for (PdfOptions.Bookmark child : bookmark.getChildren()) {
+            addBookmarkToPdf(outline, child, writer, pageCount);
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template directly to PDF.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param os the output stream to write the PDF to
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateToPdf(String templateName, Map<String, Object> dataModel,
+                                    OutputStream os, PdfOptions options) throws Exception {
+        PdfResultStore store = pdfResultStore;
+        ContentHash key = store != null ? pdfResultKey(templateName, dataModel, options) : null;
+        if (key == null) {
+            // Not through the output cache, a PDF render should not also cache its HTML
+            String html = renderTemplateToHtml(templateCache, templateName, dataModel);
+            renderHtmlToPdf(html, os, options, templateName);
+            return;
+        }
+
+        if (store.transferTo(key, os)) {
+            return;
+        }
+        PooledByteArrayOutputStream pdf = new PooledByteArrayOutputStream(bufferPool);
+        try {
+            String html = renderTemplateToHtml(templateCache, templateName, dataModel);
+            renderHtmlToPdf(html, pdf, options, templateName);
+            try {
+                store.store(key, pdf.array(), pdf.size());
+            } catch (IOException e) {
+                logger.warn("Failed to store the PDF of template {} in {}", templateName, store.getDirectory(), e);
+            }
+            pdf.writeTo(os);
+        } finally {
+            pdf.release();
+        }
+    }
+
+    /**
+     * Computes the key of a PDF in the result store from the content of the template and the templates it
+     * includes or imports, the locale, the configuration settings and shared variables, the data model,
+     * the PDF options and the files of the font directory. Unlike output cache keys, it does not depend on
+     * the configuration generation, so it stays valid across restarts.
+     *
+     * @return the key, or null if the template's output is not cached or the key cannot be computed
+     */
+    private ContentHash pdfResultKey(String templateName, Map<String, Object> dataModel, PdfOptions options)
+            throws IOException {
+        if (templateName == null || options == null || !outputCache.isEnabled(templateName)) {
+            return null;
+        }
+
+        ConfigSnapshot snapshot = config;
+        ContentHash sharedVariables = RenderOutputCache.hashValue(snapshot.sharedVariables, 0);
+        ContentHash settings = RenderOutputCache.hashValue(snapshot.settings, 0);
+        ContentHash model = RenderOutputCache.hashValue(dataModel != null ? dataModel : Collections.emptyMap(), 0);
+        if (sharedVariables == null || settings == null || model == null) {
+            logger.debug("Data model of template {} cannot be hashed, PDF is not stored", templateName);
+            return null;
+        }
+        ContentHash sources = outputCache.sourceHash(templateName, snapshot.generation,
+                () -> hashTemplateSources(snapshot, templateName));
+        if (sources == null) {
+            return null;
+        }
+
+        ContentHasher hasher = new ContentHasher()
+                .putHash(sources)
+                .putString(snapshot.configuration.getLocale().toString())
+                .putHash(settings)
+                .putHash(sharedVariables)
+                .putHash(model);
+        options.hashInto(hasher);
+        if (options.getFontDir() != null) {
+            fontRegistry.hashFonts(hasher, options.getFontDir());
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Hashes the sources of a template and of everything it includes or imports.
+     *
+     * @return the hash, or null if the template includes a template by a computed name, whose content
+     *         cannot be known before rendering
+     */
+    private ContentHash hashTemplateSources(ConfigSnapshot snapshot, String templateName) throws IOException {
+        // Sources of the template and everything it includes, ordered by name
+        Map<String, String> sources = new TreeMap<>();
+        List<Template> pending = new ArrayList<>();
+        pending.add(getTemplateFromCacheOrLoad(templateCache, templateName));
+        sources.put(templateName, pending.get(0).toString());
+        while (!pending.isEmpty()) {
+            Template template = pending.remove(pending.size() - 1);
+            Set<String> dependencies = new LinkedHashSet<>();
+            if (!TemplateDependencyIndex.findDependencies(template, dependencies)) {
+                logger.debug("Template {} includes a template by a computed name, PDF is not stored", templateName);
+                return null;
+            }
+            for (String dependency : dependencies) {
+                if (!sources.containsKey(dependency)) {
+                    Template included = snapshot.configuration.getTemplate(dependency);
+                    sources.put(dependency, included.toString());
+                    pending.add(included);
+                }
+            }
+        }
+
+        ContentHasher hasher = new ContentHasher().putInt(sources.size());
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            hasher.putString(source.getKey()).putString(source.getValue());
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Stores finished PDFs of templates with output caching enabled in a local directory, and serves
+     * later renders of the same template content, data model and PDF options from there, also after a
+     * restart. Stored PDFs are memory-mapped and written straight to the caller's stream.
+     *
+     * The key covers the templates and the templates they include and the font files of the font
+     * directory, but not the post-processor, fonts loaded through {@code @font-face} or the version of
+     * this library; clear the directory after changing any of them. Templates that include a
+     * template by a computed name are not stored. The directory must not be used by another store.
+     *
+     * @param directory the directory holding the PDFs, or null to stop using a result store
+     * @param maxBytes the maximum total size of the stored PDFs in bytes; least recently used PDFs are
+     *                 deleted beyond it
+     * @throws IOException if the directory cannot be created or read
+     */
+    void setPdfResultStore(Path directory, long maxBytes) throws IOException {
+        if (directory == null) {
+            pdfResultStore = null;
+            logger.info("PDF result store disabled");
+            return;
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("PDF result store max size must be at least 1 byte");
+        }
+
+        pdfResultStore = new PdfResultStore(directory, maxBytes);
+        logger.info("PDF result store at {} limited to {} bytes", directory, maxBytes);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the PDF result store. The weighted size is the total
+     * size of the stored PDFs in bytes.
+     *
+     * @return a snapshot of the result store statistics, or null if no result store is used
+     */
+    public TemplateCacheStats getPdfResultStoreStats() {
+        PdfResultStore store = pdfResultStore;
+        return store != null ? store.stats() : null;
+    }
+
+    /**
+     * Renders a FreeMarker template string directly to PDF.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param os the output stream to write the PDF to
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateStringToPdf(String templateContent, String templateName,
+                                          Map<String, Object> dataModel,
+                                          OutputStream os, PdfOptions options) throws Exception {
+        String html = renderTemplateStringToHtml(templateContent, templateName, dataModel);
+        renderHtmlToPdf(html, os, options, templateName);
+    }
+
+    /**
+     * Renders a FreeMarker template string directly to PDF with default options.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param os the output stream to write the PDF to
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateStringToPdf(String templateContent, String templateName,
+                                          Map<String, Object> dataModel,
+                                          OutputStream os) throws Exception {
+        renderTemplateStringToPdf(templateContent, templateName, dataModel, os, new PdfOptions());
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF file.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param outputPath the path where the PDF file will be saved
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateToPdfFile(String templateName, Map<String, Object> dataModel,
+                                        String outputPath, PdfOptions options) throws Exception {
+        writePdfFile(outputPath, os -> renderTemplateToPdf(templateName, dataModel, os, options));
+    }
+
+    /**
+     * Writes a PDF file atomically. The PDF is written to a temporary file in the target directory through
+     * a buffered {@link java.nio.channels.FileChannel}, forced to storage as the file sync policy requires,
+     * and renamed to the target once complete. If rendering fails, the temporary file is deleted and an
+     * existing target file is left as it was.
+     *
+     * @param outputPath the path where the PDF file will be saved
+     * @param output writes the PDF
+     * @throws Exception if an error occurs during rendering or the file cannot be written
+     */
+    private void writePdfFile(String outputPath, PdfOutput output) throws Exception {
+        AtomicFileOutputStream os = new AtomicFileOutputStream(Paths.get(outputPath), fileSyncPolicy);
+        try {
+            output.writeTo(os);
+            os.commit();
+        } finally {
+            os.discard();
+        }
+        logger.info("PDF created successfully at: {}", outputPath);
+    }
+
+    /**
+     * Writes a PDF to a stream.
+     */
+    @FunctionalInterface
+    private interface PdfOutput {
+        void writeTo(OutputStream os) throws Exception;
+    }
+
+    /**
+     * Sets how far PDF files are forced to storage before they are renamed into place. Files are always
+     * written to a temporary file first, so a crash of the process never leaves a partial PDF; forcing
+     * them to storage also protects against a crash of the machine, at the cost of throughput.
+     *
+     * @param policy the sync policy; {@link FileSyncPolicy#NONE} by default
+     */
+    void setFileSyncPolicy(FileSyncPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("File sync policy cannot be null");
+        }
+        fileSyncPolicy = policy;
+        logger.info("File sync policy set to {}", policy);
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF file with default options.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param outputPath the path where the PDF file will be saved
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateToPdfFile(String templateName, Map<String, Object> dataModel,
+                                        String outputPath) throws Exception {
+        renderTemplateToPdfFile(templateName, dataModel, outputPath, new PdfOptions());
+    }
+
+    /**
+     * Renders a FreeMarker template string to a PDF file.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param outputPath the path where the PDF file will be saved
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateStringToPdfFile(String templateContent, String templateName,
+                                              Map<String, Object> dataModel,
+                                              String outputPath, PdfOptions options) throws Exception {
+        writePdfFile(outputPath, os -> renderTemplateStringToPdf(templateContent, templateName, dataModel, os, options));
+    }
+
+    /**
+     * Renders a FreeMarker template string to a PDF file with default options.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param outputPath the path where the PDF file will be saved
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderTemplateStringToPdfFile(String templateContent, String templateName,
+                                              Map<String, Object> dataModel,
+                                              String outputPath) throws Exception {
+        renderTemplateStringToPdfFile(templateContent, templateName, dataModel, outputPath, new PdfOptions());
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF and returns it as a byte array.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateToPdfBytes(String templateName, Map<String, Object> dataModel,
+                                           PdfOptions options) throws Exception {
+        return renderTemplateToPdfBuffer(templateName, dataModel, options, TemplateRenderer::toByteArray);
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF in a pooled buffer and passes it to a handler, which avoids
+     * copying the document into a new array. The buffer is only valid while the handler runs.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @param handler receives a read-only view of the PDF
+     * @param <T> the type of the handler's result
+     * @return the result of the handler
+     * @throws Exception if an error occurs during rendering or in the handler
+     */
+    public <T> T renderTemplateToPdfBuffer(String templateName, Map<String, Object> dataModel,
+                                           PdfOptions options, PdfBufferHandler<T> handler) throws Exception {
+        RenderOutputCache.Key key = outputCacheKey(templateName, dataModel, options);
+        if (key != null) {
+            Object cached = outputCache.get(key);
+            if (cached != null) {
+                return handler.handle(ByteBuffer.wrap((byte[]) cached).asReadOnlyBuffer());
+            }
+        }
+
+        long epoch = outputCache.epoch();
+        PooledByteArrayOutputStream pdf = new PooledByteArrayOutputStream(bufferPool);
+        try {
+            renderTemplateToPdf(templateName, dataModel, pdf, options);
+            if (key != null) {
+                outputCache.put(key, pdf.toByteArray(), epoch);
+            }
+            return handler.handle(pdf.view());
+        } finally {
+            pdf.release();
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF and returns it as a byte array with default options.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateToPdfBytes(String templateName, Map<String, Object> dataModel) throws Exception {
+        return renderTemplateToPdfBytes(templateName, dataModel, new PdfOptions());
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF and returns it as a byte array asynchronously.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @return a CompletableFuture that will complete with the PDF data as a byte array
+     */
+    public CompletableFuture<byte[]> renderTemplateToPdfBytesAsync(String templateName, Map<String, Object> dataModel,
+                                                                   PdfOptions options) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return renderTemplateToPdfBytes(templateName, dataModel, options);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Renders a FreeMarker template to a PDF and returns it as a byte array asynchronously with default options.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @return a CompletableFuture that will complete with the PDF data as a byte array
+     */
+    public CompletableFuture<byte[]> renderTemplateToPdfBytesAsync(String templateName, Map<String, Object> dataModel) {
+        return renderTemplateToPdfBytesAsync(templateName, dataModel, new PdfOptions());
+    }
+
+    /**
+     * Renders a FreeMarker template string to a PDF and returns it as a byte array.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateStringToPdfBytes(String templateContent, String templateName,
+                                                 Map<String, Object> dataModel,
+                                                 PdfOptions options) throws Exception {
+        PooledByteArrayOutputStream pdf = new PooledByteArrayOutputStream(bufferPool);
+        try {
+            renderTemplateStringToPdf(templateContent, templateName, dataModel, pdf, options);
+            return pdf.toByteArray();
+        } finally {
+            pdf.release();
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template string to a PDF and returns it as a byte array with default options.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateStringToPdfBytes(String templateContent, String templateName,
+                                                 Map<String, Object> dataModel) throws Exception {
+        return renderTemplateStringToPdfBytes(templateContent, templateName, dataModel, new PdfOptions());
+    }
+
+    /**
+     * Renders several parts into one PDF, such as a cover letter, a statement and the terms and conditions.
+     *
+     * The parts are written one after the other through a single PDF writer, so fonts used by several parts
+     * are embedded once and the outline entries of all parts end up in one outline, followed by the
+     * bookmarks of the options; no part is written as a PDF of its own and read back. While a part is laid
+     * out and written, the following parts are rendered to HTML and parsed in parallel on the async executor.
+     * Each part starts on a new page and its page counters start at 1. The page setup, fonts and base URI
+     * of the options apply to every part.
+     *
+     * @param parts the parts, in document order
+     * @param os the output stream to write the PDF to
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderPartsToPdf(List<PdfPart> parts, OutputStream os, PdfOptions options) throws Exception {
+        if (parts == null || parts.isEmpty()) {
+            throw new IllegalArgumentException("At least one part is required");
+        }
+
+        List<FutureTask<Document>> documents = new ArrayList<>(parts.size());
+        for (PdfPart part : parts) {
+            documents.add(new FutureTask<>(() -> loadPartDocument(part, options)));
+        }
+        // Helpers run the parts not started yet; the writing thread runs a part itself if no helper has
+        // started it, so it never waits for a queued task
+        Runnable prefetch = () -> documents.forEach(FutureTask::run);
+        int helpers = Math.min(parts.size() - 1, executorService.workers());
+        for (int h = 0; h < helpers; h++) {
+            try {
+                executorService.execute(prefetch);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+
+        ITextRenderer renderer = acquirePdfRenderer(options, null);
+        // With a layout limit, each part is written to memory under the permit and copied out after it
+        PooledByteArrayOutputStream buffer = layoutLimiter != null ? new PooledByteArrayOutputStream(bufferPool) : null;
+        boolean completed = false;
+        try {
+            CountingOutputStream counter = renderObserver != RenderObserver.NOOP ? new CountingOutputStream(os) : null;
+            OutputStream target = counter != null ? counter : os;
+            OutputStream out = buffer != null ? buffer : target;
+            for (int i = 0; i < parts.size(); i++) {
+                String templateName = parts.get(i).getTemplateName();
+                renderer.setDocument(awaitPartDocument(documents.get(i)), options.getBaseUri());
+                Semaphore permit = acquireLayoutPermit();
+                try {
+                    long start = System.nanoTime();
+                    renderer.layout();
+                    observeStage(RenderObserver.Stage.LAYOUT, templateName, start);
+
+                    start = System.nanoTime();
+                    if (i == 0) {
+                        if (options.hasBookmarks()) {
+                            List<PdfOptions.Bookmark> bookmarks = options.getBookmarks();
+                            renderer.setListener(new DefaultPDFCreationListener() {
+                                @Override
+                                public void onClose(ITextRenderer r) {
+                                    addBookmarksToPdf(r.getWriter(), bookmarks);
+                                }
+                            });
+                        }
+                        renderer.createPDF(out, false);
+                    } else {
+                        renderer.writeNextDocument();
+                    }
+                    observeStage(RenderObserver.Stage.PDF_WRITE, templateName, start);
+                } finally {
+                    if (permit != null) {
+                        permit.release();
+                    }
+                }
+                if (buffer != null) {
+                    buffer.writeTo(target);
+                    buffer.reset();
+                }
+            }
+
+            long start = System.nanoTime();
+            renderer.finishPDF();
+            if (buffer != null) {
+                buffer.writeTo(target);
+            }
+            os.flush();
+            observeStage(RenderObserver.Stage.PDF_MERGE, null, start);
+            if (counter != null) {
+                observeOutput(RenderObserver.Output.PDF, null, counter.getCount());
+            }
+            completed = true;
+        } finally {
+            // Parts not needed anymore after a failure are skipped by the helpers
+            for (FutureTask<Document> document : documents) {
+                document.cancel(false);
+            }
+            if (buffer != null) {
+                buffer.release();
+            }
+            if (completed) {
+                releasePdfRenderer(options, renderer);
+            }
+        }
+    }
+
+    /**
+     * Renders several parts into one PDF and returns it as a byte array.
+     *
+     * @param parts the parts, in document order
+     * @param options custom PDF rendering options
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     * @see #renderPartsToPdf(List, OutputStream, PdfOptions)
+     */
+    public byte[] renderPartsToPdfBytes(List<PdfPart> parts, PdfOptions options) throws Exception {
+        PooledByteArrayOutputStream pdf = new PooledByteArrayOutputStream(bufferPool);
+        try {
+            renderPartsToPdf(parts, pdf, options);
+            return pdf.toByteArray();
+        } finally {
+            pdf.release();
+        }
+    }
+
+    /**
+     * Renders several parts into one PDF file.
+     *
+     * @param parts the parts, in document order
+     * @param outputPath the path where the PDF file will be saved
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     * @see #renderPartsToPdf(List, OutputStream, PdfOptions)
+     */
+    public void renderPartsToPdfFile(List<PdfPart> parts, String outputPath, PdfOptions options) throws Exception {
+        writePdfFile(outputPath, os -> renderPartsToPdf(parts, os, options));
+    }
+
+    /**
+     * Renders a part to HTML and parses it into a document for the PDF renderer.
+     */
+    private Document loadPartDocument(PdfPart part, PdfOptions options) throws Exception {
+        String templateName = part.getTemplateName();
+        String html = templateName != null
+                ? renderTemplateToHtml(templateCache, templateName, part.getDataModel())
+                : part.getHtml();
+        String xhtml = prepareXhtml(html, options, templateName);
+
+        long start = System.nanoTime();
+        Document document = XMLResource.load(new StringReader(xhtml)).getDocument();
+        observeStage(RenderObserver.Stage.DOCUMENT_LOAD, templateName, start);
+        return document;
+    }
+
+    /**
+     * Loads a part in the calling thread unless a helper already started it, and returns its document.
+     */
+    private static Document awaitPartDocument(FutureTask<Document> document) throws Exception {
+        document.run();
+        try {
+            return document.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template string to a PDF and returns it as a byte array asynchronously.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param options custom PDF rendering options
+     * @return a CompletableFuture that will complete with the PDF data as a byte array
+     */
+    public CompletableFuture<byte[]> renderTemplateStringToPdfBytesAsync(String templateContent, String templateName,
+                                                                         Map<String, Object> dataModel,
+                                                                         PdfOptions options) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return renderTemplateStringToPdfBytes(templateContent, templateName, dataModel, options);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Renders a FreeMarker template string to a PDF and returns it as a byte array asynchronously with default options.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @return a CompletableFuture that will complete with the PDF data as a byte array
+     */
+    public CompletableFuture<byte[]> renderTemplateStringToPdfBytesAsync(String templateContent, String templateName,
+                                                                         Map<String, Object> dataModel) {
+        return renderTemplateStringToPdfBytesAsync(templateContent, templateName, dataModel, new PdfOptions());
+    }
+
+    /**
+     * Renders one template to PDF for many data models, using several threads.
+     *
+     * The template is resolved once for the whole batch, and every worker thread keeps its PDF renderer,
+     * with its fonts, for all the items it renders. Data models are taken from the iterator one at a time
+     * as workers become free, so the input can be larger than memory. An item that fails is reported to
+     * the sink and in the result, and the batch continues with the next item.
+     *
+     * This method returns when all items are rendered.
+     *
+     * @param templateName the name of the template file
+     * @param dataModels the data models to render; accessed by one thread at a time
+     * @param sink where the documents go
+     * @param options custom PDF rendering options, shared by all items
+     * @param parallelism the number of documents rendered concurrently
+     * @return the number of successful and failed items, and the errors of failed items
+     * @throws IOException if the template cannot be loaded
+     * @throws InterruptedException if interrupted while waiting for the batch; rendering is stopped
+     * @throws CompletionException if the iterator fails, wrapping its exception; rendering is stopped
+     */
+    public BatchRenderResult renderTemplateToPdfBatch(String templateName,
+                                                      Iterator<? extends Map<String, Object>> dataModels,
+                                                      BatchRenderSink sink, PdfOptions options,
+                                                      int parallelism) throws IOException, InterruptedException {
+        if (templateName == null || templateName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template name cannot be null or empty");
+        }
+        if (dataModels == null || sink == null) {
+            throw new IllegalArgumentException("Data models and sink cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        PdfOptions pdfOptions = options != null ? options : new PdfOptions();
+
+        Template tpl;
+        try {
+            tpl = getTemplateFromCacheOrLoad(templateCache, templateName);
+        } catch (IOException e) {
+            logger.error("Failed to load template: {}", templateName, e);
+            throw new IOException("Failed to load template: " + templateName, e);
+        }
+
+        long start = System.nanoTime();
+        PdfBatch batch = new PdfBatch(templateName, tpl, dataModels, sink, pdfOptions);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "template-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                running.add(workers.submit(batch::work));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            batch.stop();
+            workers.shutdownNow();
+            throw e;
+        } catch (ExecutionException e) {
+            // Workers handle item failures themselves; anything else is a bug
+            throw new IllegalStateException("Batch worker failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+
+        if (batch.inputError != null) {
+            throw new CompletionException("Reading batch input failed", batch.inputError);
+        }
+
+        BatchRenderResult result = batch.result(System.nanoTime() - start);
+        logger.info("Rendered batch of {}: {} succeeded, {} failed in {} ms", templateName,
+                result.getSucceededCount(), result.getFailedCount(), result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * Renders one template to PDF for a stream of data models, using several threads.
+     *
+     * @param templateName the name of the template file
+     * @param dataModels the data models to render; closed when the batch completes
+     * @param sink where the documents go
+     * @param options custom PDF rendering options, shared by all items
+     * @param parallelism the number of documents rendered concurrently
+     * @return the number of successful and failed items, and the errors of failed items
+     * @throws IOException if the template cannot be loaded
+     * @throws InterruptedException if interrupted while waiting for the batch; rendering is stopped
+     * @see #renderTemplateToPdfBatch(String, Iterator, BatchRenderSink, PdfOptions, int)
+     */
+    public BatchRenderResult renderTemplateToPdfBatch(String templateName,
+                                                      Stream<? extends Map<String, Object>> dataModels,
+                                                      BatchRenderSink sink, PdfOptions options,
+                                                      int parallelism) throws IOException, InterruptedException {
+        if (dataModels == null) {
+            throw new IllegalArgumentException("Data models cannot be null");
+        }
+        try (Stream<? extends Map<String, Object>> models = dataModels) {
+            return renderTemplateToPdfBatch(templateName, models.iterator(), sink, options, parallelism);
+        }
+    }
+
+    /**
+     * Shared state of a running batch render. Workers take items from the input until it is exhausted,
+     * each reusing one renderer for all its items.
+     */
+    private final class PdfBatch {
+        private final String templateName;
+        private final Template template;
+        private final Iterator<? extends Map<String, Object>> input;
+        private final BatchRenderSink sink;
+        private final PdfOptions options;
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final Map<Long, Exception> failures = new TreeMap<>();
+        private long nextIndex;
+        private volatile boolean stopped;
+        private volatile RuntimeException inputError;
+
+        PdfBatch(String templateName, Template template, Iterator<? extends Map<String, Object>> input,
+                 BatchRenderSink sink, PdfOptions options) {
+            this.templateName = templateName;
+            this.template = template;
+            this.input = input;
+            this.sink = sink;
+            this.options = options;
+        }
+
+        void work() {
+            ITextRenderer renderer = null;
+            while (!stopped) {
+                long index;
+                Map<String, Object> dataModel;
+                synchronized (input) {
+                    try {
+                        if (stopped || !input.hasNext()) {
+                            break;
+                        }
+                        dataModel = input.next();
+                    } catch (RuntimeException e) {
+                        inputError = e;
+                        stopped = true;
+                        break;
+                    }
+                    index = nextIndex++;
+                }
+                if (dataModel == null) {
+                    dataModel = new HashMap<>();
+                }
+
+                // Only the fonts are reused, a renderer keeps the metadata of every document it writes
+                renderer = renderer == null
+                        ? acquirePdfRenderer(options, templateName)
+                        : createPdfRenderer(options.getFontDir(), options.getBaseUri(), renderer.getFontResolver());
+                try {
+                    try (OutputStream os = sink.open(index, dataModel)) {
+                        String html = processTemplate(template, dataModel, templateName);
+                        writePdf(renderer, prepareXhtml(html, options, templateName), os, options, templateName);
+                    }
+                    sink.completed(index, dataModel);
+                    succeeded.increment();
+                } catch (Exception e) {
+                    // The renderer's state is unknown after a failure
+                    renderer = null;
+                    recordFailure(index, dataModel, e);
+                }
+            }
+
+            if (renderer != null) {
+                releasePdfRenderer(options, renderer);
+            }
+        }
+
+        private void recordFailure(long index, Map<String, Object> dataModel, Exception error) {
+            failed.increment();
+            logger.warn("Batch item {} of {} failed", index, templateName, error);
+            synchronized (failures) {
+                if (failures.size() < BatchRenderResult.MAX_REPORTED_FAILURES) {
+                    failures.put(index, error);
+                }
+            }
+            try {
+                sink.failed(index, dataModel, error);
+            } catch (RuntimeException e) {
+                logger.warn("Batch sink failed to handle failure of item {}", index, e);
+            }
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        BatchRenderResult result(long elapsedNanos) {
+            synchronized (failures) {
+                return new BatchRenderResult(succeeded.sum(), failed.sum(), elapsedNanos, new TreeMap<>(failures));
+            }
+        }
+    }
+
+    private static String ensureXhtmlDocument(String html) {
+        String trimmed = html.trim().toLowerCase();
+        if (!trimmed.startsWith("<!doctype")) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            sb.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \n");
+            sb.append(" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n");
+            sb.append("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n");
+            sb.append("<head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\" />");
+            sb.append("</head><body>");
+            sb.append(html);
+            sb.append("</body></html>");
+            return sb.toString();
+        }
+        return html;
+    }
+
+    private static String injectPageCss(String html, PdfOptions opts) {
+        StringBuilder css = new StringBuilder();
+        css.append("<style> @page { size: ")
+                .append(opts.getPageSize().name().toLowerCase())
+                .append("; margin: ")
+                .append(opts.getMarginTop()).append("pt ")
+                .append(opts.getMarginRight()).append("pt ")
+                .append(opts.getMarginBottom()).append("pt ")
+                .append(opts.getMarginLeft()).append("pt; }");
+        if (opts.getDefaultFont() != null) {
+            css.append(" body { font-family: '")
+                    .append(opts.getDefaultFont())
+                    .append("'; }");
+        }
+        css.append(" </style>");
+
+        int idx = html.indexOf("</head>");
+        if (idx > -1) {
+            return html.substring(0, idx) + css + html.substring(idx);
+        }
+        return css + html;
+    }
+
+    private static void configureFonts(ITextRenderer renderer, String fontDir) {
+        if (fontDir != null) {
+            try {
+                // Fonts are parsed once per file and shared by all renderers
+                fontRegistry.registerFonts(renderer.getFontResolver(), fontDir);
+            } catch (Exception e) {
+                logger.warn("Error loading fonts from {}", fontDir, e);
+            }
+        }
+    }
+
+    /**
+     * Renders HTML content to an image.
+     *
+     * @param htmlContent the HTML content to render
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param imageType the type of image to create (e.g., "png", "jpg")
+     * @return the rendered image as a byte array
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderHtmlToImage(String htmlContent, int width, int height, String imageType) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        renderHtmlToImage(htmlContent, width, height, imageType, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Renders HTML content to an image and writes the encoded image to an output stream.
+     * The document is parsed in memory and handed to the renderer as a DOM, so no temporary
+     * files are involved. The stream is flushed but not closed.
+     *
+     * @param htmlContent the HTML content to render
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param imageType the type of image to create (e.g., "png", "jpg")
+     * @param os the output stream to write the encoded image to
+     * @throws Exception if an error occurs during rendering
+     * @throws IllegalArgumentException if no image writer is available for the image type
+     */
+    public void renderHtmlToImage(String htmlContent, int width, int height, String imageType,
+                                  OutputStream os) throws Exception {
+        renderHtmlToImage(htmlContent, width, height, imageType, os, null);
+    }
+
+    /**
+     * Renders HTML content to an image, reporting render stages for the given template.
+     */
+    private void renderHtmlToImage(String htmlContent, int width, int height, String imageType,
+                                   OutputStream os, String templateName) throws Exception {
+        if (htmlContent == null || htmlContent.isBlank()) {
+            throw new IllegalArgumentException("HTML content is empty");
+        }
+        if (os == null) {
+            throw new IllegalArgumentException("Output stream cannot be null");
+        }
+
+        // Ensure well-formed XHTML
+        long start = System.nanoTime();
+        String xhtml = ensureXhtmlDocument(htmlContent);
+        observeStage(RenderObserver.Stage.XHTML_PREPARE, templateName, start);
+
+        start = System.nanoTime();
+        Document document = XMLResource.load(new StringReader(xhtml)).getDocument();
+        observeStage(RenderObserver.Stage.DOCUMENT_LOAD, templateName, start);
+
+        // Use Flying Saucer to render the document to an image
+        Java2DRenderer renderer = new Java2DRenderer(document, width, height);
+        BufferedImage image;
+        Semaphore permit = acquireLayoutPermit();
+        try {
+            start = System.nanoTime();
+            image = renderer.getImage();
+            observeStage(RenderObserver.Stage.IMAGE_RENDER, templateName, start);
+        } finally {
+            if (permit != null) {
+                permit.release();
+            }
+        }
+
+        start = System.nanoTime();
+        CountingOutputStream counter = renderObserver != RenderObserver.NOOP ? new CountingOutputStream(os) : null;
+        if (!ImageIO.write(image, imageType, counter != null ? counter : os)) {
+            throw new IllegalArgumentException("Unsupported image type: " + imageType);
+        }
+        os.flush();
+        observeStage(RenderObserver.Stage.IMAGE_ENCODE, templateName, start);
+        if (counter != null) {
+            observeOutput(RenderObserver.Output.IMAGE, templateName, counter.getCount());
+        }
+    }
+
+    /**
+     * Renders a FreeMarker template to an image.
+     *
+     * @param templateName the name of the template file
+     * @param dataModel the data model to use for rendering
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param imageType the type of image to create (e.g., "png", "jpg")
+     * @return the rendered image as a byte array
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateToImage(String templateName, Map<String, Object> dataModel,
+                                        int width, int height, String imageType) throws Exception {
+        String html = renderTemplateToHtml(templateName, dataModel);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        renderHtmlToImage(html, width, height, imageType, baos, templateName);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Renders a FreeMarker template string to an image.
+     *
+     * @param templateContent the template content as a string
+     * @param templateName a name for the template (used for error reporting)
+     * @param dataModel the data model to use for rendering
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param imageType the type of image to create (e.g., "png", "jpg")
+     * @return the rendered image as a byte array
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderTemplateStringToImage(String templateContent, String templateName,
+                                              Map<String, Object> dataModel,
+                                              int width, int height, String imageType) throws Exception {
+        String html = renderTemplateStringToHtml(templateContent, templateName, dataModel);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        renderHtmlToImage(html, width, height, imageType, baos, templateName);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Renders HTML content to a PDF file.
+     *
+     * @param htmlContent the HTML content to render
+     * @param outputPath the path where the PDF file will be saved
+     * @param options custom PDF rendering options
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderHtmlToPdfFile(String htmlContent, String outputPath, PdfOptions options) throws Exception {
+        writePdfFile(outputPath, os -> renderHtmlToPdf(htmlContent, os, options));
+    }
+
+    /**
+     * Renders HTML content to a PDF file with default options.
+     *
+     * @param htmlContent the HTML content to render
+     * @param outputPath the path where the PDF file will be saved
+     * @throws Exception if an error occurs during rendering
+     */
+    public void renderHtmlToPdfFile(String htmlContent, String outputPath) throws Exception {
+        renderHtmlToPdfFile(htmlContent, outputPath, new PdfOptions());
+    }
+
+    /**
+     * Renders HTML content to a PDF and returns it as a byte array.
+     *
+     * @param htmlContent the HTML content to render
+     * @param options custom PDF rendering options
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderHtmlToPdfBytes(String htmlContent, PdfOptions options) throws Exception {
+        return renderHtmlToPdfBuffer(htmlContent, options, TemplateRenderer::toByteArray);
+    }
+
+    /**
+     * Renders HTML content to a PDF in a pooled buffer and passes it to a handler, which avoids copying
+     * the document into a new array. The buffer is only valid while the handler runs.
+     *
+     * @param htmlContent the HTML content to render
+     * @param options custom PDF rendering options
+     * @param handler receives a read-only view of the PDF
+     * @param <T> the type of the handler's result
+     * @return the result of the handler
+     * @throws Exception if an error occurs during rendering or in the handler
+     */
+    public <T> T renderHtmlToPdfBuffer(String htmlContent, PdfOptions options,
+                                       PdfBufferHandler<T> handler) throws Exception {
+        PooledByteArrayOutputStream pdf = new PooledByteArrayOutputStream(bufferPool);
+        try {
+            renderHtmlToPdf(htmlContent, pdf, options);
+            return handler.handle(pdf.view());
+        } finally {
+            pdf.release();
+        }
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Renders HTML content to a PDF and returns it as a byte array with default options.
+     *
+     * @param htmlContent the HTML content to render
+     * @return byte array containing the PDF data
+     * @throws Exception if an error occurs during rendering
+     */
+    public byte[] renderHtmlToPdfBytes(String htmlContent) throws Exception {
+        return renderHtmlToPdfBytes(htmlContent, new PdfOptions());
+    }
+
+    /**
+     * Renders HTML content to a PDF and returns it as a byte array asynchronously.
+     *
+     * @param htmlContent the HTML content to render
+     * @param options custom PDF rendering options
+     * @return a CompletableFuture that will complete with the PDF data as a byte array
+     */
+    public CompletableFuture<byte[]> renderHtmlToPdfBytesAsync(String htmlContent, PdfOptions options) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return renderHtmlToPdfBytes(htmlContent, options);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Renders HTML content to a PDF and returns it as a byte array asynchronously with default options.
+     *
+     * @param htmlContent the HTML content to render
+     * @return a CompletableFuture that will complete with the PDF data as a byte array
+     */
+    public CompletableFuture<byte[]> renderHtmlToPdfBytesAsync(String htmlContent) {
+        return renderHtmlToPdfBytesAsync(htmlContent, new PdfOptions());
+    }
+
+    /**
+     * Validates a FreeMarker template for syntax errors.
+     *
+     * @param templateContent the template content to validate
+     * @return a list of validation errors, or an empty list if the template is valid
+     */
+    public List<String> validateTemplate(String templateContent) {
+        List<String> errors = new ArrayList<>();
+
+        if (templateContent == null || templateContent.trim().isEmpty()) {
+            errors.add("Template content is empty");
+            return errors;
+        }
+
+        try {
+            // Try to create a template from the content
+            new Template("validation-template", new StringReader(templateContent), config.configuration);
+        } catch (Exception e) {
+            // Add the error message to the list
+            errors.add(e.getMessage());
+        }
+
+        return errors;
+    }
+
+    /**
+     * Validates a FreeMarker template file for syntax errors.
+     *
+     * @param templateName the name of the template file to validate
+     * @return a list of validation errors, or an empty list if the template is valid
+     */
+    public List<String> validateTemplateFile(String templateName) {
+        List<String> errors = new ArrayList<>();
+
+        if (templateName == null || templateName.trim().isEmpty()) {
+            errors.add("Template name is empty");
+            return errors;
+        }
+
+        try {
+            // Try to load the template
+            config.configuration.getTemplate(templateName);
+        } catch (Exception e) {
+            // Add the error message to the list
+            errors.add(e.getMessage());
+        }
+
+        return errors;
+    }
+
+    /**
+     * Builder for {@link TemplateRenderer}. Each setting corresponds to a setter of
+     * {@link TemplateRenderUtil}, which configures the default renderer; settings that are not given
+     * keep the defaults of a new renderer.
+     */
+    public static final class Builder {
+        private final List<TemplateLoader> templateLoaders = new ArrayList<>();
+        private String templateDirectory;
+        private boolean classpathAndFileLoaders;
+        private String classpathPrefix;
+        private String fileSystemDirectory;
+        private Locale locale;
+        private final Properties configurationProperties = new Properties();
+        private final Map<String, Object> sharedVariables = new LinkedHashMap<>();
+        private BiFunction<String, Map<String, Object>, String> templatePreProcessor;
+        private BiFunction<String, Map<String, Object>, String> templatePostProcessor;
+        private boolean templateCaching = true;
+        private int templateCacheMaxSize = -1;
+        private long templateCacheMaxWeight = -1;
+        private int inlineTemplateCacheMaxSize = -1;
+        private TemplateCacheQuota namespaceQuota;
+        private final Set<String> outputCachedTemplates = new LinkedHashSet<>();
+        private long outputCacheMaxBytes = -1;
+        private Duration outputCacheTtl;
+        private Path pdfResultStoreDirectory;
+        private FileSyncPolicy fileSyncPolicy;
+        private long pdfResultStoreMaxBytes;
+        private boolean templateWatching;
+        private int asyncThreadPoolSize = -1;
+        private int maxConcurrentLayouts = -1;
+        private int asyncQueueCapacity = -1;
+        private AsyncRejectionPolicy asyncRejectionPolicy;
+        private long asyncAwaitTimeout = Long.MAX_VALUE;
+        private TimeUnit asyncAwaitTimeoutUnit = TimeUnit.NANOSECONDS;
+        private int pdfRendererPoolSize = -1;
+        private RenderObserver renderObserver;
+
+        Builder() {
+        }
+
+        /**
+         * Loads templates only from a directory, instead of the default class path and file system locations.
+         *
+         * @param templateDirectory the directory containing template files
+         * @return this builder
+         */
+        public Builder templateDirectory(String templateDirectory) {
+            this.templateDirectory = templateDirectory;
+            return this;
+        }
+
+        /**
+         * Loads templates from the class path and then from a directory, instead of the default locations.
+         *
+         * @param classpathPrefix prefix for class path resources, or null for {@code templates}
+         * @param fileSystemDirectory directory for file system resources, or null for {@code templates}
+         * @return this builder
+         */
+        public Builder classpathAndFileTemplateLoaders(String classpathPrefix, String fileSystemDirectory) {
+            this.classpathAndFileLoaders = true;
+            this.classpathPrefix = classpathPrefix;
+            this.fileSystemDirectory = fileSystemDirectory;
+            return this;
+        }
+
+        /**
+         * Adds a template loader after the default loaders. Ignored if the template locations are replaced
+         * with {@link #templateDirectory(String)} or {@link #classpathAndFileTemplateLoaders(String, String)}.
+         *
+         * @param loader the template loader to add
+         * @return this builder
+         */
+        public Builder templateLoader(TemplateLoader loader) {
+            if (loader == null) {
+                throw new IllegalArgumentException("Template loader cannot be null");
+            }
+            templateLoaders.add(loader);
+            return this;
+        }
+
+        /**
+         * Sets the locale templates are rendered in, such as for number and date formatting.
+         *
+         * @param locale the locale
+         * @return this builder
+         */
+        public Builder locale(Locale locale) {
+            this.locale = locale;
+            return this;
+        }
+
+        /**
+         * Adds FreeMarker configuration settings.
+         *
+         * @param properties the settings to add
+         * @return this builder
+         */
+        public Builder configurationProperties(Properties properties) {
+            if (properties == null) {
+                throw new IllegalArgumentException("Properties cannot be null");
+            }
+            configurationProperties.putAll(properties);
+            return this;
+        }
+
+        /**
+         * Adds a variable available to all templates.
+         *
+         * @param name the name of the variable
+         * @param value the value of the variable
+         * @return this builder
+         */
+        public Builder sharedVariable(String name, Object value) {
+            if (name == null || name.trim().isEmpty()) {
+                throw new IllegalArgumentException("Variable name cannot be null or empty");
+            }
+            sharedVariables.put(name, value);
+            return this;
+        }
+
+        /**
+         * Sets a function applied to template strings before they are parsed.
+         *
+         * @param preprocessor the preprocessor function
+         * @return this builder
+         */
+        public Builder templatePreProcessor(BiFunction<String, Map<String, Object>, String> preprocessor) {
+            this.templatePreProcessor = preprocessor;
+            return this;
+        }
+
+        /**
+         * Sets a function applied to rendered output.
+         *
+         * @param postprocessor the postprocessor function
+         * @return this builder
+         */
+        public Builder templatePostProcessor(BiFunction<String, Map<String, Object>, String> postprocessor) {
+            this.templatePostProcessor = postprocessor;
+            return this;
+        }
+
+        /**
+         * Enables or disables template caching; enabled by default.
+         *
+         * @param enabled true to cache parsed templates
+         * @return this builder
+         */
+        public Builder templateCaching(boolean enabled) {
+            this.templateCaching = enabled;
+            return this;
+        }
+
+        /**
+         * Bounds the template cache by number of templates.
+         *
+         * @param maxSize the maximum number of cached templates
+         * @return this builder
+         */
+        public Builder templateCacheMaxSize(int maxSize) {
+            this.templateCacheMaxSize = maxSize;
+            this.templateCacheMaxWeight = -1;
+            return this;
+        }
+
+        /**
+         * Bounds the template cache by the total length of the cached template sources.
+         *
+         * @param maxWeight the maximum total template length, in characters
+         * @return this builder
+         */
+        public Builder templateCacheMaxWeight(long maxWeight) {
+            this.templateCacheMaxWeight = maxWeight;
+            this.templateCacheMaxSize = -1;
+            return this;
+        }
+
+        /**
+         * Bounds the cache of compiled template strings.
+         *
+         * @param maxSize the maximum number of cached template strings
+         * @return this builder
+         */
+        public Builder inlineTemplateCacheMaxSize(int maxSize) {
+            this.inlineTemplateCacheMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the cache quota of namespaces created with {@link TemplateRenderer#namespace(String)}.
+         *
+         * @param quota the bounds of each namespace's caches
+         * @return this builder
+         */
+        public Builder namespaceQuota(TemplateCacheQuota quota) {
+            this.namespaceQuota = quota;
+            return this;
+        }
+
+        /**
+         * Caches the rendered output of the given templates, which must render the same document whenever
+         * they are given the same data model.
+         *
+         * @param templateNames the names of the templates
+         * @return this builder
+         */
+        public Builder outputCaching(String... templateNames) {
+            outputCachedTemplates.addAll(Arrays.asList(templateNames));
+            return this;
+        }
+
+        /**
+         * Bounds the rendered output cache.
+         *
+         * @param maxBytes the maximum total size of the cached output in bytes
+         * @param ttl how long rendered output is reused after it was cached
+         * @return this builder
+         */
+        public Builder outputCacheLimits(long maxBytes, Duration ttl) {
+            this.outputCacheMaxBytes = maxBytes;
+            this.outputCacheTtl = ttl;
+            return this;
+        }
+
+        /**
+         * Stores finished PDFs of templates with output caching enabled in a local directory.
+         *
+         * @param directory the directory holding the PDFs
+         * @param maxBytes the maximum total size of the stored PDFs in bytes
+         * @return this builder
+         */
+        public Builder pdfResultStore(Path directory, long maxBytes) {
+            this.pdfResultStoreDirectory = directory;
+            this.pdfResultStoreMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets how far PDF files are forced to storage before they are renamed into place.
+         *
+         * @param policy the sync policy
+         * @return this builder
+         */
+        public Builder fileSyncPolicy(FileSyncPolicy policy) {
+            this.fileSyncPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Watches the template directories and reloads templates whose files change.
+         *
+         * @param enabled true to watch template directories
+         * @return this builder
+         */
+        public Builder templateWatching(boolean enabled) {
+            this.templateWatching = enabled;
+            return this;
+        }
+
+        /**
+         * Runs asynchronous renders on a fixed thread pool of the given size.
+         *
+         * @param threadCount the number of threads in the pool
+         * @return this builder
+         */
+        public Builder asyncThreadPoolSize(int threadCount) {
+            this.asyncThreadPoolSize = threadCount;
+            this.maxConcurrentLayouts = -1;
+            return this;
+        }
+
+        /**
+         * Runs asynchronous renders on virtual threads, limiting concurrent layouts. Requires Java 21.
+         *
+         * @param maxConcurrentLayouts the maximum number of documents laid out concurrently
+         * @return this builder
+         */
+        public Builder asyncVirtualThreads(int maxConcurrentLayouts) {
+            this.maxConcurrentLayouts = maxConcurrentLayouts;
+            this.asyncThreadPoolSize = -1;
+            return this;
+        }
+
+        /**
+         * Bounds the number of asynchronous renders waiting for a thread.
+         *
+         * @param capacity the maximum number of waiting renders
+         * @param policy what to do with renders that do not fit
+         * @return this builder
+         */
+        public Builder asyncQueueCapacity(int capacity, AsyncRejectionPolicy policy) {
+            return asyncQueueCapacity(capacity, policy, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Bounds the number of asynchronous renders waiting for a thread, waiting at most the given time
+         * for room with {@link AsyncRejectionPolicy#AWAIT}.
+         *
+         * @param capacity the maximum number of waiting renders
+         * @param policy what to do with renders that do not fit
+         * @param awaitTimeout the maximum time to wait for room in the queue
+         * @param unit the unit of the timeout
+         * @return this builder
+         */
+        public Builder asyncQueueCapacity(int capacity, AsyncRejectionPolicy policy, long awaitTimeout, TimeUnit unit) {
+            this.asyncQueueCapacity = capacity;
+            this.asyncRejectionPolicy = policy;
+            this.asyncAwaitTimeout = awaitTimeout;
+            this.asyncAwaitTimeoutUnit = unit;
+            return this;
+        }
+
+        /**
+         * Reuses the font resolvers of PDF renderers across renders, keeping up to the given number idle per
+         * font directory.
+         *
+         * @param maxIdle the maximum number of idle font resolvers per font directory
+         * @return this builder
+         */
+        public Builder pdfRendererPooling(int maxIdle) {
+            this.pdfRendererPoolSize = maxIdle;
+            return this;
+        }
+
+        /**
+         * Sets the observer that receives render stage timings, output sizes and template cache lookups.
+         *
+         * @param observer the observer
+         * @return this builder
+         */
+        public Builder renderObserver(RenderObserver observer) {
+            this.renderObserver = observer;
+            return this;
+        }
+
+        /**
+         * Creates the renderer.
+         *
+         * @return a new renderer; close it when it is no longer used
+         * @throws IOException if a template directory cannot be accessed or watched
+         * @throws TemplateException if a configuration setting or shared variable is invalid
+         */
+        public TemplateRenderer build() throws IOException, TemplateException {
+            TemplateRenderer renderer = new TemplateRenderer();
+            try {
+                for (TemplateLoader loader : templateLoaders) {
+                    renderer.addTemplateLoader(loader);
+                }
+                for (Map.Entry<String, Object> variable : sharedVariables.entrySet()) {
+                    renderer.addSharedVariable(variable.getKey(), variable.getValue());
+                }
+                if (templateDirectory != null) {
+                    renderer.setTemplateDirectory(templateDirectory);
+                }
+                if (classpathAndFileLoaders) {
+                    renderer.setClasspathAndFileTemplateLoaders(classpathPrefix, fileSystemDirectory);
+                }
+                if (!configurationProperties.isEmpty()) {
+                    renderer.setConfigurationProperties(configurationProperties);
+                }
+                if (locale != null) {
+                    renderer.updateConfiguration(cfg -> cfg.setLocale(locale));
+                }
+
+                renderer.setTemplatePreProcessor(templatePreProcessor);
+                renderer.setTemplatePostProcessor(templatePostProcessor);
+                renderer.setRenderObserver(renderObserver);
+                renderer.setTemplateCachingEnabled(templateCaching);
+                if (templateCacheMaxSize >= 0) {
+                    renderer.setTemplateCacheMaxSize(templateCacheMaxSize);
+                }
+                if (templateCacheMaxWeight >= 0) {
+                    renderer.setTemplateCacheMaxWeight(templateCacheMaxWeight);
+                }
+                if (inlineTemplateCacheMaxSize >= 0) {
+                    renderer.setInlineTemplateCacheMaxSize(inlineTemplateCacheMaxSize);
+                }
+                if (namespaceQuota != null) {
+                    renderer.setDefaultNamespaceQuota(namespaceQuota);
+                }
+                if (outputCacheTtl != null) {
+                    renderer.setOutputCacheLimits(outputCacheMaxBytes, outputCacheTtl);
+                }
+                for (String templateName : outputCachedTemplates) {
+                    renderer.setOutputCachingEnabled(templateName, true);
+                }
+                if (fileSyncPolicy != null) {
+                    renderer.setFileSyncPolicy(fileSyncPolicy);
+                }
+                if (pdfResultStoreDirectory != null) {
+                    renderer.setPdfResultStore(pdfResultStoreDirectory, pdfResultStoreMaxBytes);
+                }
+
+                if (asyncThreadPoolSize >= 0) {
+                    renderer.setAsyncThreadPoolSize(asyncThreadPoolSize);
+                }
+                if (maxConcurrentLayouts >= 0) {
+                    renderer.setAsyncVirtualThreadsEnabled(maxConcurrentLayouts);
+                }
+                if (asyncRejectionPolicy != null) {
+                    renderer.setAsyncQueueCapacity(asyncQueueCapacity, asyncRejectionPolicy,
+                            asyncAwaitTimeout, asyncAwaitTimeoutUnit);
+                }
+                if (pdfRendererPoolSize >= 0) {
+                    renderer.setPdfRendererPoolSize(pdfRendererPoolSize);
+                    renderer.setPdfRendererPoolingEnabled(true);
+                }
+
+                // Last, so that the configuration is not published again while watching
+                renderer.setTemplateWatchingEnabled(templateWatching);
+                return renderer;
+            } catch (IOException | TemplateException | RuntimeException e) {
+                renderer.close();
+                throw e;
+            }
+        }
+    }
+}
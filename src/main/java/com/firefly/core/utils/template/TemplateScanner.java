@@ -0,0 +1,148 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.MultiTemplateLoader;
+import freemarker.cache.TemplateLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Lists the templates available from template loaders, for loading them ahead of use.
+ *
+ * File system loaders are listed by walking their base directory. Class path loaders are listed by
+ * walking every class path directory and jar that contains their base package. Other loaders cannot be
+ * listed and are skipped. Only files with a template extension ({@code .ftl}, {@code .ftlh} and
+ * {@code .ftlx}) are reported.
+ */
+final class TemplateScanner {
+    private static final Logger logger = LoggerFactory.getLogger(TemplateScanner.class);
+
+    private TemplateScanner() {
+    }
+
+    /**
+     * Finds the templates a loader can load.
+     *
+     * @param loader a template loader, possibly combining several loaders
+     * @return the template names, relative to the template root, in name order
+     */
+    static Set<String> findTemplates(TemplateLoader loader) {
+        Set<String> names = new TreeSet<>();
+        addTemplates(loader, names);
+        return names;
+    }
+
+    private static void addTemplates(TemplateLoader loader, Set<String> names) {
+        if (loader instanceof MultiTemplateLoader) {
+            MultiTemplateLoader multiLoader = (MultiTemplateLoader) loader;
+            for (int i = 0; i < multiLoader.getTemplateLoaderCount(); i++) {
+                addTemplates(multiLoader.getTemplateLoader(i), names);
+            }
+        } else if (loader instanceof FileTemplateLoader) {
+            addDirectory(((FileTemplateLoader) loader).getBaseDirectory().toPath(), names);
+        } else if (loader instanceof ClassTemplateLoader) {
+            addClasspath((ClassTemplateLoader) loader, names);
+        } else if (loader != null) {
+            logger.debug("Cannot list templates of {}", loader.getClass().getName());
+        }
+    }
+
+    private static void addDirectory(Path root, Set<String> names) {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> tree = Files.walk(root)) {
+            tree.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace(root.getFileSystem().getSeparator(), "/"))
+                    .filter(TemplateScanner::isTemplate)
+                    .forEach(names::add);
+        } catch (IOException e) {
+            logger.warn("Failed to list templates in {}", root, e);
+        }
+    }
+
+    private static void addClasspath(ClassTemplateLoader loader, Set<String> names) {
+        ClassLoader classLoader = loader.getClassLoader() != null
+                ? loader.getClassLoader() : loader.getResourceLoaderClass().getClassLoader();
+        String basePath = loader.getBasePackagePath();
+        if (classLoader == null || basePath == null) {
+            return;
+        }
+        // The base package path is absolute and ends with a slash, such as "/templates/"
+        String prefix = basePath.startsWith("/") ? basePath.substring(1) : basePath;
+        String resourcePath = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+
+        try {
+            Enumeration<URL> roots = classLoader.getResources(resourcePath);
+            while (roots.hasMoreElements()) {
+                URL root = roots.nextElement();
+                if ("file".equals(root.getProtocol())) {
+                    addDirectory(Paths.get(root.toURI()), names);
+                } else if ("jar".equals(root.getProtocol())) {
+                    addJar(root, prefix, names);
+                } else {
+                    logger.debug("Cannot list templates in {}", root);
+                }
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            logger.warn("Failed to list templates in classpath:{}", basePath, e);
+        }
+    }
+
+    private static void addJar(URL root, String prefix, Set<String> names) throws IOException {
+        URLConnection connection = root.openConnection();
+        if (!(connection instanceof JarURLConnection)) {
+            return;
+        }
+        JarURLConnection jarConnection = (JarURLConnection) connection;
+        // Closing a cached jar file would break other users of it
+        jarConnection.setUseCaches(false);
+        try (JarFile jar = jarConnection.getJarFile()) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!entry.isDirectory() && name.startsWith(prefix) && isTemplate(name)) {
+                    names.add(name.substring(prefix.length()));
+                }
+            }
+        }
+    }
+
+    private static boolean isTemplate(String name) {
+        return name.endsWith(".ftl") || name.endsWith(".ftlh") || name.endsWith(".ftlx");
+    }
+}
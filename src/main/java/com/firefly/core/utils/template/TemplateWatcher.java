@@ -0,0 +1,204 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches template directories and reports changed templates by name.
+ *
+ * Each root directory is watched with its subdirectories, including subdirectories created later. A
+ * change to a file is reported with the file's path relative to its root, using {@code /} as the
+ * separator, which is the name FreeMarker loads it by. When the watch service drops events, every
+ * template must be considered changed, and the overflow callback is run instead.
+ *
+ * Events are handled on a single daemon thread, so the callbacks are not run concurrently.
+ */
+final class TemplateWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TemplateWatcher.class);
+
+    private final WatchService watchService;
+    private final Consumer<String> onChange;
+    private final Runnable onOverflow;
+    private final Map<WatchKey, WatchedDirectory> watched = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private Set<Path> roots = new HashSet<>();
+
+    /**
+     * Starts a watcher with no directories.
+     *
+     * @param onChange called with the name of each created, modified or deleted template
+     * @param onOverflow called when events were lost
+     * @throws IOException if the watch service cannot be created
+     */
+    TemplateWatcher(Consumer<String> onChange, Runnable onOverflow) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.onChange = onChange;
+        this.onOverflow = onOverflow;
+        this.thread = new Thread(this::run, "template-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Changes the watched root directories. Roots that were watched before and still are keep their
+     * registrations; directories that do not exist are skipped.
+     *
+     * @param directories the root directories to watch
+     * @throws IOException if a directory cannot be registered
+     */
+    synchronized void watch(Collection<Path> directories) throws IOException {
+        Set<Path> newRoots = new HashSet<>();
+        for (Path directory : directories) {
+            Path root = directory.toAbsolutePath().normalize();
+            if (Files.isDirectory(root)) {
+                newRoots.add(root);
+            }
+        }
+
+        watched.entrySet().removeIf(entry -> {
+            if (newRoots.contains(entry.getValue().root)) {
+                return false;
+            }
+            entry.getKey().cancel();
+            return true;
+        });
+        for (Path root : newRoots) {
+            if (!roots.contains(root)) {
+                registerTree(root, root);
+                logger.info("Watching template directory: {}", root);
+            }
+        }
+        roots = newRoots;
+    }
+
+    /**
+     * @return the watched root directories
+     */
+    synchronized Set<Path> roots() {
+        return new HashSet<>(roots);
+    }
+
+    /**
+     * Stops watching and ends the event thread.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void registerTree(Path root, Path directory) throws IOException {
+        try (Stream<Path> tree = Files.walk(directory)) {
+            for (Path dir : (Iterable<Path>) tree.filter(Files::isDirectory)::iterator) {
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                watched.put(key, new WatchedDirectory(root, dir));
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            WatchedDirectory directory = watched.get(key);
+            if (directory != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        handle(directory, event);
+                    } catch (RuntimeException | IOException e) {
+                        logger.warn("Failed to handle change in template directory {}", directory.path, e);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watched.remove(key);
+            }
+        }
+    }
+
+    private void handle(WatchedDirectory directory, WatchEvent<?> event) throws IOException {
+        if (event.kind() == OVERFLOW) {
+            logger.warn("Template change events were lost in {}", directory.path);
+            onOverflow.run();
+            return;
+        }
+
+        Path path = directory.path.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+            synchronized (this) {
+                if (!roots.contains(directory.root)) {
+                    return;
+                }
+                registerTree(directory.root, path);
+            }
+            // Files may have been written before the new directory was registered
+            try (Stream<Path> tree = Files.walk(path)) {
+                tree.filter(Files::isRegularFile).forEach(file -> changed(directory.root, file));
+            }
+            return;
+        }
+        if (!Files.isDirectory(path)) {
+            changed(directory.root, path);
+        }
+    }
+
+    private void changed(Path root, Path file) {
+        String name = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+        logger.debug("Template changed: {}", name);
+        onChange.accept(name);
+    }
+
+    private static final class WatchedDirectory {
+        private final Path root;
+        private final Path path;
+
+        WatchedDirectory(Path root, Path path) {
+            this.root = root;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of a template warm-up: how many templates were found and loaded, and where the time went.
+ */
+public final class WarmUpReport {
+    private final int templateCount;
+    private final Map<String, Exception> failures;
+    private final long templateNanos;
+    private final long pdfNanos;
+    private final boolean pdfWarmedUp;
+    private final long elapsedNanos;
+
+    WarmUpReport(int templateCount, Map<String, Exception> failures, long templateNanos, long pdfNanos,
+                 boolean pdfWarmedUp, long elapsedNanos) {
+        this.templateCount = templateCount;
+        this.failures = Collections.unmodifiableMap(failures);
+        this.templateNanos = templateNanos;
+        this.pdfNanos = pdfNanos;
+        this.pdfWarmedUp = pdfWarmedUp;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of templates found in the template loaders
+     */
+    public int getTemplateCount() { return templateCount; }
+
+    /**
+     * @return the number of templates parsed successfully
+     */
+    public int getLoadedCount() { return templateCount - failures.size(); }
+
+    /**
+     * @return the errors of templates that could not be parsed, by template name in name order
+     */
+    public Map<String, Exception> getFailures() { return failures; }
+
+    /**
+     * @return the wall-clock time spent parsing templates, in milliseconds
+     */
+    public long getTemplateMillis() { return templateNanos / 1_000_000; }
+
+    /**
+     * @return the time the warm-up PDF render took, in milliseconds, or 0 if none was done
+     */
+    public long getPdfMillis() { return pdfNanos / 1_000_000; }
+
+    /**
+     * @return whether the warm-up PDF render completed
+     */
+    public boolean isPdfWarmedUp() { return pdfWarmedUp; }
+
+    /**
+     * @return the wall-clock time the whole warm-up took, in milliseconds
+     */
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{templates=" + templateCount + ", failed=" + failures.size()
+                + ", templateMillis=" + getTemplateMillis() + ", pdfMillis=" + getPdfMillis()
+                + ", elapsedMillis=" + getElapsedMillis() + "}";
+    }
+}
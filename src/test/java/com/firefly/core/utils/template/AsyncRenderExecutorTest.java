@@ -0,0 +1,150 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AsyncRenderExecutor.
+ */
+public class AsyncRenderExecutorTest {
+    private ExecutorService pool;
+    private AsyncRenderExecutor executor;
+    private CountDownLatch release;
+
+    @BeforeEach
+    void createExecutor() {
+        pool = Executors.newFixedThreadPool(1);
+        executor = new AsyncRenderExecutor(pool, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        pool.shutdownNow();
+    }
+
+    @Test
+    void testUnboundedByDefault() {
+        for (int i = 0; i < 20; i++) {
+            executor.execute(this::block);
+        }
+
+        AsyncExecutorStats stats = executor.stats();
+        assertEquals(0, stats.getRejectedCount(), "Nothing should be rejected without a capacity");
+        assertTrue(stats.getQueueDepth() >= 19, "Tasks should queue behind the running one");
+    }
+
+    @Test
+    void testFailFastRejectsWhenFull() {
+        executor.setQueueCapacity(2, AsyncRejectionPolicy.FAIL_FAST, 0, TimeUnit.NANOSECONDS);
+
+        // One running, two waiting
+        for (int i = 0; i < 3; i++) {
+            executor.execute(this::block);
+        }
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(this::block));
+        assertEquals(1, executor.stats().getRejectedCount());
+    }
+
+    @Test
+    void testCallerRunsWhenFull() {
+        executor.setQueueCapacity(0, AsyncRejectionPolicy.CALLER_RUNS, 0, TimeUnit.NANOSECONDS);
+        executor.execute(this::block);
+
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.execute(() -> ranOn.set(Thread.currentThread()));
+
+        assertSame(Thread.currentThread(), ranOn.get(), "Overflow should run in the calling thread");
+        assertEquals(1, executor.stats().getCallerRunsCount());
+    }
+
+    @Test
+    void testAwaitTimesOut() {
+        executor.setQueueCapacity(0, AsyncRejectionPolicy.AWAIT, 50, TimeUnit.MILLISECONDS);
+        executor.execute(this::block);
+
+        long start = System.nanoTime();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(this::block));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50), "Caller should wait before rejection");
+    }
+
+    @Test
+    void testAwaitAdmitsOnceRoomFrees() throws Exception {
+        executor.setQueueCapacity(0, AsyncRejectionPolicy.AWAIT, 10, TimeUnit.SECONDS);
+        executor.execute(this::block);
+
+        CountDownLatch done = new CountDownLatch(1);
+        Thread releaser = new Thread(() -> {
+            sleep(50);
+            release.countDown();
+        });
+        releaser.start();
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Waiting task should run once the first one finishes");
+        AsyncExecutorStats stats = executor.stats();
+        assertEquals(2, stats.getStartedCount());
+        assertEquals(0, stats.getRejectedCount());
+    }
+
+    @Test
+    void testWaitTimeIsRecorded() throws Exception {
+        executor.execute(this::block);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(done::countDown);
+
+        sleep(50);
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        AsyncExecutorStats stats = executor.stats();
+        assertTrue(stats.getMaxWaitMillis() >= 40, "Queued task should have waited for the running one");
+        assertTrue(stats.getAverageWaitMillis() > 0);
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    private void block() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
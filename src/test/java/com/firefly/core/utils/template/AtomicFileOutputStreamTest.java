@@ -0,0 +1,122 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for AtomicFileOutputStream.
+ */
+public class AtomicFileOutputStreamTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void testCommitWritesSmallAndLargeBlocks() throws Exception {
+        byte[] large = new byte[200_000];
+        new Random(42).nextBytes(large);
+        Path target = dir.resolve("out.pdf");
+
+        AtomicFileOutputStream os = new AtomicFileOutputStream(target, FileSyncPolicy.FULL);
+        os.write('%');
+        os.write("PDF".getBytes(StandardCharsets.US_ASCII));
+        os.write(large);
+        os.write('!');
+        os.commit();
+
+        byte[] written = Files.readAllBytes(target);
+        assertEquals(large.length + 5, written.length);
+        assertEquals("%PDF", new String(written, 0, 4, StandardCharsets.US_ASCII));
+        assertEquals(large[large.length - 1], written[written.length - 2]);
+        assertEquals('!', written[written.length - 1]);
+        assertEquals(1, countFiles(), "No temporary file should be left");
+    }
+
+    @Test
+    void testUncommittedOutputLeavesTargetUntouched() throws Exception {
+        Path target = dir.resolve("out.pdf");
+        Files.write(target, "previous".getBytes(StandardCharsets.UTF_8));
+
+        AtomicFileOutputStream os = new AtomicFileOutputStream(target, FileSyncPolicy.NONE);
+        os.write(new byte[100_000]);
+        os.close();
+        os.discard();
+
+        assertEquals("previous", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertEquals(1, countFiles(), "The temporary file should be deleted");
+    }
+
+    @Test
+    void testClosedStreamCanStillBeCommitted() throws Exception {
+        Path target = dir.resolve("out.pdf");
+        AtomicFileOutputStream os = new AtomicFileOutputStream(target, FileSyncPolicy.DATA);
+        os.write(new byte[]{1, 2, 3});
+        // PDF writers close their stream when the document is complete
+        os.close();
+        os.flush();
+        assertThrows(IOException.class, () -> os.write(4));
+
+        os.commit();
+        os.discard();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(target));
+        assertThrows(IOException.class, os::commit);
+    }
+
+    @Test
+    void testFilesKeepTheUsualPermissions() throws Exception {
+        assumeTrue(Files.getFileAttributeView(dir, PosixFileAttributeView.class) != null, "Needs POSIX permissions");
+        Path reference = Files.write(dir.resolve("reference.pdf"), new byte[]{1});
+        Path target = dir.resolve("out.pdf");
+
+        AtomicFileOutputStream created = new AtomicFileOutputStream(target, FileSyncPolicy.NONE);
+        created.write(1);
+        created.commit();
+        assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(target),
+                "A new file should get the permissions the umask allows");
+
+        Set<PosixFilePermission> shared = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(target, shared);
+        AtomicFileOutputStream replaced = new AtomicFileOutputStream(target, FileSyncPolicy.NONE);
+        replaced.write(2);
+        replaced.commit();
+        assertEquals(shared, Files.getPosixFilePermissions(target), "A replaced file should keep its permissions");
+        assertArrayEquals(new byte[]{2}, Files.readAllBytes(target));
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ContentHasher.
+ */
+public class ContentHasherTest {
+
+    @Test
+    void testMatchesMurmur3ReferenceVector() {
+        ContentHasher hasher = new ContentHasher();
+        for (byte b : "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII)) {
+            hasher.putByte(b);
+        }
+
+        assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347", hasher.hash().toHex());
+    }
+
+    @Test
+    void testEmptyInputHashesToZero() {
+        assertEquals(new ContentHash(0, 0), new ContentHasher().hash());
+    }
+
+    @Test
+    void testStringsAreLengthPrefixed() {
+        ContentHash ab = new ContentHasher().putString("ab").putString("c").hash();
+        ContentHash abc = new ContentHasher().putString("a").putString("bc").hash();
+
+        assertNotEquals(ab, abc, "Moving characters between strings should change the hash");
+        assertEquals(ab, new ContentHasher().putString("ab").putString("c").hash());
+    }
+
+    @Test
+    void testNullDiffersFromEmptyString() {
+        assertNotEquals(new ContentHasher().putString(null).hash(), new ContentHasher().putString("").hash());
+    }
+}
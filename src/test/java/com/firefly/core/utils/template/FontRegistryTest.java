@@ -0,0 +1,94 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xhtmlrenderer.pdf.FontDescription;
+import org.xhtmlrenderer.pdf.FontFamily;
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for FontRegistry.
+ */
+public class FontRegistryTest {
+    private static final Path SYSTEM_FONT = Paths.get("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    @TempDir
+    Path fontDir;
+
+    private Path fontFile;
+
+    @BeforeEach
+    void copyFont() throws IOException {
+        assumeTrue(Files.isReadable(SYSTEM_FONT), "A TrueType font is needed for this test");
+        fontFile = Files.copy(SYSTEM_FONT, fontDir.resolve("DejaVuSans.ttf"), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(fontDir.resolve("readme.txt"), new byte[]{1, 2, 3});
+    }
+
+    @Test
+    void testPreloadCountsFontFilesOnly() {
+        FontRegistry registry = new FontRegistry();
+
+        assertEquals(1, registry.preload(fontDir.toString()), "Only .ttf and .otf files should be loaded");
+    }
+
+    @Test
+    void testFontIsParsedOnceAndShared() throws Exception {
+        FontRegistry registry = new FontRegistry();
+        ITextFontResolver first = new ITextFontResolver();
+        ITextFontResolver second = new ITextFontResolver();
+
+        registry.registerFonts(first, fontDir.toString());
+        registry.registerFonts(second, fontDir.toString());
+
+        FontDescription firstFont = description(first);
+        FontDescription secondFont = description(second);
+        assertSame(firstFont.getFont(), secondFont.getFont(), "Renderers should share the parsed font");
+    }
+
+    @Test
+    void testChangedFontIsParsedAgain() throws Exception {
+        FontRegistry registry = new FontRegistry();
+        ITextFontResolver first = new ITextFontResolver();
+        registry.registerFonts(first, fontDir.toString());
+
+        assertTrue(fontFile.toFile().setLastModified(fontFile.toFile().lastModified() - 60_000));
+        ITextFontResolver second = new ITextFontResolver();
+        registry.registerFonts(second, fontDir.toString());
+
+        assertNotSame(description(first).getFont(), description(second).getFont(),
+                "A modified font file should be parsed again");
+    }
+
+    private static FontDescription description(ITextFontResolver resolver) {
+        FontFamily family = resolver.getFonts().get("DejaVu Sans");
+        assertNotNull(family, "Font family should be registered");
+        return family.getFontDescriptions().get(0);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MicrometerRenderObserver.
+ */
+public class MicrometerRenderObserverTest {
+
+    @Test
+    void testRecordsStagesOutputsAndLookups() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerRenderObserver observer = new MicrometerRenderObserver(registry);
+
+        observer.onStage(RenderObserver.Stage.LAYOUT, "invoice.ftl", 2_000_000);
+        observer.onStage(RenderObserver.Stage.LAYOUT, "invoice.ftl", 4_000_000);
+        observer.onOutput(RenderObserver.Output.PDF, "invoice.ftl", 1024);
+        observer.onTemplateCacheLookup("invoice.ftl", true);
+        observer.onTemplateCacheLookup("invoice.ftl", false);
+        observer.onTemplateCacheLookup("invoice.ftl", true);
+
+        assertEquals(2, registry.get(MicrometerRenderObserver.STAGE_TIMER).tag("stage", "layout").timer().count());
+        assertEquals(1024, registry.get(MicrometerRenderObserver.OUTPUT_SIZE).tag("output", "pdf").summary().totalAmount());
+        assertEquals(2, registry.get(MicrometerRenderObserver.CACHE_LOOKUPS).tag("result", "hit").counter().count());
+        assertEquals(1, registry.get(MicrometerRenderObserver.CACHE_LOOKUPS).tag("result", "miss").counter().count());
+        assertTrue(registry.find(MicrometerRenderObserver.STAGE_TIMER).tagKeys("template").meters().isEmpty(),
+                "Template names should not be tagged by default");
+    }
+
+    @Test
+    void testTagsTemplateNamesWhenEnabled() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerRenderObserver observer = new MicrometerRenderObserver(registry, true);
+
+        observer.onStage(RenderObserver.Stage.TEMPLATE_PROCESS, "invoice.ftl", 1_000);
+        observer.onStage(RenderObserver.Stage.TEMPLATE_PROCESS, null, 1_000);
+
+        assertEquals(1, registry.get(MicrometerRenderObserver.STAGE_TIMER)
+                .tags("stage", "template_process", "template", "invoice.ftl").timer().count());
+        assertEquals(1, registry.get(MicrometerRenderObserver.STAGE_TIMER)
+                .tags("stage", "template_process", "template", "none").timer().count());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PdfResultStore.
+ */
+public class PdfResultStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void testStoredResultIsWrittenToStream() throws Exception {
+        PdfResultStore store = new PdfResultStore(dir, 1024);
+        ContentHash key = key("first");
+        assertFalse(store.transferTo(key, new ByteArrayOutputStream()));
+
+        store.store(key, new byte[]{1, 2, 3});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertTrue(store.transferTo(key, out));
+        assertArrayEquals(new byte[]{1, 2, 3}, out.toByteArray());
+        assertEquals(1, store.stats().getHitCount());
+        assertEquals(1, store.stats().getMissCount());
+        assertEquals(3, store.stats().getWeightedSize());
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultsAreEvicted() throws Exception {
+        PdfResultStore store = new PdfResultStore(dir, 250);
+        store.store(key("first"), new byte[100]);
+        Thread.sleep(5);
+        store.store(key("second"), new byte[100]);
+        Thread.sleep(5);
+        assertTrue(store.transferTo(key("first"), new ByteArrayOutputStream()));
+
+        store.store(key("third"), new byte[100]);
+
+        assertTrue(store.transferTo(key("first"), new ByteArrayOutputStream()));
+        assertFalse(store.transferTo(key("second"), new ByteArrayOutputStream()),
+                "The least recently used result should be evicted");
+        assertEquals(1, store.stats().getEvictionCount());
+        assertEquals(200, store.stats().getWeightedSize());
+        assertFalse(Files.exists(dir.resolve(key("second").toHex() + ".pdf")));
+    }
+
+    @Test
+    void testReopenedStoreFindsStoredResults() throws Exception {
+        new PdfResultStore(dir, 1024).store(key("first"), new byte[]{7});
+        Files.write(dir.resolve("abandoned.tmp"), new byte[]{1});
+
+        PdfResultStore reopened = new PdfResultStore(dir, 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertTrue(reopened.transferTo(key("first"), out));
+        assertArrayEquals(new byte[]{7}, out.toByteArray());
+        assertFalse(Files.exists(dir.resolve("abandoned.tmp")), "Leftover temporary files should be deleted");
+    }
+
+    @Test
+    void testResultDeletedOutsideTheStoreIsAMiss() throws Exception {
+        PdfResultStore store = new PdfResultStore(dir, 1024);
+        store.store(key("first"), new byte[]{1});
+        Files.delete(dir.resolve(key("first").toHex() + ".pdf"));
+
+        assertFalse(store.transferTo(key("first"), new ByteArrayOutputStream()));
+        assertEquals(0, store.stats().getSize());
+    }
+
+    private static ContentHash key(String value) {
+        return new ContentHasher().putString(value).hash();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import com.firefly.core.utils.template.TemplateRenderUtil.PdfOptions;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.SimpleBookmark;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PdfSegments.
+ */
+public class PdfSegmentsTest {
+    private static final String HEAD = "<html><head><style>p { color: red; }</style></head><body class='doc'>";
+    private static final String TAIL = "</body></html>";
+
+    @Test
+    void testDocumentWithoutBreaksIsNotSplit() {
+        String xhtml = HEAD + "<p>One</p>" + TAIL;
+
+        assertEquals(List.of(xhtml), PdfSegments.split(xhtml, 8));
+    }
+
+    @Test
+    void testSegmentsKeepHeadAndBody() {
+        String xhtml = HEAD + "<p>One</p>" + PdfOptions.SEGMENT_BREAK + "<p>Two</p>" + PdfOptions.SEGMENT_BREAK
+                + "  " + PdfOptions.SEGMENT_BREAK + "<p>Three</p>" + TAIL;
+
+        List<String> segments = PdfSegments.split(xhtml, 8);
+
+        assertEquals(Arrays.asList(HEAD + "<p>One</p>" + TAIL, HEAD + "<p>Two</p>" + TAIL, HEAD + "<p>Three</p>" + TAIL),
+                segments, "Blank parts should be dropped");
+    }
+
+    @Test
+    void testPartsAreCombinedUpToMaxSegments() {
+        StringBuilder xhtml = new StringBuilder(HEAD);
+        for (int i = 0; i < 10; i++) {
+            xhtml.append("<p>Part ").append(i).append("</p>").append(PdfOptions.SEGMENT_BREAK);
+        }
+        xhtml.append(TAIL);
+
+        List<String> segments = PdfSegments.split(xhtml.toString(), 3);
+
+        assertEquals(3, segments.size());
+        assertTrue(segments.get(0).contains("Part 0") && segments.get(2).contains("Part 9"));
+        assertEquals(10, String.join("", segments).split("<p>Part ").length - 1, "Every part should be kept once");
+    }
+
+    @Test
+    void testMergeShiftsOutlinesAndAddsBookmarks() throws Exception {
+        try (TemplateRenderer renderer = TemplateRenderer.builder().build()) {
+            List<byte[]> pdfs = new ArrayList<>();
+            pdfs.add(renderer.renderHtmlToPdfBytes(
+                    "<html><body><h1>First</h1><div style='page-break-before: always'>More</div></body></html>"));
+            pdfs.add(renderer.renderHtmlToPdfBytes("<html><body><h1>Second</h1></body></html>"));
+            List<PdfOptions.Bookmark> bookmarks = new PdfOptions().withBookmark("Last page", "3").getBookmarks();
+
+            ByteArrayOutputStream merged = new ByteArrayOutputStream();
+            PdfSegments.merge(pdfs, bookmarks, merged);
+
+            PdfReader reader = new PdfReader(merged.toByteArray());
+            try {
+                assertEquals(3, reader.getNumberOfPages());
+                List<Map<String, Object>> outline = SimpleBookmark.getBookmarkList(reader);
+                assertEquals(3, outline.size());
+                assertEquals("First", outline.get(0).get("Title"));
+                assertTrue(((String) outline.get(0).get("Page")).startsWith("1 "));
+                assertEquals("Second", outline.get(1).get("Title"));
+                assertTrue(((String) outline.get(1).get("Page")).startsWith("3 "), "Heading should be shifted");
+                assertEquals("Root", outline.get(2).get("Title"));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+}
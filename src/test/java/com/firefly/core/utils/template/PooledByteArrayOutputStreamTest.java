@@ -0,0 +1,104 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PooledByteArrayOutputStream.
+ */
+public class PooledByteArrayOutputStreamTest {
+
+    @Test
+    void testGrowsAcrossSizeClasses() throws Exception {
+        ByteArrayPool pool = new ByteArrayPool(64L * 1024 * 1024);
+        PooledByteArrayOutputStream os = new PooledByteArrayOutputStream(pool);
+        byte[] chunk = new byte[10_000];
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 40; i++) {
+            Arrays.fill(chunk, (byte) i);
+            os.write(chunk);
+            expected.write(chunk);
+        }
+        os.write(42);
+        expected.write(42);
+
+        assertEquals(expected.size(), os.size());
+        assertArrayEquals(expected.toByteArray(), os.toByteArray());
+        assertTrue(pool.retainedBytes() > 0, "Outgrown buffers should go back to the pool");
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        os.writeTo(copy);
+        assertArrayEquals(expected.toByteArray(), copy.toByteArray());
+    }
+
+    @Test
+    void testBufferIsAtMostTwiceTheOutput() {
+        PooledByteArrayOutputStream os = new PooledByteArrayOutputStream(new ByteArrayPool(64L * 1024 * 1024));
+        byte[] chunk = new byte[10_000];
+        for (int i = 0; i < 500; i++) {
+            os.write(chunk, 0, chunk.length);
+        }
+
+        assertEquals(8 * 1024 * 1024, os.array().length, "A 5 MB document should fit the 8 MB size class");
+    }
+
+    @Test
+    void testReleasedBufferIsReused() {
+        ByteArrayPool pool = new ByteArrayPool(64L * 1024 * 1024);
+        PooledByteArrayOutputStream first = new PooledByteArrayOutputStream(pool);
+        byte[] buffer = first.array();
+        first.write(1);
+        first.release();
+
+        PooledByteArrayOutputStream second = new PooledByteArrayOutputStream(pool);
+        assertSame(buffer, second.array(), "A released buffer should be handed out again");
+        assertEquals(0, second.size());
+        assertThrows(IllegalStateException.class, () -> first.write(2), "A released stream should not be written");
+    }
+
+    @Test
+    void testPoolRetainsUpToItsLimit() {
+        ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.MIN_CLASS_SIZE);
+        pool.release(pool.borrow(1));
+        pool.release(pool.borrow(ByteArrayPool.MIN_CLASS_SIZE * 2));
+        pool.release(new byte[100]);
+
+        assertEquals(ByteArrayPool.MIN_CLASS_SIZE, pool.retainedBytes(),
+                "Buffers beyond the limit or outside the size classes should not be retained");
+        assertEquals(ByteArrayPool.MIN_CLASS_SIZE, pool.borrow(1).length);
+        assertEquals(0, pool.retainedBytes());
+    }
+
+    @Test
+    void testViewIsReadOnlyAndBounded() {
+        PooledByteArrayOutputStream os = new PooledByteArrayOutputStream(new ByteArrayPool(0));
+        os.write(new byte[]{1, 2, 3}, 0, 3);
+
+        ByteBuffer view = os.view();
+        assertTrue(view.isReadOnly());
+        assertEquals(0, view.position());
+        assertEquals(3, view.remaining());
+        assertEquals(3, view.get(2));
+    }
+}
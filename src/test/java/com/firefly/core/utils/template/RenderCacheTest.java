@@ -0,0 +1,156 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RenderCache.
+ */
+public class RenderCacheTest {
+
+    @Test
+    void testEvictsInsteadOfRefusingNewEntries() {
+        RenderCache<String, String> cache = new RenderCache<>(10, String::length);
+
+        for (int i = 0; i < 50; i++) {
+            cache.put("template-" + i, "content-" + i);
+        }
+
+        assertTrue(cache.size() <= 10, "Cache should stay within its bound");
+        assertTrue(cache.stats().getEvictionCount() >= 40, "Excess entries should be evicted");
+    }
+
+    @Test
+    void testHitAndMissCounters() {
+        RenderCache<String, String> cache = new RenderCache<>(10, String::length);
+
+        assertNull(cache.getIfPresent("a"));
+        cache.put("a", "value");
+        assertEquals("value", cache.getIfPresent("a"));
+        assertEquals("value", cache.getIfPresent("a"));
+
+        TemplateCacheStats stats = cache.stats();
+        assertEquals(2, stats.getHitCount(), "Two lookups should hit");
+        assertEquals(1, stats.getMissCount(), "One lookup should miss");
+        assertEquals(-1, stats.getWeightedSize(), "Count-bounded cache has no weighted size");
+    }
+
+    @Test
+    void testShrinkingKeepsEntries() {
+        RenderCache<String, String> cache = new RenderCache<>(10, String::length);
+        for (int i = 0; i < 10; i++) {
+            cache.put("template-" + i, "content");
+        }
+
+        cache.setMaximumSize(5);
+
+        assertEquals(5, cache.size(), "Shrinking should trim the cache, not clear it");
+    }
+
+    @Test
+    void testWeightBound() {
+        RenderCache<String, String> cache = new RenderCache<>(100, String::length);
+        cache.put("small", "x");
+        cache.getIfPresent("small");
+
+        cache.setMaximumWeight(100);
+        assertEquals("x", cache.getIfPresent("small"), "Entries should survive switching to a weight bound");
+
+        for (int i = 0; i < 20; i++) {
+            cache.put("large-" + i, "0123456789012345678901234567890123456789");
+        }
+
+        TemplateCacheStats stats = cache.stats();
+        assertTrue(stats.getWeightedSize() <= 100, "Total weight should stay within the bound");
+        assertTrue(stats.getHitCount() >= 2, "Statistics should carry over when the cache is rebuilt");
+    }
+
+    @Test
+    void testConcurrentMissesShareOneLoad() throws Exception {
+        RenderCache<String, String> cache = new RenderCache<>(10, String::length);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        CountDownLatch asked = new CountDownLatch(threads - 1);
+        RenderCache.Loader<String> loader = () -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return "parsed";
+        };
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.get("popular", loader)));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (loads.get() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+
+            // Ask for the key from the other threads while it is being loaded
+            for (int i = 1; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    asked.countDown();
+                    return cache.get("popular", loader);
+                }));
+            }
+            assertTrue(asked.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("parsed", result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get(), "Only one thread should load the value");
+            assertEquals(1, cache.stats().getMissCount());
+            assertEquals(threads - 1, cache.stats().getCoalescedLoadCount(), "Other threads should be coalesced");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        RenderCache<String, String> cache = new RenderCache<>(10, String::length);
+
+        assertThrows(IOException.class, () -> cache.get("broken", () -> {
+            throw new IOException("Template not found");
+        }));
+
+        assertDoesNotThrow(() -> assertEquals("fixed", cache.get("broken", () -> "fixed")));
+    }
+}
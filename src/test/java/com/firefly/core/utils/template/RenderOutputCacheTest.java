@@ -0,0 +1,139 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import com.firefly.core.utils.template.TemplateRenderUtil.PdfOptions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RenderOutputCache.
+ */
+public class RenderOutputCacheTest {
+
+    @Test
+    void testDataModelHashFollowsMapAndSetOrder() {
+        // A template listing these renders them in iteration order, so the order is part of the output
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("name", "Ada");
+        first.put("price", new BigDecimal("9.99"));
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("price", new BigDecimal("9.99"));
+        second.put("name", "Ada");
+
+        assertNotEquals(RenderOutputCache.hashValue(first, 0), RenderOutputCache.hashValue(second, 0));
+        assertNotEquals(RenderOutputCache.hashValue(new LinkedHashSet<>(Arrays.asList("a", "b")), 0),
+                RenderOutputCache.hashValue(new LinkedHashSet<>(Arrays.asList("b", "a")), 0));
+        assertEquals(RenderOutputCache.hashValue(first, 0), RenderOutputCache.hashValue(new LinkedHashMap<>(first), 0));
+    }
+
+    @Test
+    void testDataModelHashDistinguishesValues() {
+        assertNotEquals(RenderOutputCache.hashValue(Map.of("n", 1), 0), RenderOutputCache.hashValue(Map.of("n", 1L), 0));
+        assertNotEquals(RenderOutputCache.hashValue(Map.of("n", "1"), 0), RenderOutputCache.hashValue(Map.of("n", 1), 0));
+        assertNotEquals(RenderOutputCache.hashValue(List.of("a", "b"), 0), RenderOutputCache.hashValue(List.of("b", "a"), 0));
+        assertNotEquals(RenderOutputCache.hashValue(new BigDecimal("1.0"), 0),
+                RenderOutputCache.hashValue(new BigDecimal("1.00"), 0));
+    }
+
+    @Test
+    void testUnhashableDataModelHasNoKey() {
+        RenderOutputCache cache = new RenderOutputCache(1024, Duration.ofMinutes(1));
+
+        assertNull(cache.key("page.ftl", 0, Map.of("bean", new Object()), null));
+        assertNotNull(cache.key("page.ftl", 0, Map.of("name", "Ada"), null));
+    }
+
+    @Test
+    void testPdfOptionsArePartOfTheKey() {
+        RenderOutputCache cache = new RenderOutputCache(1024, Duration.ofMinutes(1));
+        Map<String, Object> model = Map.of("name", "Ada");
+
+        RenderOutputCache.Key html = cache.key("page.ftl", 0, model, null);
+        RenderOutputCache.Key pdf = cache.key("page.ftl", 0, model, new PdfOptions());
+        RenderOutputCache.Key watermarked = cache.key("page.ftl", 0, model, new PdfOptions().withWatermark("DRAFT"));
+
+        assertNotEquals(html, pdf);
+        assertNotEquals(pdf, watermarked);
+        assertEquals(pdf, cache.key("page.ftl", 0, model, new PdfOptions()));
+        assertNotEquals(pdf, cache.key("page.ftl", 1, model, new PdfOptions()), "Generations should not share output");
+    }
+
+    @Test
+    void testInvalidationDropsOutputAndRacingPuts() {
+        RenderOutputCache cache = new RenderOutputCache(1024, Duration.ofMinutes(1));
+        RenderOutputCache.Key page = cache.key("page.ftl", 0, Map.of(), null);
+        RenderOutputCache.Key other = cache.key("other.ftl", 0, Map.of(), null);
+        cache.put(page, "<p>page</p>", cache.epoch());
+        cache.put(other, "<p>other</p>", cache.epoch());
+
+        long epoch = cache.epoch();
+        cache.invalidate(List.of("page.ftl"));
+        cache.put(page, "<p>stale</p>", epoch);
+
+        assertNull(cache.get(page), "Output rendered before an invalidation should not be cached");
+        assertEquals("<p>other</p>", cache.get(other));
+    }
+
+    @Test
+    void testSourceHashIsKeptPerGenerationUntilInvalidated() throws Exception {
+        RenderOutputCache cache = new RenderOutputCache(1024, Duration.ofMinutes(1));
+        AtomicInteger computed = new AtomicInteger();
+        RenderOutputCache.SourceHasher hasher = () -> new ContentHasher().putInt(computed.incrementAndGet()).hash();
+
+        ContentHash first = cache.sourceHash("page.ftl", 0, hasher);
+        assertEquals(first, cache.sourceHash("page.ftl", 0, hasher));
+        assertEquals(1, computed.get(), "The hash should be computed once per generation");
+
+        cache.sourceHash("page.ftl", 1, hasher);
+        assertEquals(2, computed.get(), "A new generation should compute the hash again");
+
+        cache.invalidate(List.of("page.ftl"));
+        cache.sourceHash("page.ftl", 1, hasher);
+        assertEquals(3, computed.get(), "Invalidation should drop the hash");
+
+        RenderOutputCache.SourceHasher racing = () -> {
+            cache.invalidate(List.of("page.ftl"));
+            return hasher.hash();
+        };
+        cache.sourceHash("page.ftl", 2, racing);
+        cache.sourceHash("page.ftl", 2, hasher);
+        assertEquals(5, computed.get(), "A hash computed during an invalidation should not be kept");
+    }
+
+    @Test
+    void testCacheIsBoundedByOutputSize() {
+        RenderOutputCache cache = new RenderOutputCache(100, Duration.ofMinutes(1));
+        for (int i = 0; i < 10; i++) {
+            cache.put(cache.key("page.ftl", 0, Map.of("i", i), null), new byte[40], cache.epoch());
+        }
+
+        assertTrue(cache.stats().getWeightedSize() <= 100);
+        assertTrue(cache.stats().getEvictionCount() > 0);
+    }
+}
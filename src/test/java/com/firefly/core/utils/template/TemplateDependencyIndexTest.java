@@ -0,0 +1,115 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TemplateDependencyIndex.
+ */
+public class TemplateDependencyIndexTest {
+    private final Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+    private final Map<String, Template> templates = new HashMap<>();
+
+    @Test
+    void testResolvesNamesLikeFreeMarker() {
+        assertEquals("mail/header.ftl", TemplateDependencyIndex.resolve("mail/welcome.ftl", "header.ftl"));
+        assertEquals("lib/macros.ftl", TemplateDependencyIndex.resolve("mail/welcome.ftl", "/lib/macros.ftl"));
+        assertEquals("common/footer.ftl", TemplateDependencyIndex.resolve("mail/en/welcome.ftl", "../../common/./footer.ftl"));
+        assertEquals("header.ftl", TemplateDependencyIndex.resolve("welcome.ftl", "header.ftl"));
+    }
+
+    @Test
+    void testFindsLiteralIncludesAndImports() throws IOException {
+        Template template = template("mail/welcome.ftl",
+                "<#import \"/lib/macros.ftl\" as m><#if x><#include \"header.ftl\"></#if>"
+                        + "<#include name + \".ftl\"><#include \"${part}.ftl\"><#-- <#include \"commented.ftl\"> -->");
+
+        assertEquals(Set.of("lib/macros.ftl", "mail/header.ftl"), TemplateDependencyIndex.findDependencies(template),
+                "Computed and commented-out names should be ignored");
+        assertFalse(TemplateDependencyIndex.findDependencies(template, new HashSet<>()), "Computed names should be reported");
+        assertTrue(TemplateDependencyIndex.findDependencies(template("plain.ftl", "<#include \"header.ftl\">"), new HashSet<>()));
+    }
+
+    @Test
+    void testFindsIndirectDependents() throws IOException {
+        template("logo.ftl", "<img src=\"logo.png\"/>");
+        template("header.ftl", "<#include \"logo.ftl\">");
+        template("invoice.ftl", "<#include \"header.ftl\">");
+        template("receipt.ftl", "<#include \"logo.ftl\">");
+        template("plain.ftl", "<p>Plain</p>");
+        TemplateDependencyIndex index = new TemplateDependencyIndex();
+
+        index.record(templates.get("invoice.ftl"), this::load);
+        index.record(templates.get("receipt.ftl"), this::load);
+        index.record(templates.get("plain.ftl"), this::load);
+
+        assertEquals(Set.of("header.ftl", "invoice.ftl", "receipt.ftl"), index.dependentsOf("logo.ftl"),
+                "Templates included by a recorded template should be indexed too");
+        assertEquals(Set.of(), index.dependentsOf("plain.ftl"));
+    }
+
+    @Test
+    void testRecordReplacesEdges() throws IOException {
+        TemplateDependencyIndex index = new TemplateDependencyIndex();
+        index.record(template("page.ftl", "<#include \"old.ftl\">"), this::load);
+
+        index.record(template("page.ftl", "<#include \"new.ftl\">"), this::load);
+
+        assertEquals(Set.of(), index.dependentsOf("old.ftl"), "Removed includes should be forgotten");
+        assertEquals(Set.of("page.ftl"), index.dependentsOf("new.ftl"));
+        assertEquals(Set.of("new.ftl"), index.dependenciesOf("page.ftl"));
+    }
+
+    @Test
+    void testToleratesCycles() throws IOException {
+        template("a.ftl", "<#include \"b.ftl\">");
+        template("b.ftl", "<#if false><#include \"a.ftl\"></#if>");
+        TemplateDependencyIndex index = new TemplateDependencyIndex();
+
+        index.record(templates.get("a.ftl"), this::load);
+
+        assertEquals(Set.of("b.ftl"), index.dependentsOf("a.ftl"), "A template should not be its own dependent");
+        assertEquals(Set.of("a.ftl"), index.dependentsOf("b.ftl"));
+    }
+
+    private Template template(String name, String source) throws IOException {
+        Template template = new Template(name, new StringReader(source), cfg);
+        templates.put(name, template);
+        return template;
+    }
+
+    private Template load(String name) throws IOException {
+        Template template = templates.get(name);
+        if (template == null) {
+            throw new IOException("Template not found: " + name);
+        }
+        return template;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TemplateNamespace.
+ */
+public class TemplateNamespaceTest {
+    @TempDir
+    Path dir;
+
+    private TemplateRenderer renderer;
+
+    @BeforeEach
+    void createRenderer() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            write("page" + i + ".ftl", "<p>Page " + i + " for ${name}</p>");
+        }
+        renderer = TemplateRenderer.builder().templateDirectory(dir.toString()).build();
+    }
+
+    @AfterEach
+    void closeRenderer() {
+        renderer.close();
+    }
+
+    @Test
+    void testNoisyNamespaceOnlyEvictsItsOwnTemplates() throws Exception {
+        TemplateNamespace quiet = renderer.namespace("quiet");
+        TemplateNamespace noisy = renderer.namespace("noisy", TemplateCacheQuota.ofSize(2));
+        quiet.renderTemplateToHtml("page0.ftl", Map.of("name", "Quiet"));
+
+        for (int i = 0; i < 10; i++) {
+            noisy.renderTemplateToHtml("page" + i + ".ftl", Map.of("name", "Noisy"));
+        }
+        assertEquals("<p>Page 0 for Quiet</p>", quiet.renderTemplateToHtml("page0.ftl", Map.of("name", "Quiet")));
+
+        TemplateCacheStats quietStats = quiet.getTemplateCacheStats();
+        assertEquals(1, quietStats.getHitCount());
+        assertEquals(1, quietStats.getMissCount());
+        assertEquals(0, quietStats.getEvictionCount());
+        TemplateCacheStats noisyStats = noisy.getTemplateCacheStats();
+        assertEquals(10, noisyStats.getMissCount());
+        assertTrue(noisyStats.getEvictionCount() > 0, "The noisy namespace should evict within its quota");
+        assertTrue(noisyStats.getSize() <= 2);
+        assertEquals(0, renderer.getTemplateCacheStats().getMissCount(),
+                "Namespaces should not use the renderer's own cache");
+    }
+
+    @Test
+    void testWeightQuotaAndTemplateStringsAreCountedPerNamespace() throws Exception {
+        TemplateNamespace namespace = renderer.namespace("tenant", TemplateCacheQuota.ofWeight(1000).withInlineMaxSize(5));
+        namespace.renderTemplateToHtml("page1.ftl", Map.of("name", "Ada"));
+        namespace.renderTemplateStringToHtml("<b>${name}</b>", "inline", Map.of("name", "Ada"));
+        namespace.renderTemplateStringToHtml("<b>${name}</b>", "inline", Map.of("name", "Bob"));
+
+        assertTrue(namespace.getTemplateCacheStats().getWeightedSize() > 0);
+        assertEquals(1, namespace.getInlineTemplateCacheStats().getHitCount());
+        assertEquals(0, renderer.getInlineTemplateCacheStats().getMissCount());
+        assertEquals(5, namespace.getQuota().getInlineMaxSize());
+    }
+
+    @Test
+    void testTemplateInvalidationReachesNamespaces() throws Exception {
+        TemplateNamespace namespace = renderer.namespace("tenant");
+        assertEquals("<p>Page 3 for Ada</p>", namespace.renderTemplateToHtml("page3.ftl", Map.of("name", "Ada")));
+
+        write("page3.ftl", "<p>Changed for ${name}</p>");
+        renderer.invalidateTemplate("page3.ftl");
+
+        assertEquals("<p>Changed for Ada</p>", namespace.renderTemplateToHtml("page3.ftl", Map.of("name", "Ada")));
+    }
+
+    @Test
+    void testRemovedNamespaceRejectsRenders() throws Exception {
+        TemplateNamespace namespace = renderer.namespace("tenant");
+        renderer.namespace("other");
+        assertSame(namespace, renderer.namespace("tenant"));
+        assertEquals(Set.of("other", "tenant"), renderer.getNamespaceNames());
+
+        assertTrue(renderer.removeNamespace("tenant"));
+        assertFalse(renderer.removeNamespace("tenant"));
+        assertEquals(Set.of("other"), renderer.getNamespaceNames());
+        assertThrows(IllegalStateException.class,
+                () -> namespace.renderTemplateToHtml("page0.ftl", Map.of("name", "Ada")));
+        assertThrows(IllegalArgumentException.class, () -> renderer.namespace(" "));
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -17,25 +17,43 @@
 
 package com.firefly.core.utils.template;
 
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.SimpleBookmark;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
 import freemarker.template.TemplateException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.AfterAll;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -58,6 +76,11 @@ public class TemplateRenderUtilTest {
         // Write a template that uses shared variables
         String sharedVarTemplate = "<p>Hello ${name}!</p><p>Company: ${companyName}</p>";
         Files.write(dir.resolve("shared-var-test.ftl"), sharedVarTemplate.getBytes(StandardCharsets.UTF_8));
+
+        // Write a template with document metadata
+        String statementTemplate = "<!DOCTYPE html><html><head><title>Statement ${name}</title>"
+                + "<meta name=\"subject\" content=\"account-${name}\"/></head><body><p>${name}</p></body></html>";
+        Files.write(dir.resolve("statement.ftl"), statementTemplate.getBytes(StandardCharsets.UTF_8));
     }
 
     @AfterAll
@@ -110,6 +133,89 @@ public class TemplateRenderUtilTest {
         assertTrue(html.contains("Hello Auto-named Template!"), "Rendered HTML should contain the correct greeting");
     }
 
+    @Test
+    void testRenderTemplateStringIsParsedOnce() throws IOException, TemplateException {
+        String templateContent = "<p>Inline cache ${name}!</p>";
+        TemplateRenderUtil.renderTemplateStringToHtml(templateContent, "inline-cache", Map.of("name", "first"));
+        TemplateCacheStats before = TemplateRenderUtil.getInlineTemplateCacheStats();
+
+        String html = TemplateRenderUtil.renderTemplateStringToHtml(templateContent, "inline-cache", Map.of("name", "second"));
+
+        TemplateCacheStats after = TemplateRenderUtil.getInlineTemplateCacheStats();
+        assertTrue(html.contains("Inline cache second!"), "Cached template should render the new data model");
+        assertEquals(before.getHitCount() + 1, after.getHitCount(), "Identical template string should hit the cache");
+        assertEquals(before.getMissCount(), after.getMissCount(), "Identical template string should not be reparsed");
+    }
+
+    @Test
+    void testStreamingRenderMatchesStringRender() throws IOException, TemplateException {
+        StringWriter writer = new StringWriter();
+        TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Stream"), writer);
+        assertEquals(TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Stream")), writer.toString(),
+                "Streaming output should match the string output");
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        TemplateRenderUtil.renderTemplate("test.ftl", Map.of("name", "Grüße"), os, StandardCharsets.UTF_8);
+        assertEquals("<p>Hello Grüße!</p>", os.toString(StandardCharsets.UTF_8), "Output should be encoded in the charset");
+
+        StringWriter inline = new StringWriter();
+        TemplateRenderUtil.renderTemplateStringToHtml("<b>${name}</b>", "inline-stream", Map.of("name", "Inline"), inline);
+        assertEquals("<b>Inline</b>", inline.toString());
+    }
+
+    @Test
+    void testStreamingRenderAppliesPostProcessor() throws IOException, TemplateException {
+        TemplateRenderUtil.setTemplatePostProcessor((content, model) -> content.toUpperCase());
+        try {
+            StringWriter writer = new StringWriter();
+            TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Post"), writer);
+            assertEquals("<P>HELLO POST!</P>", writer.toString(), "Post-processor should see the complete output");
+        } finally {
+            TemplateRenderUtil.setTemplatePostProcessor(null);
+        }
+    }
+
+    @Test
+    void testRenderObserverReceivesStagesAndSizes() throws Exception {
+        List<RenderObserver.Stage> stages = new CopyOnWriteArrayList<>();
+        Map<RenderObserver.Output, Long> sizes = new ConcurrentHashMap<>();
+        List<Boolean> lookups = new CopyOnWriteArrayList<>();
+        TemplateRenderUtil.setRenderObserver(new RenderObserver() {
+            @Override
+            public void onStage(Stage stage, String templateName, long durationNanos) {
+                assertEquals("test.ftl", templateName);
+                assertTrue(durationNanos >= 0);
+                stages.add(stage);
+            }
+
+            @Override
+            public void onOutput(Output output, String templateName, long size) {
+                sizes.put(output, size);
+            }
+
+            @Override
+            public void onTemplateCacheLookup(String templateName, boolean hit) {
+                lookups.add(hit);
+            }
+        });
+        try {
+            TemplateRenderUtil.clearTemplateCache();
+            TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Observed"));
+            byte[] pdf = TemplateRenderUtil.renderTemplateToPdfBytes("test.ftl", Map.of("name", "Observed"),
+                    new TemplateRenderUtil.PdfOptions().withBookmark("Start", "1"));
+
+            assertEquals(List.of(false, true), lookups, "First lookup should miss, second should hit");
+            assertTrue(stages.containsAll(List.of(RenderObserver.Stage.TEMPLATE_LOAD, RenderObserver.Stage.TEMPLATE_PROCESS,
+                    RenderObserver.Stage.XHTML_PREPARE, RenderObserver.Stage.RENDERER_SETUP, RenderObserver.Stage.DOCUMENT_LOAD,
+                    RenderObserver.Stage.LAYOUT, RenderObserver.Stage.BOOKMARKS, RenderObserver.Stage.PDF_WRITE)),
+                    "All PDF stages should be reported: " + stages);
+            assertEquals("<p>Hello Observed!</p>".length(), sizes.get(RenderObserver.Output.HTML));
+            assertEquals(pdf.length, sizes.get(RenderObserver.Output.PDF), "PDF size should match the bytes written");
+        } finally {
+            TemplateRenderUtil.setRenderObserver(null);
+        }
+    }
+
     @Test
     void testRenderHtmlToPdfProducesPdfHeader() throws Exception {
         String html = "<html><body><h1>Test PDF</h1></body></html>";
@@ -122,6 +228,92 @@ public class TemplateRenderUtilTest {
         assertEquals("%PDF", header, "PDF header should start with '%PDF'");
     }
 
+    @Test
+    void testPdfBatchDoesNotLeakDocumentMetadata() throws Exception {
+        List<String> names = List.of("Alice", "Bob", "Carol");
+        Map<Long, ByteArrayOutputStream> outputs = new ConcurrentHashMap<>();
+        BatchRenderSink sink = (index, dataModel) -> outputs.computeIfAbsent(index, i -> new ByteArrayOutputStream());
+
+        // A single worker renders every item
+        BatchRenderResult result = TemplateRenderUtil.renderTemplateToPdfBatch("statement.ftl",
+                names.stream().map(name -> Map.<String, Object>of("name", name)), sink,
+                new TemplateRenderUtil.PdfOptions(), 1);
+
+        assertEquals(3, result.getSucceededCount());
+        for (int i = 0; i < names.size(); i++) {
+            PdfReader reader = new PdfReader(outputs.get((long) i).toByteArray());
+            try {
+                assertEquals("Statement " + names.get(i), reader.getInfo().get("Title"),
+                        "Each document should have its own title");
+                assertEquals("account-" + names.get(i), reader.getInfo().get("Subject"),
+                        "Each document should have its own subject");
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    void testPooledRenderersDoNotLeakDocumentState() throws Exception {
+        TemplateRenderUtil.setPdfRendererPoolingEnabled(true);
+        try {
+            byte[] first = TemplateRenderUtil.renderHtmlToPdfBytes("<!DOCTYPE html><html><head><title>First</title>"
+                    + "<meta name=\"subject\" content=\"first-subject\"/></head><body><p>First document</p></body></html>");
+            byte[] second = TemplateRenderUtil.renderHtmlToPdfBytes("<!DOCTYPE html><html><head><title>Second</title>"
+                    + "<meta name=\"subject\" content=\"second-subject\"/></head><body><p>Second document</p></body></html>");
+
+            String secondText = extractText(second);
+            assertTrue(extractText(first).contains("First document"), "First PDF should contain its own text");
+            assertTrue(secondText.contains("Second document"), "Reused renderer should render the new document");
+            assertFalse(secondText.contains("First document"), "Reused renderer should not keep the previous document");
+
+            PdfReader reader = new PdfReader(second);
+            try {
+                assertEquals("Second", reader.getInfo().get("Title"), "Second PDF should have its own title");
+                assertEquals("second-subject", reader.getInfo().get("Subject"), "Second PDF should have its own subject");
+            } finally {
+                reader.close();
+            }
+        } finally {
+            TemplateRenderUtil.setPdfRendererPoolingEnabled(false);
+        }
+    }
+
+    @Test
+    void testPdfBatchReportsFailedItemsAndContinues() throws Exception {
+        List<Map<String, Object>> models = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            // Every fourth model lacks the variable the template needs
+            models.add(i % 4 == 3 ? Map.of() : Map.of("name", "Batch " + i));
+        }
+        Map<Long, ByteArrayOutputStream> outputs = new ConcurrentHashMap<>();
+        List<Long> completed = new CopyOnWriteArrayList<>();
+        BatchRenderSink sink = new BatchRenderSink() {
+            @Override
+            public OutputStream open(long index, Map<String, Object> dataModel) {
+                return outputs.computeIfAbsent(index, i -> new ByteArrayOutputStream());
+            }
+
+            @Override
+            public void completed(long index, Map<String, Object> dataModel) {
+                completed.add(index);
+            }
+        };
+
+        BatchRenderResult result = TemplateRenderUtil.renderTemplateToPdfBatch("test.ftl", models.stream(), sink,
+                new TemplateRenderUtil.PdfOptions(), 3);
+
+        assertEquals(9, result.getSucceededCount());
+        assertEquals(3, result.getFailedCount());
+        assertEquals(List.of(3L, 7L, 11L), result.getFailedIndexes(), "Failures should be reported by item index");
+        assertTrue(result.getFailures().get(3L) instanceof TemplateException);
+        assertEquals(9, completed.size());
+        for (long index : completed) {
+            assertTrue(extractText(outputs.get(index).toByteArray()).contains("Hello Batch " + index + "!"),
+                    "Each document should be rendered from its own data model");
+        }
+    }
+
     @Test
     void testRenderTemplateToPdfProducesValidPdf() throws Exception {
         // Render using the test.ftl template and ensure PDF header
@@ -241,6 +433,25 @@ public class TemplateRenderUtilTest {
         TemplateRenderUtil.clearTemplateCache();
     }
 
+    @Test
+    void testTemplateCacheStats() throws IOException, TemplateException {
+        TemplateRenderUtil.setTemplateCachingEnabled(true);
+        TemplateRenderUtil.clearTemplateCache();
+        TemplateCacheStats before = TemplateRenderUtil.getTemplateCacheStats();
+
+        // The first render misses, the second is served from the cache
+        TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Stats 1"));
+        TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Stats 2"));
+
+        TemplateCacheStats after = TemplateRenderUtil.getTemplateCacheStats();
+        assertTrue(after.getHitCount() > before.getHitCount(), "Second render should hit the cache");
+        assertTrue(after.getMissCount() > before.getMissCount(), "First render should miss the cache");
+        assertTrue(after.getSize() >= 1, "Template should be cached");
+
+        // Clean up
+        TemplateRenderUtil.clearTemplateCache();
+    }
+
     @Test
     void testTemplateValidation() {
         // Valid template
@@ -284,6 +495,23 @@ public class TemplateRenderUtilTest {
         assertArrayEquals(pngHeader, actualHeader, "Image should be a PNG");
     }
 
+    @Test
+    void testRenderHtmlToImageStream() throws Exception {
+        String html = "<html><body><p>Streamed image</p></body></html>";
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        TemplateRenderUtil.renderHtmlToImage(html, 300, 120, "png", os);
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+        assertNotNull(image, "Stream should contain a decodable image");
+        assertEquals(300, image.getWidth());
+        assertEquals(120, image.getHeight());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> TemplateRenderUtil.renderHtmlToImage(html, 300, 120, "no-such-format", new ByteArrayOutputStream()),
+                "Unknown image types should be rejected");
+    }
+
     @Test
     void testRenderTemplateToImage() throws Exception {
         // Render template to image
@@ -314,6 +542,110 @@ public class TemplateRenderUtilTest {
         TemplateRenderUtil.clearSharedVariables();
     }
 
+    @Test
+    void testSharedVariablesChangeWhileRendering() throws Exception {
+        TemplateRenderUtil.addSharedVariable("companyName", "Initial");
+        List<CompletableFuture<String>> renders = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                renders.add(TemplateRenderUtil.renderTemplateToHtmlAsync("shared-var-test.ftl", Map.of("name", "User")));
+                TemplateRenderUtil.addSharedVariable("companyName", "Company " + i);
+                TemplateRenderUtil.addSharedVariable("extra" + (i % 5), i);
+            }
+            for (CompletableFuture<String> render : renders) {
+                assertTrue(render.get().contains("Company: "), "Every render should see a complete configuration");
+            }
+
+            String html = TemplateRenderUtil.renderTemplateToHtml("shared-var-test.ftl", Map.of("name", "User"));
+            assertTrue(html.contains("Company: Company 199"), "Cached templates should see the latest shared variables");
+
+            TemplateRenderUtil.removeSharedVariable("companyName");
+            assertThrows(TemplateException.class,
+                    () -> TemplateRenderUtil.renderTemplateToHtml("shared-var-test.ftl", Map.of("name", "User")),
+                    "A removed shared variable should be undefined");
+        } finally {
+            TemplateRenderUtil.clearSharedVariables();
+        }
+    }
+
+    @Test
+    void testEditedTemplateIsReloadedWhenWatching() throws Exception {
+        Path template = Paths.get(TEMPLATE_DIR, "watched.ftl");
+        Files.write(template, "<p>Version 1</p>".getBytes(StandardCharsets.UTF_8));
+        TemplateRenderUtil.setTemplateWatchingEnabled(true);
+        try {
+            assertEquals("<p>Version 1</p>", TemplateRenderUtil.renderTemplateToHtml("watched.ftl", Map.of()));
+            TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Cached"));
+
+            Files.write(template, "<p>Version 2</p>".getBytes(StandardCharsets.UTF_8));
+
+            String html = TemplateRenderUtil.renderTemplateToHtml("watched.ftl", Map.of());
+            for (int i = 0; i < 100 && !html.equals("<p>Version 2</p>"); i++) {
+                Thread.sleep(100);
+                html = TemplateRenderUtil.renderTemplateToHtml("watched.ftl", Map.of());
+            }
+            assertEquals("<p>Version 2</p>", html, "Edited template should be reloaded");
+
+            long misses = TemplateRenderUtil.getTemplateCacheStats().getMissCount();
+            TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Cached"));
+            assertEquals(misses, TemplateRenderUtil.getTemplateCacheStats().getMissCount(),
+                    "Other templates should stay cached");
+        } finally {
+            TemplateRenderUtil.setTemplateWatchingEnabled(false);
+            Files.deleteIfExists(template);
+        }
+    }
+
+    @Test
+    void testInvalidateTemplateCascadesToDependents() throws Exception {
+        Path dir = Files.createDirectories(Paths.get(TEMPLATE_DIR, "layout"));
+        Files.write(dir.resolve("header.ftl"), "<h1>Header</h1>".getBytes(StandardCharsets.UTF_8));
+        Files.write(Paths.get(TEMPLATE_DIR, "page.ftl"),
+                "<#include \"layout/header.ftl\"><p>${name}</p>".getBytes(StandardCharsets.UTF_8));
+        try {
+            assertEquals("<h1>Header</h1><p>Page</p>", TemplateRenderUtil.renderTemplateToHtml("page.ftl", Map.of("name", "Page")));
+            TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Cached"));
+
+            Files.write(dir.resolve("header.ftl"), "<h1>New header</h1>".getBytes(StandardCharsets.UTF_8));
+            Set<String> invalidated = TemplateRenderUtil.invalidateTemplate("layout/header.ftl");
+
+            assertEquals(Set.of("layout/header.ftl", "page.ftl"), invalidated, "Includers should be invalidated");
+            long misses = TemplateRenderUtil.getTemplateCacheStats().getMissCount();
+            TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Cached"));
+            assertEquals("<h1>New header</h1><p>Page</p>", TemplateRenderUtil.renderTemplateToHtml("page.ftl", Map.of("name", "Page")),
+                    "The including template should render the new header");
+            assertEquals(misses, TemplateRenderUtil.getTemplateCacheStats().getMissCount(),
+                    "Templates that include the changed template should stay compiled");
+        } finally {
+            Files.deleteIfExists(Paths.get(TEMPLATE_DIR, "page.ftl"));
+            Files.deleteIfExists(dir.resolve("header.ftl"));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    void testWarmUpLoadsTemplatesAndReportsFailures() throws Exception {
+        Path broken = Paths.get(TEMPLATE_DIR, "warmup-broken.ftl");
+        Files.write(broken, "<#if>".getBytes(StandardCharsets.UTF_8));
+        try {
+            TemplateRenderUtil.clearTemplateCache();
+
+            WarmUpReport report = TemplateRenderUtil.warmUp(2, new TemplateRenderUtil.PdfOptions());
+
+            assertTrue(report.getTemplateCount() >= 3, "Templates in the template directory should be found");
+            assertEquals(List.of("warmup-broken.ftl"), List.copyOf(report.getFailures().keySet()));
+            assertEquals(report.getTemplateCount() - 1, report.getLoadedCount());
+            assertTrue(report.isPdfWarmedUp(), "Sample PDF should be rendered");
+
+            long misses = TemplateRenderUtil.getTemplateCacheStats().getMissCount();
+            TemplateRenderUtil.renderTemplateToHtml("test.ftl", Map.of("name", "Warm"));
+            assertEquals(misses, TemplateRenderUtil.getTemplateCacheStats().getMissCount(),
+                    "Warmed-up templates should be cached");
+        } finally {
+            Files.deleteIfExists(broken);
+        }
+    }
+
     @Test
     void testTemplateProcessingHooks() throws Exception {
         // Set up a preprocessor that adds a header
@@ -374,6 +706,66 @@ public class TemplateRenderUtilTest {
         assertEquals("%PDF", header, "PDF header should start with '%PDF'");
     }
 
+    @Test
+    void testAsyncRenderingOnVirtualThreads() throws Exception {
+        if (Runtime.version().feature() < 21) {
+            assertThrows(UnsupportedOperationException.class, () -> TemplateRenderUtil.setAsyncVirtualThreadsEnabled(2),
+                    "Virtual threads should be rejected on runtimes without them");
+            return;
+        }
+
+        TemplateRenderUtil.setAsyncVirtualThreadsEnabled(2);
+        try {
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(TemplateRenderUtil.renderTemplateToPdfBytesAsync("test.ftl", Map.of("name", "Virtual " + i)));
+            }
+            for (CompletableFuture<byte[]> future : futures) {
+                assertEquals("%PDF", new String(future.get(), 0, 4, StandardCharsets.US_ASCII));
+            }
+
+            // A caller whose stream blocks should not keep the only layout permit
+            TemplateRenderUtil.setAsyncVirtualThreadsEnabled(1);
+            CountDownLatch writing = new CountDownLatch(1);
+            CountDownLatch unblock = new CountDownLatch(1);
+            OutputStream slow = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    writing.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            };
+            CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+                try {
+                    TemplateRenderUtil.renderHtmlToPdf("<html><body><p>Slow</p></body></html>", slow,
+                            new TemplateRenderUtil.PdfOptions());
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+            try {
+                assertTrue(writing.await(30, TimeUnit.SECONDS), "The slow render should reach its stream");
+                byte[] other = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                        () -> TemplateRenderUtil.renderHtmlToPdfBytes("<html><body><p>Other</p></body></html>"));
+                assertEquals("%PDF", new String(other, 0, 4, StandardCharsets.US_ASCII));
+            } finally {
+                unblock.countDown();
+            }
+            blocked.get();
+        } finally {
+            TemplateRenderUtil.setAsyncThreadPoolSize(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
     @Test
     void testRenderHtmlToPdfBytes() throws Exception {
         // Create a simple HTML content
@@ -409,6 +801,23 @@ public class TemplateRenderUtilTest {
         assertEquals("%PDF", header, "PDF header should start with '%PDF'");
     }
 
+    @Test
+    void testRenderHtmlToPdfBufferMatchesBytes() throws Exception {
+        String html = "<html><body><h1>Buffered PDF Test</h1></body></html>";
+        byte[] expected = TemplateRenderUtil.renderHtmlToPdfBytes(html);
+
+        byte[] actual = TemplateRenderUtil.renderHtmlToPdfBuffer(html, new TemplateRenderUtil.PdfOptions(), pdf -> {
+            assertTrue(pdf.isReadOnly(), "The handler should get a read-only view");
+            byte[] copy = new byte[pdf.remaining()];
+            pdf.get(copy);
+            return copy;
+        });
+
+        String header = new String(actual, 0, 4, StandardCharsets.US_ASCII);
+        assertEquals("%PDF", header, "PDF header should start with '%PDF'");
+        assertEquals(expected.length, actual.length, "The buffer should hold the same document as the byte array");
+    }
+
     @Test
     void testRenderHtmlToPdfFile() throws Exception {
         // Create a simple HTML content
@@ -431,6 +840,24 @@ public class TemplateRenderUtilTest {
         assertEquals("%PDF", headerStr, "PDF file should start with '%PDF'");
     }
 
+    @Test
+    void testFailedPdfFileRenderKeepsExistingFile() throws Exception {
+        Path existing = Files.createTempFile("existing-pdf-", ".pdf");
+        existing.toFile().deleteOnExit();
+        Files.write(existing, "previous".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(Exception.class, () -> TemplateRenderUtil.renderTemplateStringToPdfFile(
+                "<p>${missing.value}</p>", "broken", new HashMap<>(), existing.toString()));
+
+        assertEquals("previous", new String(Files.readAllBytes(existing), StandardCharsets.UTF_8),
+                "A failed render should not replace the file");
+        try (Stream<Path> files = Files.list(existing.getParent())) {
+            String prefix = "." + existing.getFileName();
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(prefix)),
+                    "No temporary file should be left behind");
+        }
+    }
+
     @Test
     void testRenderHtmlToPdfBytesAsync() throws Exception {
         // Create a simple HTML content
@@ -484,4 +911,154 @@ public class TemplateRenderUtilTest {
         options.clearBookmarks();
         assertFalse(options.hasBookmarks(), "Options should have no bookmarks after clearing");
     }
+
+    @Test
+    void testParallelSegmentsContinuePageNumbers() throws Exception {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><style>"
+                + "@page { @bottom-center { content: 'Page ' counter(page); } }</style></head><body>");
+        for (int i = 1; i <= 6; i++) {
+            html.append("<h1>Section ").append(i).append("</h1>")
+                    .append("<div style='page-break-before: always'>Details ").append(i).append("</div>")
+                    .append(TemplateRenderUtil.PdfOptions.SEGMENT_BREAK);
+        }
+        html.append("</body></html>");
+        TemplateRenderUtil.PdfOptions options = new TemplateRenderUtil.PdfOptions()
+                .withParallelSegments(true)
+                .withBookmark("Last section", "11");
+
+        byte[] pdf = TemplateRenderUtil.renderHtmlToPdfBytes(html.toString(), options);
+
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            assertEquals(12, reader.getNumberOfPages(), "Every section should have two pages");
+            PdfTextExtractor extractor = new PdfTextExtractor(reader);
+            assertTrue(extractor.getTextFromPage(11).contains("Section 6"), "Segments should stay in order");
+            assertTrue(extractor.getTextFromPage(11).contains("Page 11"), "Page numbers should continue");
+            assertTrue(extractor.getTextFromPage(12).contains("Page 12"), "Page numbers should continue");
+
+            List<Map<String, Object>> outline = SimpleBookmark.getBookmarkList(reader);
+            Map<String, Object> lastHeading = outline.get(5);
+            assertEquals("Section 6", lastHeading.get("Title"));
+            assertTrue(((String) lastHeading.get("Page")).startsWith("11 "), "Headings should point at their page");
+            assertEquals("Root", outline.get(outline.size() - 1).get("Title"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    void testParallelSegmentsCountAllPages() throws Exception {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><style>"
+                + "@page { @bottom-center { content: 'Page ' counter(page) ' of ' counter(pages); } }"
+                + "</style></head><body>");
+        for (int i = 1; i <= 3; i++) {
+            html.append("<h1>Section ").append(i).append("</h1>")
+                    .append("<div style='page-break-before: always'>Details ").append(i).append("</div>")
+                    .append(TemplateRenderUtil.PdfOptions.SEGMENT_BREAK);
+        }
+        html.append("</body></html>");
+        TemplateRenderUtil.PdfOptions options = new TemplateRenderUtil.PdfOptions().withParallelSegments(true);
+
+        byte[] pdf = TemplateRenderUtil.renderHtmlToPdfBytes(html.toString(), options);
+
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            assertEquals(6, reader.getNumberOfPages());
+            PdfTextExtractor extractor = new PdfTextExtractor(reader);
+            for (int page = 1; page <= 6; page++) {
+                String text = extractor.getTextFromPage(page);
+                assertTrue(text.contains("Page " + page + " of 6"), "Page " + page + " reads: " + text);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    void testPartsAreRenderedIntoOnePdf() throws Exception {
+        List<PdfPart> parts = List.of(
+                PdfPart.template("test.ftl", Map.of("name", "Cover")),
+                PdfPart.html("<html><body><h1>Statement</h1>"
+                        + "<div style='page-break-before: always'>Transactions</div></body></html>"),
+                PdfPart.template("test.ftl", Map.of("name", "Terms")));
+        TemplateRenderUtil.PdfOptions options = new TemplateRenderUtil.PdfOptions()
+                .withBookmark("Terms and conditions", "4");
+
+        byte[] pdf = TemplateRenderUtil.renderPartsToPdfBytes(parts, options);
+
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            assertEquals(4, reader.getNumberOfPages(), "Every part should start on a new page");
+            PdfTextExtractor extractor = new PdfTextExtractor(reader);
+            assertTrue(extractor.getTextFromPage(1).contains("Hello Cover!"));
+            assertTrue(extractor.getTextFromPage(2).contains("Statement"));
+            assertTrue(extractor.getTextFromPage(4).contains("Hello Terms!"));
+
+            List<Map<String, Object>> outline = SimpleBookmark.getBookmarkList(reader);
+            assertEquals("Statement", outline.get(0).get("Title"));
+            assertTrue(((String) outline.get(0).get("Page")).startsWith("2 "), "Headings should point at their page");
+            assertEquals("Root", outline.get(outline.size() - 1).get("Title"));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    void testFailedPartFailsTheWholePdf() {
+        List<PdfPart> parts = List.of(
+                PdfPart.html("<p>Cover</p>"),
+                PdfPart.template("missing.ftl", null));
+
+        assertThrows(IOException.class,
+                () -> TemplateRenderUtil.renderPartsToPdfBytes(parts, new TemplateRenderUtil.PdfOptions()));
+    }
+
+    @Test
+    void testPdfBookmarksAreWritten() throws Exception {
+        String html = "<html><body><h1>One</h1><div style='page-break-before: always'>Two</div></body></html>";
+        TemplateRenderUtil.PdfOptions options = new TemplateRenderUtil.PdfOptions()
+                .withBookmark("Chapter 1", "1")
+                .withChildBookmark("Section 1.1", "1")
+                .withBookmark("Chapter 2", "2")
+                .withBookmark("Appendix", "9");
+
+        byte[] pdf = TemplateRenderUtil.renderHtmlToPdfBytes(html, options);
+
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            assertEquals(2, reader.getNumberOfPages(), "Document should have two pages");
+            List<Map<String, Object>> outline = SimpleBookmark.getBookmarkList(reader);
+            assertNotNull(outline, "PDF should contain an outline");
+            // Flying Saucer adds its own entries for headings
+            Map<String, Object> root = outline.stream()
+                    .filter(entry -> "Root".equals(entry.get("Title")))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("Outline should contain the bookmark root"));
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> chapters = (List<Map<String, Object>>) root.get("Kids");
+            assertEquals(3, chapters.size(), "Should have 3 top-level bookmarks");
+            assertEquals("Chapter 1", chapters.get(0).get("Title"));
+            assertTrue(((String) chapters.get(0).get("Page")).startsWith("1 "), "Chapter 1 should point to page 1");
+            assertNotNull(chapters.get(0).get("Kids"), "Chapter 1 should have children");
+            assertTrue(((String) chapters.get(1).get("Page")).startsWith("2 "), "Chapter 2 should point to page 2");
+            assertTrue(((String) chapters.get(2).get("Page")).startsWith("2 "), "Out-of-range pages should be clamped");
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String extractText(byte[] pdf) throws IOException {
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            PdfTextExtractor extractor = new PdfTextExtractor(reader);
+            StringBuilder text = new StringBuilder();
+            for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                text.append(extractor.getTextFromPage(page));
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
 }
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TemplateRenderer.
+ */
+public class TemplateRendererTest {
+    private static final String TEMPLATE = "<p>${greeting} ${name}, ${amount}</p>";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRenderersHaveIndependentConfigurations() throws Exception {
+        Path english = write(dir.resolve("en"), TEMPLATE);
+        Path german = write(dir.resolve("de"), TEMPLATE);
+
+        try (TemplateRenderer first = TemplateRenderer.builder()
+                .templateDirectory(english.toString())
+                .locale(Locale.US)
+                .sharedVariable("greeting", "Hello")
+                .build();
+             TemplateRenderer second = TemplateRenderer.builder()
+                     .templateDirectory(german.toString())
+                     .locale(Locale.GERMANY)
+                     .sharedVariable("greeting", "Hallo")
+                     .build()) {
+            Map<String, Object> model = Map.of("name", "Ada", "amount", 1234.5);
+
+            assertEquals("<p>Hello Ada, 1,234.5</p>", first.renderTemplateToHtml("greeting.ftl", model));
+            assertEquals("<p>Hallo Ada, 1.234,5</p>", second.renderTemplateToHtml("greeting.ftl", model));
+        }
+    }
+
+    @Test
+    void testReconfiguringOneRendererKeepsOtherCachesWarm() throws Exception {
+        Path templates = write(dir, "<p>${name}</p>");
+        try (TemplateRenderer renderer = TemplateRenderer.builder().templateDirectory(templates.toString()).build()) {
+            renderer.renderTemplateToHtml("greeting.ftl", Map.of("name", "First"));
+            long misses = renderer.getTemplateCacheStats().getMissCount();
+
+            TemplateRenderUtil.addSharedVariable("unrelated", "value");
+            TemplateRenderUtil.clearSharedVariables();
+            TemplateRenderUtil.getDefaultRenderer().clearTemplateCache();
+
+            assertEquals("<p>Second</p>", renderer.renderTemplateToHtml("greeting.ftl", Map.of("name", "Second")));
+            assertEquals(misses, renderer.getTemplateCacheStats().getMissCount(),
+                    "Changes to the default renderer should not flush this renderer's cache");
+        }
+    }
+
+    @Test
+    void testTemplatesAreWeighedByTheirSourceLength() throws Exception {
+        String source = "<#-- A greeting, kept short -->\n<p>${name}</p>\n";
+        Path templates = write(dir, source);
+        try (TemplateRenderer renderer = TemplateRenderer.builder().templateDirectory(templates.toString()).build()) {
+            renderer.setTemplateCacheMaxWeight(10_000);
+            renderer.renderTemplateToHtml("greeting.ftl", Map.of("name", "Ada"));
+
+            assertEquals(source.length(), renderer.getTemplateCacheStats().getWeightedSize());
+        }
+    }
+
+    @Test
+    void testBuildFailsForMissingTemplateDirectory() {
+        TemplateRenderer.Builder builder = TemplateRenderer.builder()
+                .templateDirectory(dir.resolve("missing").toString());
+
+        assertThrows(IOException.class, builder::build);
+    }
+
+    @Test
+    void testAsyncRenderingUsesOwnExecutor() throws Exception {
+        Path templates = write(dir, "<p>${name}</p>");
+        try (TemplateRenderer renderer = TemplateRenderer.builder()
+                .templateDirectory(templates.toString())
+                .asyncThreadPoolSize(1)
+                .build()) {
+            assertEquals("<p>Async</p>", renderer.renderTemplateToHtmlAsync("greeting.ftl", Map.of("name", "Async")).get());
+            assertEquals(1, renderer.getAsyncExecutorStats().getStartedCount());
+        }
+    }
+
+    @Test
+    void testOutputIsCachedOnlyForOptedInTemplates() throws Exception {
+        Path templates = write(dir, "<p>${name}</p>");
+        Files.write(templates.resolve("other.ftl"), "<p>${name}</p>".getBytes(StandardCharsets.UTF_8));
+        try (TemplateRenderer renderer = TemplateRenderer.builder()
+                .templateDirectory(templates.toString())
+                .outputCaching("greeting.ftl")
+                .build()) {
+            Map<String, Object> model = Map.of("name", "Ada");
+            renderer.renderTemplateToHtml("greeting.ftl", model);
+            renderer.renderTemplateToHtml("greeting.ftl", model);
+            renderer.renderTemplateToHtml("other.ftl", model);
+            renderer.renderTemplateToHtml("other.ftl", model);
+
+            assertEquals(1, renderer.getOutputCacheStats().getHitCount());
+            assertEquals(1, renderer.getOutputCacheStats().getMissCount());
+            assertEquals(1, renderer.getTemplateCacheStats().getHitCount(),
+                    "Only the template without output caching should be looked up again");
+
+            byte[] pdf = renderer.renderTemplateToPdfBytes("greeting.ftl", model, new TemplateRenderUtil.PdfOptions());
+            byte[] cachedPdf = renderer.renderTemplateToPdfBytes("greeting.ftl", model, new TemplateRenderUtil.PdfOptions());
+            assertArrayEquals(pdf, cachedPdf);
+            assertNotSame(pdf, cachedPdf, "Callers should not share the cached array");
+            assertEquals(2, renderer.getOutputCacheStats().getHitCount());
+
+            Files.write(templates.resolve("greeting.ftl"), "<p>Changed ${name}</p>".getBytes(StandardCharsets.UTF_8));
+            renderer.invalidateTemplate("greeting.ftl");
+            assertEquals("<p>Changed Ada</p>", renderer.renderTemplateToHtml("greeting.ftl", model));
+        }
+    }
+
+    @Test
+    void testPdfResultStoreServesRendersAcrossRenderers() throws Exception {
+        Path templates = write(dir.resolve("templates"), "<#include \"footer.ftl\"><p>${name}</p>");
+        Files.write(templates.resolve("footer.ftl"), "<p>Footer</p>".getBytes(StandardCharsets.UTF_8));
+        Path store = dir.resolve("store");
+        TemplateRenderUtil.PdfOptions options = new TemplateRenderUtil.PdfOptions();
+        Map<String, Object> model = Map.of("name", "Ada");
+
+        byte[] pdf;
+        try (TemplateRenderer renderer = newStoringRenderer(templates, store)) {
+            pdf = renderer.renderTemplateToPdfBytes("greeting.ftl", model, options);
+            assertEquals(1, renderer.getPdfResultStoreStats().getSize());
+        }
+        try (TemplateRenderer renderer = newStoringRenderer(templates, store)) {
+            assertArrayEquals(pdf, renderer.renderTemplateToPdfBytes("greeting.ftl", model, options));
+            assertEquals(1, renderer.getPdfResultStoreStats().getHitCount(), "The stored PDF should be reused");
+
+            Files.write(templates.resolve("footer.ftl"), "<p>New footer</p>".getBytes(StandardCharsets.UTF_8));
+            renderer.invalidateTemplate("footer.ftl");
+            renderer.renderTemplateToPdfBytes("greeting.ftl", model, options);
+            assertEquals(1, renderer.getPdfResultStoreStats().getMissCount(), "A changed include should change the key");
+        }
+    }
+
+    @Test
+    void testPdfResultKeyCoversConfigurationProperties() throws Exception {
+        Path templates = write(dir.resolve("templates"), "<p>${amount}</p>");
+        Path store = dir.resolve("store");
+        TemplateRenderUtil.PdfOptions options = new TemplateRenderUtil.PdfOptions();
+        Map<String, Object> model = Map.of("amount", 1234.5);
+        Properties plain = new Properties();
+        plain.setProperty("number_format", "0.00");
+
+        try (TemplateRenderer renderer = newStoringRenderer(templates, store, new Properties())) {
+            renderer.renderTemplateToPdfBytes("greeting.ftl", model, options);
+        }
+        try (TemplateRenderer renderer = newStoringRenderer(templates, store, plain)) {
+            renderer.renderTemplateToPdfBytes("greeting.ftl", model, options);
+            assertEquals(0, renderer.getPdfResultStoreStats().getHitCount(),
+                    "A PDF rendered with another number format should not be reused");
+            assertEquals(2, renderer.getPdfResultStoreStats().getSize());
+        }
+    }
+
+    @Test
+    void testPdfResultKeyCoversFontFiles() throws Exception {
+        Path templates = write(dir.resolve("templates"), "<p>${name}</p>");
+        Path fonts = Files.createDirectories(dir.resolve("fonts"));
+        Path font = Files.write(fonts.resolve("brand.ttf"), new byte[]{1, 2, 3});
+        TemplateRenderUtil.PdfOptions options = new TemplateRenderUtil.PdfOptions()
+                .withFontDirectory(fonts.toString());
+        Map<String, Object> model = Map.of("name", "Ada");
+
+        // Straight to the store, past the in-memory output cache
+        try (TemplateRenderer renderer = newStoringRenderer(templates, dir.resolve("store"))) {
+            renderer.renderTemplateToPdf("greeting.ftl", model, new ByteArrayOutputStream(), options);
+            renderer.renderTemplateToPdf("greeting.ftl", model, new ByteArrayOutputStream(), options);
+            assertEquals(1, renderer.getPdfResultStoreStats().getHitCount());
+
+            Files.write(font, new byte[]{1, 2, 3, 4});
+            Files.setLastModifiedTime(font, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            renderer.renderTemplateToPdf("greeting.ftl", model, new ByteArrayOutputStream(), options);
+            assertEquals(1, renderer.getPdfResultStoreStats().getHitCount(),
+                    "A PDF rendered with the replaced font should not be reused");
+            assertEquals(2, renderer.getPdfResultStoreStats().getSize());
+        }
+    }
+
+    @Test
+    void testTemplatesWithComputedIncludesAreNotStored() throws Exception {
+        Path templates = write(dir.resolve("templates"), "<#include \"${part}.ftl\">");
+        Files.write(templates.resolve("footer.ftl"), "<p>Footer</p>".getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> model = Map.of("part", "footer");
+
+        try (TemplateRenderer renderer = newStoringRenderer(templates, dir.resolve("store"))) {
+            renderer.renderTemplateToPdfBytes("greeting.ftl", model, new TemplateRenderUtil.PdfOptions());
+            renderer.renderTemplateToPdfBytes("greeting.ftl", model, new TemplateRenderUtil.PdfOptions());
+
+            assertEquals(0, renderer.getPdfResultStoreStats().getSize(),
+                    "The content of a computed include is unknown before rendering");
+            assertEquals(0, renderer.getPdfResultStoreStats().getHitCount());
+        }
+    }
+
+    private static TemplateRenderer newStoringRenderer(Path templates, Path store) throws Exception {
+        return newStoringRenderer(templates, store, new Properties());
+    }
+
+    private static TemplateRenderer newStoringRenderer(Path templates, Path store, Properties properties)
+            throws Exception {
+        return TemplateRenderer.builder()
+                .templateDirectory(templates.toString())
+                .configurationProperties(properties)
+                .outputCaching("greeting.ftl")
+                .pdfResultStore(store, 1024 * 1024)
+                .build();
+    }
+
+    private static Path write(Path directory, String template) throws IOException {
+        Files.createDirectories(directory);
+        Files.write(directory.resolve("greeting.ftl"), template.getBytes(StandardCharsets.UTF_8));
+        return directory;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.MultiTemplateLoader;
+import freemarker.cache.StringTemplateLoader;
+import freemarker.cache.TemplateLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TemplateScanner.
+ */
+public class TemplateScannerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void testFindsTemplatesInDirectory() throws IOException {
+        write(dir.resolve("invoice.ftl"));
+        write(dir.resolve("mail/welcome.ftlh"));
+        write(dir.resolve("mail/readme.txt"));
+
+        Set<String> names = TemplateScanner.findTemplates(new FileTemplateLoader(dir.toFile()));
+
+        assertEquals(Set.of("invoice.ftl", "mail/welcome.ftlh"), names, "Only template files should be listed");
+    }
+
+    @Test
+    void testFindsTemplatesOnClasspath() throws IOException {
+        Path classes = dir.resolve("classes");
+        write(classes.resolve("templates/report.ftl"));
+        write(classes.resolve("other/ignored.ftl"));
+        Path jar = dir.resolve("templates.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("templates/"));
+            out.putNextEntry(new JarEntry("templates/layout/header.ftl"));
+            out.write("<h1>Header</h1>".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (URLClassLoader classLoader = new URLClassLoader(
+                new URL[]{classes.toUri().toURL(), jar.toUri().toURL()}, null)) {
+            TemplateLoader loader = new MultiTemplateLoader(new TemplateLoader[]{
+                    new ClassTemplateLoader(classLoader, "/templates"), new StringTemplateLoader()});
+
+            assertEquals(Set.of("layout/header.ftl", "report.ftl"), TemplateScanner.findTemplates(loader),
+                    "Directories and jars on the class path should be listed; other loaders skipped");
+        }
+    }
+
+    private static void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write("<p>Template</p>".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
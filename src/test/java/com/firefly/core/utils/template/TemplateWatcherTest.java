@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Firefly Software Solutions Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.firefly.core.utils.template;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TemplateWatcher.
+ */
+public class TemplateWatcherTest {
+    @TempDir
+    Path root;
+
+    private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+    private TemplateWatcher watcher;
+
+    @BeforeEach
+    void startWatcher() throws IOException {
+        watcher = new TemplateWatcher(changes::add, () -> changes.add("*"));
+    }
+
+    @AfterEach
+    void stopWatcher() throws IOException {
+        watcher.close();
+    }
+
+    @Test
+    void testReportsChangedTemplateByName() throws Exception {
+        Files.createDirectories(root.resolve("mail"));
+        watcher.watch(List.of(root));
+
+        write(root.resolve("mail/welcome.ftl"), "<p>Welcome</p>");
+
+        assertEquals("mail/welcome.ftl", nextChange(), "Name should be relative to the root");
+    }
+
+    @Test
+    void testWatchesDirectoriesCreatedLater() throws Exception {
+        watcher.watch(List.of(root));
+
+        Path dir = Files.createDirectories(root.resolve("invoices/2025"));
+        write(dir.resolve("invoice.ftl"), "<p>Invoice</p>");
+        assertEquals("invoices/2025/invoice.ftl", nextChange());
+
+        changes.clear();
+        write(dir.resolve("invoice.ftl"), "<p>Invoice v2</p>");
+        assertEquals("invoices/2025/invoice.ftl", nextChange(), "New directories should stay watched");
+    }
+
+    @Test
+    void testStopsWatchingRemovedRoots() throws Exception {
+        watcher.watch(List.of(root));
+        watcher.watch(List.of());
+
+        write(root.resolve("ignored.ftl"), "<p>Ignored</p>");
+
+        assertEquals(Set.of(), watcher.roots());
+        assertNull(changes.poll(500, TimeUnit.MILLISECONDS), "A removed root should not be reported");
+    }
+
+    private String nextChange() throws InterruptedException {
+        String name = changes.poll(10, TimeUnit.SECONDS);
+        assertNotNull(name, "Change should be reported");
+        return name;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1 @@
+<!DOCTYPE html><html><head><title>Statement ${name}</title><meta name="subject" content="account-${name}"/></head><body><p>${name}</p></body></html>
\ No newline at end of file